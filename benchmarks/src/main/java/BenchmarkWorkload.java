@@ -0,0 +1,58 @@
+import com.sjsu.bench.Workload;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link Workload} backed by the application classes. Loaded by name from
+ * {@link Workload#create}; see there for why it lives in the default package.
+ */
+public class BenchmarkWorkload implements Workload {
+
+    private ConnectionPool pool;
+    private OrderService orderService;
+    private PricingEngine pricingEngine;
+
+    @Override
+    public void open(String jdbcUrl, String username, String password, int poolSize) throws Exception {
+        pool = new ConnectionPool(jdbcUrl, username, password, poolSize, poolSize, 30_000, 0, 0, 2);
+        orderService = new OrderService(pool);
+        pricingEngine = new PricingEngine(pool);
+        pricingEngine.load();
+    }
+
+    @Override
+    public int placeOrder(int customerId, int[] itemIds, int[] quantities) throws Exception {
+        List<OrderService.Line> lines = new ArrayList<>(itemIds.length);
+        for (int i = 0; i < itemIds.length; i++) {
+            lines.add(new OrderService.Line(itemIds[i], quantities[i]));
+        }
+        return orderService.placeOrder(customerId, lines);
+    }
+
+    @Override
+    public int listItems(Consumer<Object> sink) throws Exception {
+        try (Connection conn = pool.borrow()) {
+            return DataAccess.on(conn).listItems(sink::accept);
+        }
+    }
+
+    @Override
+    public Object priceStoredFunction(int itemId, int quantity) throws Exception {
+        try (Connection conn = pool.borrow()) {
+            return DataAccess.on(conn).calculateDiscountedPrice(itemId, quantity);
+        }
+    }
+
+    @Override
+    public Object priceInJvm(int itemId, int quantity) throws Exception {
+        return pricingEngine.price(itemId, quantity);
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) pool.close();
+    }
+}
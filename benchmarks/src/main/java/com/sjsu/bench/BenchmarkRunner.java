@@ -0,0 +1,51 @@
+package com.sjsu.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Runs the benchmark suite once per thread count and writes one JSON result file per run.
+ *
+ * Usage: java -jar benchmarks.jar [-Dbench.threads=1,4,16] [-Dbench.out=results] [JMH options]
+ *
+ * Files are named {@code <timestamp>-<threads>t.json}, so runs from different commits can
+ * be compared side by side (for example with jmh.morethan.io or any JSON diff). Any JMH
+ * command-line options (such as {@code -p scale=10} or a benchmark regex) are passed through.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] threadCounts = System.getProperty("bench.threads", "1,4,16").split(",");
+        Path outDir = Paths.get(System.getProperty("bench.out", "results"));
+        Files.createDirectories(outDir);
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+
+        CommandLineOptions cli = new CommandLineOptions(args);
+        for (String t : threadCounts) {
+            int threads = Integer.parseInt(t.trim());
+            ChainedOptionsBuilder builder = new OptionsBuilder()
+                    .parent(cli)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(outDir.resolve(stamp + "-" + threads + "t.json").toString());
+            if (cli.getIncludes().isEmpty()) {
+                builder.include(DataAccessBenchmark.class.getSimpleName());
+            }
+            Options options = builder.build();
+            new Runner(options).run();
+        }
+    }
+}
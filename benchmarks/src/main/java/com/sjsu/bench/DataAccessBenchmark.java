@@ -0,0 +1,102 @@
+package com.sjsu.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of the application against the embedded stand-in database.
+ *
+ * Throughput mode reports operations per second; SampleTime mode reports latency
+ * percentiles (p50 ... p99.99). Run through {@link BenchmarkRunner} to repeat the
+ * suite at several thread counts and keep JSON results for comparison.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DataAccessBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Database {
+
+        /** Multiplier for the seeded data set; see EmbeddedDatabase. */
+        @Param("1")
+        public int scale;
+
+        @Param("16")
+        public int poolSize;
+
+        /** Path to create_and_populate.sql. */
+        @Param("../create_and_populate.sql")
+        public String schema;
+
+        EmbeddedDatabase database;
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            database = EmbeddedDatabase.start(Paths.get(schema), scale);
+            workload = Workload.create(database.getUrl(), EmbeddedDatabase.USERNAME, EmbeddedDatabase.PASSWORD, poolSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            if (workload != null) workload.close();
+            if (database != null) database.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Basket {
+        final SplittableRandom random = new SplittableRandom();
+        int customerId;
+        int[] itemIds;
+        int[] quantities;
+
+        /** A fresh basket of 1 to 5 distinct lines before every call. */
+        @Setup(Level.Invocation)
+        public void next(Database db) {
+            customerId = 1 + random.nextInt(db.database.getCustomerCount());
+            int lines = 1 + random.nextInt(5);
+            itemIds = random.ints(1, db.database.getItemCount() + 1).distinct().limit(lines).toArray();
+            quantities = random.ints(lines, 1, 4).toArray();
+        }
+    }
+
+    @Benchmark
+    public int placeOrder(Database db, Basket basket) throws Exception {
+        return db.workload.placeOrder(basket.customerId, basket.itemIds, basket.quantities);
+    }
+
+    @Benchmark
+    public int selectAllItems(Database db, Blackhole bh) throws Exception {
+        return db.workload.listItems(bh::consume);
+    }
+
+    @Benchmark
+    public Object checkItemPriceStoredFunction(Database db, Basket basket) throws Exception {
+        return db.workload.priceStoredFunction(basket.itemIds[0], basket.quantities[0]);
+    }
+
+    @Benchmark
+    public Object checkItemPriceEngine(Database db, Basket basket) throws Exception {
+        return db.workload.priceInJvm(basket.itemIds[0], basket.quantities[0]);
+    }
+}
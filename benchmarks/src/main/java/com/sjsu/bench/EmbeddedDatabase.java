@@ -0,0 +1,197 @@
+package com.sjsu.bench;
+
+import ch.vorburger.mariaDB4j.DB;
+import ch.vorburger.mariaDB4j.DBConfigurationBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Local stand-in database for benchmarks and load tests.
+ *
+ * Starts an embedded MariaDB (MySQL-compatible, so the stored procedure and function
+ * in create_and_populate.sql behave as in production), runs that script, then scales
+ * the data set up by {@code scale}: 1,000 items, 100 customers and 1,000 historical
+ * orders per unit of scale. Every item gets enough stock that benchmarks never run out.
+ */
+public final class EmbeddedDatabase implements AutoCloseable {
+
+    public static final String DATABASE = "project";
+    public static final String USERNAME = "root";
+    public static final String PASSWORD = "";
+
+    private final DB db;
+    private final String url;
+    private int itemCount;
+    private int customerCount;
+
+    private EmbeddedDatabase(DB db, String url) {
+        this.db = db;
+        this.url = url;
+    }
+
+    /**
+     * @param schemaScript path to create_and_populate.sql
+     */
+    public static EmbeddedDatabase start(Path schemaScript, int scale) throws Exception {
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        config.setPort(0); // any free port
+        DB db = DB.newEmbeddedDB(config.build());
+        db.start();
+        db.createDB(DATABASE);
+
+        String url = config.getURL(DATABASE) + "?useSSL=false&rewriteBatchedStatements=true";
+        EmbeddedDatabase database = new EmbeddedDatabase(db, url);
+        try (Connection conn = DriverManager.getConnection(url, USERNAME, PASSWORD)) {
+            runScript(conn, schemaScript);
+            database.scaleUp(conn, scale);
+        } catch (Exception e) {
+            database.close();
+            throw e;
+        }
+        return database;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public int getCustomerCount() {
+        return customerCount;
+    }
+
+    /**
+     * Runs a mysql-client style script: honours DELIMITER lines and drops -- comments.
+     */
+    static void runScript(Connection conn, Path script) throws IOException, SQLException {
+        String delimiter = ";";
+        StringBuilder statement = new StringBuilder();
+        try (Statement stmt = conn.createStatement()) {
+            for (String raw : Files.readAllLines(script, StandardCharsets.UTF_8)) {
+                int comment = raw.indexOf("--");
+                String line = comment >= 0 ? raw.substring(0, comment) : raw;
+                String trimmed = line.trim();
+                if (trimmed.toUpperCase().startsWith("DELIMITER ")) {
+                    delimiter = trimmed.substring("DELIMITER ".length()).trim();
+                    continue;
+                }
+                if (trimmed.isEmpty()) continue;
+
+                statement.append(line).append('\n');
+                if (trimmed.endsWith(delimiter)) {
+                    String sql = statement.toString().trim();
+                    sql = sql.substring(0, sql.length() - delimiter.length()).trim();
+                    if (!sql.isEmpty()) stmt.execute(sql);
+                    statement.setLength(0);
+                }
+            }
+        }
+    }
+
+    private void scaleUp(Connection conn, int scale) throws SQLException {
+        SplittableRandom random = new SplittableRandom(42);
+        conn.setAutoCommit(false);
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO Item (Name, Price, CategoryID, DiscountID) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < 1000 * scale; i++) {
+                ps.setString(1, "Bench Item " + i);
+                ps.setBigDecimal(2, BigDecimal.valueOf(100 + random.nextInt(100_000), 2));
+                ps.setInt(3, 1 + random.nextInt(5));
+                if (random.nextInt(3) == 0) ps.setNull(4, Types.INTEGER);
+                else ps.setInt(4, 1 + random.nextInt(5));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO Customer (FirstName, LastName, Phone, Email) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < 100 * scale; i++) {
+                ps.setString(1, "Bench");
+                ps.setString(2, "Customer" + i);
+                ps.setString(3, String.format("555%07d", i));
+                ps.setString(4, "bench" + i + "@example.com");
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        conn.commit();
+
+        itemCount = maxId(conn, "Item");
+        customerCount = maxId(conn, "Customer");
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("""
+                    INSERT INTO InventoryEntry (ItemID, Quantity, StockDate)
+                    SELECT i.ID, 0, '2025-01-01' FROM Item i
+                    WHERE NOT EXISTS (SELECT 1 FROM InventoryEntry ie WHERE ie.ItemID = i.ID)
+                    """);
+            stmt.executeUpdate("UPDATE InventoryEntry SET Quantity = 1000000000");
+        }
+
+        List<Integer> orderIds = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO Orders (CustomerID) VALUES (?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < 1000 * scale; i++) {
+                ps.setInt(1, 1 + random.nextInt(customerCount));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                while (keys.next()) orderIds.add(keys.getInt(1));
+            }
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT IGNORE INTO OrderLine (OrderID, ItemID, Quantity, Total) VALUES (?, ?, ?, ?)")) {
+            for (int orderId : orderIds) {
+                int lines = 1 + random.nextInt(3);
+                for (int l = 0; l < lines; l++) {
+                    int quantity = 1 + random.nextInt(4);
+                    ps.setInt(1, orderId);
+                    ps.setInt(2, 1 + random.nextInt(itemCount));
+                    ps.setInt(3, quantity);
+                    ps.setBigDecimal(4, BigDecimal.valueOf(quantity * (100 + random.nextInt(100_000)), 2));
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    private static int maxId(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(ID) FROM " + table)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            db.stop();
+        } catch (Exception e) {
+            System.err.println("Error stopping embedded database: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.sjsu.bench;
+
+import java.util.function.Consumer;
+
+/**
+ * The application operations being benchmarked.
+ *
+ * The application's classes live in the default package, which code in a named
+ * package (and JMH requires one) cannot refer to. The implementation,
+ * {@code BenchmarkWorkload}, therefore sits in the default package and is loaded
+ * by name once per trial; the benchmark methods then call it through this interface.
+ */
+public interface Workload extends AutoCloseable {
+
+    String IMPLEMENTATION = "BenchmarkWorkload";
+
+    static Workload create(String jdbcUrl, String username, String password, int poolSize) throws Exception {
+        Workload workload = (Workload) Class.forName(IMPLEMENTATION).getDeclaredConstructor().newInstance();
+        workload.open(jdbcUrl, username, password, poolSize);
+        return workload;
+    }
+
+    void open(String jdbcUrl, String username, String password, int poolSize) throws Exception;
+
+    /** OrderService.placeOrder, the path behind placeOrderTransaction. */
+    int placeOrder(int customerId, int[] itemIds, int[] quantities) throws Exception;
+
+    /** DataAccess.listItems, the query behind selectAllItems. */
+    int listItems(Consumer<Object> sink) throws Exception;
+
+    /** The CalculateDiscountedPrice stored function. */
+    Object priceStoredFunction(int itemId, int quantity) throws Exception;
+
+    /** PricingEngine.price, which checkItemPrice uses. */
+    Object priceInJvm(int itemId, int quantity) throws Exception;
+
+    @Override
+    void close();
+}
@@ -80,6 +80,7 @@ CREATE TABLE Customer (
 CREATE TABLE `Order` (
    ID INT PRIMARY KEY AUTO_INCREMENT,
    CustomerID INT NOT NULL,
+   OrderDate TIMESTAMP NULL DEFAULT CURRENT_TIMESTAMP,
    FOREIGN KEY (CustomerID) REFERENCES Customer(ID)
        ON DELETE CASCADE
        ON UPDATE CASCADE
@@ -264,6 +265,11 @@ alter table Payment drop foreign key Payment_ibfk_1;
 
 rename table `Order` to Orders;
 
+-- Date the sample orders by their first payment, as migration 7 does for existing orders
+UPDATE Orders o
+JOIN (SELECT orderID, MIN(paymentDate) AS FirstPaid FROM Payment GROUP BY orderID) p ON p.orderID = o.ID
+SET o.OrderDate = p.FirstPaid;
+
 -- ===== Add CHECK constraint =====
 ALTER TABLE Item
 ADD CONSTRAINT CHK_PositivePrice
@@ -280,9 +286,25 @@ CHECK (Amount > 0);
 -- ===== Create INDEX =====
 CREATE INDEX idx_item_category ON Item (CategoryID);
 
-CREATE INDEX idx_payment_order ON Payment (OrderID);
+-- Payment totals per order (payment reconciliation) straight from the index
+CREATE INDEX idx_payment_order_amount ON Payment (OrderID, Amount);
+
+-- Latest stock per item (UpdateInventoryOnSale): ItemID lookup, StockDate order
+CREATE INDEX idx_inventory_item_date ON InventoryEntry (ItemID, StockDate);
+
+-- OrderLine's primary key starts with ItemID; joins and paging go by OrderID
+CREATE INDEX idx_orderline_order ON OrderLine (OrderID, ItemID, Total);
+
+CREATE INDEX idx_orders_customer ON Orders (CustomerID);
 
-CREATE INDEX idx_inventory_item ON InventoryEntry (ItemID);
+CREATE INDEX idx_item_discount ON Item (DiscountID);
+
+-- Orders placed in a date window (reorder job sales velocity) without scanning Orders
+CREATE INDEX idx_orders_date ON Orders (OrderDate);
+
+-- Existing databases get the indexes above with
+--   mvn exec:java -Dexec.mainClass="IndexMigrations" -Dexec.args="apply"
+-- and QueryPlanAnalyzer checks the plans of the application's statements.
 
 -- ===== Create VIEW for Sales Summary =====
 CREATE OR REPLACE VIEW SalesSummary AS
@@ -398,3 +420,66 @@ DELIMITER ;
 -- ===== Test Function =====
 SELECT CalculateDiscountedPrice(1, 2) AS DiscountedPrice;
    
+
+-- ===== Create table for the inventory ledger's write-behind journal =====
+-- Each row is a stock decrement committed together with its order and not yet
+-- applied to InventoryEntry. The application applies and deletes them in batches.
+CREATE TABLE IF NOT EXISTS InventoryReservation (
+   ID INT PRIMARY KEY AUTO_INCREMENT,
+   OrderID INT NOT NULL,
+   ItemID INT NOT NULL,
+   Quantity INT NOT NULL,
+   FOREIGN KEY (ItemID) REFERENCES Item(ID)
+       ON DELETE CASCADE
+       ON UPDATE CASCADE
+);
+
+-- ===== Create table for the incrementally maintained sales summary =====
+-- Updated by each order transaction; rebuild it from the SalesSummary view with
+--   mvn exec:java -Dexec.mainClass="SalesSummaryStore" -Dexec.args="backfill"
+CREATE TABLE IF NOT EXISTS CustomerSalesSummary (
+   CustomerID INT PRIMARY KEY,
+   OrderCount INT NOT NULL,
+   TotalSpent DECIMAL(15, 2) NOT NULL,
+   INDEX idx_summary_total (TotalSpent),
+   FOREIGN KEY (CustomerID) REFERENCES Customer(ID)
+       ON DELETE CASCADE
+       ON UPDATE CASCADE
+);
+
+-- ===== Bulk item import progress =====
+-- One row per file being imported by ItemImporter, written in each chunk's transaction
+CREATE TABLE IF NOT EXISTS ImportCheckpoint (
+   FileName VARCHAR(512) PRIMARY KEY,
+   LinesDone BIGINT NOT NULL,
+   UpdatedAt TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+
+-- ===== Catalog change tracking for the application's in-memory catalog replica =====
+-- LastModified tells the replica which rows changed since its last refresh;
+-- CatalogDeletion records deleted rows, which leave nothing behind to timestamp.
+ALTER TABLE Category ADD COLUMN LastModified TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6);
+ALTER TABLE Discount ADD COLUMN LastModified TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6);
+ALTER TABLE Item ADD COLUMN LastModified TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6);
+ALTER TABLE Customer ADD COLUMN LastModified TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6);
+CREATE INDEX idx_category_modified ON Category (LastModified);
+CREATE INDEX idx_discount_modified ON Discount (LastModified);
+CREATE INDEX idx_item_modified ON Item (LastModified);
+CREATE INDEX idx_customer_modified ON Customer (LastModified);
+
+CREATE TABLE IF NOT EXISTS CatalogDeletion (
+   ID BIGINT PRIMARY KEY AUTO_INCREMENT,
+   TableName VARCHAR(32) NOT NULL,
+   RowID INT NOT NULL,
+   DeletedAt TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),
+   INDEX idx_catalog_deletion_time (DeletedAt)
+);
+
+CREATE TRIGGER trg_category_deleted AFTER DELETE ON Category FOR EACH ROW
+   INSERT INTO CatalogDeletion (TableName, RowID) VALUES ('Category', OLD.ID);
+CREATE TRIGGER trg_discount_deleted AFTER DELETE ON Discount FOR EACH ROW
+   INSERT INTO CatalogDeletion (TableName, RowID) VALUES ('Discount', OLD.ID);
+CREATE TRIGGER trg_item_deleted AFTER DELETE ON Item FOR EACH ROW
+   INSERT INTO CatalogDeletion (TableName, RowID) VALUES ('Item', OLD.ID);
+CREATE TRIGGER trg_customer_deleted AFTER DELETE ON Customer FOR EACH ROW
+   INSERT INTO CatalogDeletion (TableName, RowID) VALUES ('Customer', OLD.ID);
@@ -0,0 +1,402 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * In-memory copy of Category, Discount, Item and Customer, so catalog listings and lookups
+ * never reach the database.
+ *
+ * Each table is held as a sorted {@code int[]} of IDs with a parallel array of rows, and
+ * listings are joined and ordered in memory the way their SQL would. A refresh asks only
+ * for rows whose LastModified is at or after the previous refresh, and for the IDs the
+ * delete triggers logged in CatalogDeletion since then (see {@link IndexMigrations}
+ * version 6). All of it is read in one transaction, merged into new arrays and published
+ * with a single reference swap, so readers always see one consistent version of the whole
+ * catalog and never wait for a refresh.
+ *
+ * A row written by a transaction that was still open during the previous refresh carries
+ * a timestamp from before that refresh, but becomes visible only after it. So the next
+ * refresh starts no later than the start of the oldest transaction InnoDB had open
+ * (information_schema.innodb_trx, which needs the PROCESS privilege) when the previous one
+ * read the clock, and at least {@code overlapMs} before that clock. While a transaction
+ * stays open, every refresh re-reads what changed since it began. Re-reading a row is
+ * harmless.
+ *
+ * Refreshes run every {@code refreshMs}, and right away after the application changes an
+ * item. Changes made directly in MySQL show up within {@code refreshMs}.
+ */
+public class CatalogReplica implements AutoCloseable {
+
+    private static final QueryMetrics.Timer REFRESH_TIMER = QueryMetrics.timer("CatalogReplica.refresh");
+
+    /** The server clock, and the start of the oldest open transaction, or the clock if there is none. */
+    static final String SERVER_TIME = """
+            SELECT CURRENT_TIMESTAMP(6), LEAST(CURRENT_TIMESTAMP(6), COALESCE(MIN(trx_started), CURRENT_TIMESTAMP(6)))
+            FROM information_schema.innodb_trx
+            """;
+
+    static final String CATEGORIES_SINCE = "SELECT ID, Name, Description FROM Category WHERE LastModified >= ?";
+
+    static final String DISCOUNTS_SINCE = "SELECT ID, Description, discountType, startDate, endDate FROM Discount WHERE LastModified >= ?";
+
+    static final String ITEMS_SINCE = "SELECT ID, Name, Price, CategoryID, DiscountID FROM Item WHERE LastModified >= ?";
+
+    static final String CUSTOMERS_SINCE = "SELECT ID, FirstName, LastName, Phone, Email FROM Customer WHERE LastModified >= ?";
+
+    static final String DELETIONS_SINCE = "SELECT TableName, RowID FROM CatalogDeletion WHERE DeletedAt >= ?";
+
+    /** Before any row: the first refresh loads everything. */
+    private static final Timestamp EVERYTHING = new Timestamp(0);
+
+    /** An item as stored; a CategoryID or DiscountID of 0 stands for NULL. */
+    private static final class Item {
+        final String name;
+        final BigDecimal price;
+        final int categoryId;
+        final int discountId;
+
+        Item(String name, BigDecimal price, int categoryId, int discountId) {
+            this.name = name;
+            this.price = price;
+            this.categoryId = categoryId;
+            this.discountId = discountId;
+        }
+    }
+
+    /** Rows of one table, sorted by ID. Never modified once built. */
+    private static final class Table<R> {
+        final int[] ids;
+        final Object[] rows;
+
+        Table(int[] ids, Object[] rows) {
+            this.ids = ids;
+            this.rows = rows;
+        }
+
+        @SuppressWarnings("unchecked")
+        R get(int id) {
+            int i = Arrays.binarySearch(ids, id);
+            return i < 0 ? null : (R) rows[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        R at(int index) {
+            return (R) rows[index];
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        /** A new table with {@code upserts} added or replaced and {@code deletes} removed. */
+        Table<R> apply(TreeMap<Integer, R> upserts, Set<Integer> deletes) {
+            if (upserts.isEmpty() && deletes.isEmpty()) return this;
+            int[] newIds = new int[ids.length + upserts.size()];
+            Object[] newRows = new Object[newIds.length];
+            int n = 0;
+            int i = 0;
+            // Merge two sorted sequences; an upserted ID replaces the old row
+            for (var e : upserts.entrySet()) {
+                int id = e.getKey();
+                while (i < ids.length && ids[i] < id) {
+                    if (!deletes.contains(ids[i])) {
+                        newIds[n] = ids[i];
+                        newRows[n++] = rows[i];
+                    }
+                    i++;
+                }
+                if (i < ids.length && ids[i] == id) i++;
+                if (!deletes.contains(id)) {
+                    newIds[n] = id;
+                    newRows[n++] = e.getValue();
+                }
+            }
+            for (; i < ids.length; i++) {
+                if (!deletes.contains(ids[i])) {
+                    newIds[n] = ids[i];
+                    newRows[n++] = rows[i];
+                }
+            }
+            return new Table<>(Arrays.copyOf(newIds, n), Arrays.copyOf(newRows, n));
+        }
+
+        /** Positions of the rows in the order of {@code order}. */
+        int[] sortedBy(Comparator<R> order) {
+            Integer[] positions = new Integer[ids.length];
+            for (int p = 0; p < positions.length; p++) positions[p] = p;
+            Arrays.sort(positions, (a, b) -> order.compare(at(a), at(b)));
+            int[] sorted = new int[positions.length];
+            for (int p = 0; p < sorted.length; p++) sorted[p] = positions[p];
+            return sorted;
+        }
+    }
+
+    /** One consistent version of the whole catalog. */
+    private static final class Snapshot {
+        final Table<Rows.Category> categories;
+        final Table<Rows.Discount> discounts;
+        final Table<Item> items;
+        final Table<Rows.Customer> customers;
+        // Positions in the listing orders: categories by name, discounts by start date, customers by name
+        final int[] categoryOrder;
+        final int[] discountOrder;
+        final int[] customerOrder;
+
+        Snapshot(Table<Rows.Category> categories, Table<Rows.Discount> discounts, Table<Item> items,
+                 Table<Rows.Customer> customers, Snapshot previous) {
+            this.categories = categories;
+            this.discounts = discounts;
+            this.items = items;
+            this.customers = customers;
+            this.categoryOrder = previous != null && previous.categories == categories
+                    ? previous.categoryOrder : categories.sortedBy(CATEGORY_ORDER);
+            this.discountOrder = previous != null && previous.discounts == discounts
+                    ? previous.discountOrder : discounts.sortedBy(DISCOUNT_ORDER);
+            this.customerOrder = previous != null && previous.customers == customers
+                    ? previous.customerOrder : customers.sortedBy(CUSTOMER_ORDER);
+        }
+    }
+
+    // Accent- and case-insensitive, like MySQL's default collation
+    private static final Collator COLLATOR = Collator.getInstance(Locale.ROOT);
+
+    static {
+        COLLATOR.setStrength(Collator.PRIMARY);
+    }
+
+    private static final Comparator<String> TEXT = Comparator.nullsFirst(COLLATOR::compare);
+
+    private static final Comparator<Rows.Category> CATEGORY_ORDER =
+            Comparator.comparing((Rows.Category c) -> c.name, TEXT).thenComparingInt(c -> c.id);
+
+    private static final Comparator<Rows.Discount> DISCOUNT_ORDER =
+            Comparator.comparing((Rows.Discount d) -> d.startDate, Comparator.nullsFirst(Comparator.<Date>naturalOrder()))
+                    .thenComparingInt(d -> d.id);
+
+    private static final Comparator<Rows.Customer> CUSTOMER_ORDER =
+            Comparator.comparing((Rows.Customer c) -> c.lastName, TEXT).thenComparing(c -> c.firstName, TEXT)
+                    .thenComparingInt(c -> c.id);
+
+    private final ConnectionPool pool;
+    private final long overlapMs;
+    private final ScheduledExecutorService refresher;
+    private volatile Snapshot snapshot;
+    // Guarded by this
+    private Timestamp since = EVERYTHING;
+
+    public CatalogReplica(ConnectionPool pool, long overlapMs) {
+        this.pool = pool;
+        this.overlapMs = overlapMs;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-replica-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Loads the whole catalog and starts refreshing it every {@code refreshMs}.
+     */
+    public void start(long refreshMs) throws SQLException {
+        refresh();
+        if (refreshMs > 0) {
+            refresher.scheduleWithFixedDelay(this::refreshQuietly, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Refreshes in the background, soon; for after the application changed the catalog. */
+    public void refreshLater() {
+        try {
+            refresher.execute(this::refreshQuietly);
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (SQLException e) {
+            System.err.println("Catalog refresh failed; serving the previous version: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the rows changed since the previous refresh.
+     *
+     * @return rows added, changed or deleted
+     */
+    public synchronized int refresh() throws SQLException {
+        long start = System.nanoTime();
+        try (Connection conn = pool.borrow()) {
+            conn.setAutoCommit(false); // One snapshot for all five reads
+            try {
+                // Before the first read, so that any transaction not yet committed in this
+                // snapshot either is counted here or starts after now
+                Timestamp now;
+                Timestamp oldestOpen;
+                try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(SERVER_TIME)) {
+                    rs.next();
+                    now = rs.getTimestamp(1);
+                    oldestOpen = rs.getTimestamp(2);
+                }
+
+                TreeMap<Integer, Rows.Category> categories = new TreeMap<>();
+                TreeMap<Integer, Rows.Discount> discounts = new TreeMap<>();
+                TreeMap<Integer, Item> items = new TreeMap<>();
+                TreeMap<Integer, Rows.Customer> customers = new TreeMap<>();
+                read(conn, CATEGORIES_SINCE, rs -> categories.put(rs.getInt(1),
+                        new Rows.Category(rs.getInt(1), rs.getString(2), rs.getString(3))));
+                read(conn, DISCOUNTS_SINCE, rs -> discounts.put(rs.getInt(1),
+                        new Rows.Discount(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getDate(4), rs.getDate(5))));
+                read(conn, ITEMS_SINCE, rs -> items.put(rs.getInt(1),
+                        new Item(rs.getString(2), rs.getBigDecimal(3), rs.getInt(4), rs.getInt(5))));
+                read(conn, CUSTOMERS_SINCE, rs -> customers.put(rs.getInt(1),
+                        new Rows.Customer(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5))));
+
+                Set<Integer> deletedCategories = new HashSet<>();
+                Set<Integer> deletedDiscounts = new HashSet<>();
+                Set<Integer> deletedItems = new HashSet<>();
+                Set<Integer> deletedCustomers = new HashSet<>();
+                if (since != EVERYTHING) {
+                    read(conn, DELETIONS_SINCE, rs -> {
+                        Set<Integer> target = switch (rs.getString(1)) {
+                            case "Category" -> deletedCategories;
+                            case "Discount" -> deletedDiscounts;
+                            case "Item" -> deletedItems;
+                            case "Customer" -> deletedCustomers;
+                            default -> null;
+                        };
+                        if (target != null) target.add(rs.getInt(2));
+                    });
+                }
+                conn.commit();
+
+                int changes = categories.size() + discounts.size() + items.size() + customers.size()
+                        + deletedCategories.size() + deletedDiscounts.size() + deletedItems.size() + deletedCustomers.size();
+                Snapshot current = snapshot;
+                if (current == null) {
+                    Table<Rows.Category> noCategories = new Table<>(new int[0], new Object[0]);
+                    Table<Rows.Discount> noDiscounts = new Table<>(new int[0], new Object[0]);
+                    Table<Item> noItems = new Table<>(new int[0], new Object[0]);
+                    Table<Rows.Customer> noCustomers = new Table<>(new int[0], new Object[0]);
+                    current = new Snapshot(noCategories, noDiscounts, noItems, noCustomers, null);
+                }
+                if (changes > 0) {
+                    snapshot = new Snapshot(
+                            current.categories.apply(categories, deletedCategories),
+                            current.discounts.apply(discounts, deletedDiscounts),
+                            current.items.apply(items, deletedItems),
+                            current.customers.apply(customers, deletedCustomers),
+                            current);
+                } else if (snapshot == null) {
+                    snapshot = current;
+                }
+                since = new Timestamp(Math.min(now.getTime() - overlapMs, oldestOpen.getTime()));
+                REFRESH_TIMER.record(start, changes);
+                return changes;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            REFRESH_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        void accept(ResultSet rs) throws SQLException;
+    }
+
+    private void read(Connection conn, String sql, RowHandler handler) throws SQLException {
+        try (PreparedStatement ps = Main.prepareStreaming(conn, sql)) {
+            ps.setTimestamp(1, since);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) handler.accept(rs);
+            }
+        }
+    }
+
+    // ===== Listings, in the order of their SQL =====
+
+    public int listItems(Consumer<Rows.Item> sink) {
+        Snapshot s = snapshot;
+        for (int p = 0; p < s.items.size(); p++) sink.accept(toRow(s, s.items.ids[p], s.items.at(p)));
+        return s.items.size();
+    }
+
+    public int listCategories(Consumer<Rows.Category> sink) {
+        Snapshot s = snapshot;
+        for (int p : s.categoryOrder) sink.accept(s.categories.at(p));
+        return s.categoryOrder.length;
+    }
+
+    public int listDiscounts(Consumer<Rows.Discount> sink) {
+        Snapshot s = snapshot;
+        for (int p : s.discountOrder) sink.accept(s.discounts.at(p));
+        return s.discountOrder.length;
+    }
+
+    public int listCustomers(Consumer<Rows.Customer> sink) {
+        Snapshot s = snapshot;
+        for (int p : s.customerOrder) sink.accept(s.customers.at(p));
+        return s.customerOrder.length;
+    }
+
+    // ===== Lookups =====
+
+    /** The item with its category name and discount description, or null. */
+    public Rows.Item item(int id) {
+        Snapshot s = snapshot;
+        Item item = s.items.get(id);
+        return item == null ? null : toRow(s, id, item);
+    }
+
+    public Rows.Category category(int id) {
+        return snapshot.categories.get(id);
+    }
+
+    public Rows.Discount discount(int id) {
+        return snapshot.discounts.get(id);
+    }
+
+    public Rows.Customer customer(int id) {
+        return snapshot.customers.get(id);
+    }
+
+    private static Rows.Item toRow(Snapshot s, int id, Item item) {
+        Rows.Category category = item.categoryId == 0 ? null : s.categories.get(item.categoryId);
+        Rows.Discount discount = item.discountId == 0 ? null : s.discounts.get(item.discountId);
+        return new Rows.Item(id, item.name, category == null ? null : category.name,
+                discount == null ? null : discount.description, item.price);
+    }
+
+    public String describe() {
+        Snapshot s = snapshot;
+        return String.format("Catalog replica: %d items | %d categories | %d discounts | %d customers",
+                s.items.size(), s.categories.size(), s.discounts.size(), s.customers.size());
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+}
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless closed-loop load generator that simulates N checkout lanes.
+ *
+ * Each lane repeatedly picks an operation from the configured mix and runs it through
+ * the same code the console menu uses: placing an order (OrderService), checking a
+ * price (PricingEngine) or browsing the item listing (Listings.ITEMS, on a read
+ * connection from ReadRouter, as View Data &gt; Items does; from the CatalogReplica when
+ * it is enabled). Baskets
+ * hold 1 to 5 items, skewed towards a small set of popular items.
+ *
+ * After a warmup period, it reports throughput, p50/p99/p99.9 latency per operation,
+ * the rollback rate of all transactions (QueryMetrics' commit and rollback counters over
+ * the measured window), and the orders rejected for insufficient inventory or failed
+ * for any other reason.
+ *
+ * Usage: CheckoutLoadDriver [lanes=8] [durationSec=60] [warmupSec=10] [orderPct=70] [pricePct=20]
+ * (the remaining percentage browses listings). Connection settings come from app.properties.
+ */
+public class CheckoutLoadDriver {
+
+    private final int lanes;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final int orderPct;
+    private final int pricePct;
+
+    private int itemCount;
+    private int customerCount;
+
+    private final LatencyHistogram orderLatency = new LatencyHistogram();
+    private final LatencyHistogram priceLatency = new LatencyHistogram();
+    private final LatencyHistogram browseLatency = new LatencyHistogram();
+
+    private final AtomicLong ordersPlaced = new AtomicLong();
+    private final AtomicLong ordersInsufficient = new AtomicLong();
+    private final AtomicLong ordersFailed = new AtomicLong();
+    private final AtomicLong otherErrors = new AtomicLong();
+    private long commitsAtStart;
+    private long rollbacksAtStart;
+
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+
+    public CheckoutLoadDriver(int lanes, int durationSec, int warmupSec, int orderPct, int pricePct) {
+        if (orderPct + pricePct > 100) throw new IllegalArgumentException("orderPct + pricePct must not exceed 100");
+        this.lanes = lanes;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSec);
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSec);
+        this.orderPct = orderPct;
+        this.pricePct = pricePct;
+    }
+
+    public void run() throws SQLException, InterruptedException {
+        try (Connection conn = Main.getConnection()) {
+            itemCount = maxId(conn, "Item");
+            customerCount = maxId(conn, "Customer");
+        }
+        if (itemCount == 0 || customerCount == 0) throw new SQLException("Need at least one item and one customer.");
+
+        // Initialise shared services before the clock starts
+        OrderService orders = Main.getOrderService();
+        PricingEngine pricing = Main.getPricingEngine();
+        Main.getCatalogReplica();
+
+        CountDownLatch done = new CountDownLatch(lanes);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < lanes; i++) {
+            long seed = 1000L + i;
+            Thread t = new Thread(() -> {
+                try {
+                    lane(new SplittableRandom(seed), orders, pricing);
+                } finally {
+                    done.countDown();
+                }
+            }, "checkout-lane-" + i);
+            threads.add(t);
+        }
+
+        System.out.printf("Running %d lanes: %d s warmup, %d s measured, mix order %d%% / price %d%% / browse %d%%%n",
+                lanes, TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos),
+                orderPct, pricePct, 100 - orderPct - pricePct);
+        threads.forEach(Thread::start);
+
+        TimeUnit.NANOSECONDS.sleep(warmupNanos);
+        resetStats();
+        measuring = true;
+        long start = System.nanoTime();
+        TimeUnit.NANOSECONDS.sleep(durationNanos);
+        running = false;
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        report(elapsed);
+    }
+
+    private void lane(SplittableRandom random, OrderService orders, PricingEngine pricing) {
+        // Each lane is one terminal: after it orders, its listings read from the primary for a while
+        Object session = new Object();
+        while (running) {
+            int roll = random.nextInt(100);
+            long start = System.nanoTime();
+            if (roll < orderPct) {
+                placeOrder(random, orders, session);
+                if (measuring) orderLatency.recordSince(start);
+            } else if (roll < orderPct + pricePct) {
+                try {
+                    pricing.price(pickItem(random), 1 + random.nextInt(3));
+                } catch (SQLException e) {
+                    otherErrors.incrementAndGet();
+                }
+                if (measuring) priceLatency.recordSince(start);
+            } else {
+                try (Connection conn = Main.getReadConnection(session);
+                     RowWriter out = RowWriter.of(RowWriter.Format.TEXT, Writer.nullWriter())) {
+                    Listings.ITEMS.write(conn, out);
+                } catch (SQLException | IOException e) {
+                    otherErrors.incrementAndGet();
+                }
+                if (measuring) browseLatency.recordSince(start);
+            }
+        }
+    }
+
+    private void placeOrder(SplittableRandom random, OrderService orders, Object session) {
+        int customerId = 1 + random.nextInt(customerCount);
+        int size = 1 + random.nextInt(5);
+        List<OrderService.Line> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            lines.add(new OrderService.Line(pickItem(random), 1 + random.nextInt(3)));
+        }
+        try {
+            orders.placeOrder(customerId, lines);
+            Main.customerOrdersChanged(customerId);
+            Main.getReadRouter().wrote(session);
+            ordersPlaced.incrementAndGet();
+        } catch (SQLException e) {
+            String message = e.getMessage();
+            if (message != null && message.startsWith("Insufficient inventory")) {
+                ordersInsufficient.incrementAndGet();
+            } else {
+                ordersFailed.incrementAndGet();
+            }
+        }
+    }
+
+    /** Squaring a uniform draw sends about 30% of picks to the first 10% of items. */
+    private int pickItem(SplittableRandom random) {
+        double u = random.nextDouble();
+        return 1 + (int) (u * u * itemCount);
+    }
+
+    private void resetStats() {
+        orderLatency.reset();
+        priceLatency.reset();
+        browseLatency.reset();
+        ordersPlaced.set(0);
+        ordersInsufficient.set(0);
+        ordersFailed.set(0);
+        otherErrors.set(0);
+        commitsAtStart = QueryMetrics.getCommits();
+        rollbacksAtStart = QueryMetrics.getRollbacks();
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long attempted = ordersPlaced.get() + ordersInsufficient.get() + ordersFailed.get();
+        long total = orderLatency.getCount() + priceLatency.getCount() + browseLatency.getCount();
+        long commits = QueryMetrics.getCommits() - commitsAtStart;
+        long rollbacks = QueryMetrics.getRollbacks() - rollbacksAtStart;
+
+        System.out.println("\n=== Checkout Load Results ===");
+        System.out.printf("Measured %.1f s, %d operations, %.1f ops/s%n", seconds, total, total / seconds);
+        System.out.printf("Orders  %8.1f/s | %s%n", orderLatency.getCount() / seconds, orderLatency.summary());
+        System.out.printf("Price   %8.1f/s | %s%n", priceLatency.getCount() / seconds, priceLatency.summary());
+        System.out.printf("Browse  %8.1f/s | %s%n", browseLatency.getCount() / seconds, browseLatency.summary());
+        System.out.printf("Transactions %d committed, %d rolled back | rollback rate %.2f%%%n",
+                commits, rollbacks, percent(rollbacks, commits + rollbacks));
+        System.out.printf("Orders placed %d of %d | insufficient inventory %d (%.2f%%) | failed %d (%.2f%%) | other errors %d%n",
+                ordersPlaced.get(), attempted,
+                ordersInsufficient.get(), percent(ordersInsufficient.get(), attempted),
+                ordersFailed.get(), percent(ordersFailed.get(), attempted),
+                otherErrors.get());
+        System.out.println(Main.getPool().describe());
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0.0 : 100.0 * part / whole;
+    }
+
+    private static int maxId(Connection conn, String table) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT COALESCE(MAX(ID), 0) FROM " + table);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    public static void main(String[] args) {
+        int lanes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int duration = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        int warmup = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int orderPct = args.length > 3 ? Integer.parseInt(args[3]) : 70;
+        int pricePct = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+
+        if (Main.getPool() == null) {
+            System.out.println("Failed to connect to database.");
+            return;
+        }
+        try {
+            new CheckoutLoadDriver(lanes, duration, warmup, orderPct, pricePct).run();
+        } catch (SQLException e) {
+            System.err.println("Load run failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            Main.closeConnection();
+        }
+    }
+}
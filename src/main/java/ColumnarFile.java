@@ -0,0 +1,319 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only columnar snapshot of one table, for analytics away from the OLTP database.
+ *
+ * Every column is a plain array of ints or longs: INT and DATE (epoch day) as 4-byte ints,
+ * DECIMAL as 8-byte longs scaled by 10^scale, and DICT (low-cardinality strings) as 4-byte
+ * codes into a dictionary kept in the header. SQL NULL is stored as {@link #NULL_INT},
+ * {@link #NULL_LONG} or code -1. Columns start on 8-byte boundaries and are memory-mapped
+ * when read, so scanning them costs no heap and no parsing.
+ *
+ * Layout: magic, version, row count, column count, then per column its name, type, scale,
+ * data offset and (for DICT) dictionary; then the column data.
+ */
+public final class ColumnarFile {
+
+    public static final int NULL_INT = Integer.MIN_VALUE;
+    public static final long NULL_LONG = Long.MIN_VALUE;
+
+    private static final int MAGIC = 0x434F4C31; // "COL1"
+    private static final int VERSION = 1;
+
+    public enum Type {
+        INT(4), DATE(4), DECIMAL(8), DICT(4);
+
+        final int width;
+
+        Type(int width) {
+            this.width = width;
+        }
+    }
+
+    /** Name, type and (for DECIMAL) scale of one column. */
+    public static final class Spec {
+        public final String name;
+        public final Type type;
+        public final int scale;
+
+        private Spec(String name, Type type, int scale) {
+            this.name = name;
+            this.type = type;
+            this.scale = scale;
+        }
+
+        public static Spec ints(String name) {
+            return new Spec(name, Type.INT, 0);
+        }
+
+        public static Spec date(String name) {
+            return new Spec(name, Type.DATE, 0);
+        }
+
+        public static Spec decimal(String name, int scale) {
+            return new Spec(name, Type.DECIMAL, scale);
+        }
+
+        public static Spec dict(String name) {
+            return new Spec(name, Type.DICT, 0);
+        }
+    }
+
+    private static final class Column {
+        final Spec spec;
+        final String[] dictionary;
+        final ByteBuffer data;
+
+        Column(Spec spec, String[] dictionary, ByteBuffer data) {
+            this.spec = spec;
+            this.dictionary = dictionary;
+            this.data = data;
+        }
+    }
+
+    private final int rowCount;
+    private final Map<String, Column> columns;
+
+    private ColumnarFile(int rowCount, Map<String, Column> columns) {
+        this.rowCount = rowCount;
+        this.columns = columns;
+    }
+
+    /** Memory-maps a file written by {@link Writer}. */
+    public static ColumnarFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (in.readInt() != MAGIC) throw new IOException("Not a columnar file: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported columnar file version " + version + ": " + file);
+            long rows = in.readLong();
+            int columnCount = in.readInt();
+
+            List<Spec> specs = new ArrayList<>(columnCount);
+            List<Long> offsets = new ArrayList<>(columnCount);
+            List<String[]> dictionaries = new ArrayList<>(columnCount);
+            for (int c = 0; c < columnCount; c++) {
+                String name = in.readUTF();
+                Type type = Type.values()[in.readByte()];
+                int scale = in.readByte();
+                offsets.add(in.readLong());
+                String[] dictionary = null;
+                if (type == Type.DICT) {
+                    dictionary = new String[in.readInt()];
+                    for (int i = 0; i < dictionary.length; i++) dictionary[i] = in.readUTF();
+                }
+                specs.add(new Spec(name, type, scale));
+                dictionaries.add(dictionary);
+            }
+
+            // The mapping stays valid after the channel is closed
+            Map<String, Column> columns = new LinkedHashMap<>();
+            for (int c = 0; c < columnCount; c++) {
+                Spec spec = specs.get(c);
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offsets.get(c), rows * spec.type.width);
+                columns.put(spec.name, new Column(spec, dictionaries.get(c), data));
+            }
+            return new ColumnarFile(Math.toIntExact(rows), columns);
+        }
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    private Column column(String name, Type... types) {
+        Column column = columns.get(name);
+        if (column == null) throw new IllegalArgumentException("No column '" + name + "'.");
+        for (Type type : types) {
+            if (column.spec.type == type) return column;
+        }
+        throw new IllegalArgumentException("Column '" + name + "' is " + column.spec.type + ".");
+    }
+
+    /** Values of an INT or DATE column, or the codes of a DICT column. Use absolute get(i). */
+    public IntBuffer ints(String name) {
+        return column(name, Type.INT, Type.DATE, Type.DICT).data.duplicate().asIntBuffer();
+    }
+
+    /** Unscaled values of a DECIMAL column. Use absolute get(i). */
+    public LongBuffer longs(String name) {
+        return column(name, Type.DECIMAL).data.duplicate().asLongBuffer();
+    }
+
+    public int scale(String name) {
+        return column(name, Type.DECIMAL).spec.scale;
+    }
+
+    public String[] dictionary(String name) {
+        return column(name, Type.DICT).dictionary.clone();
+    }
+
+    /**
+     * Writes a columnar file one row at a time. Each column is streamed to its own
+     * temporary file, so memory use does not grow with the row count; {@link #finish}
+     * writes the header and concatenates the columns into the target file. Closing a
+     * writer that was not finished discards what was written.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final Path target;
+        private final Spec[] specs;
+        private final Path[] tempFiles;
+        private final DataOutputStream[] outputs;
+        private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+        private long rows;
+        private int column;
+        private boolean finished;
+
+        public Writer(Path target, Spec... specs) throws IOException {
+            this.target = target;
+            this.specs = specs.clone();
+            this.tempFiles = new Path[specs.length];
+            this.outputs = new DataOutputStream[specs.length];
+            Path dir = target.toAbsolutePath().getParent();
+            for (int c = 0; c < specs.length; c++) {
+                tempFiles[c] = Files.createTempFile(dir, target.getFileName() + "." + c + ".", ".tmp");
+                outputs[c] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFiles[c]), 1 << 16));
+                dictionaries.add(specs[c].type == Type.DICT ? new LinkedHashMap<>() : null);
+            }
+        }
+
+        private DataOutputStream next(Type type) {
+            if (column >= specs.length) throw new IllegalStateException("Row already has " + specs.length + " columns.");
+            if (specs[column].type != type) {
+                throw new IllegalStateException("Column '" + specs[column].name + "' is " + specs[column].type + ", not " + type + ".");
+            }
+            return outputs[column++];
+        }
+
+        public Writer putInt(Integer value) throws IOException {
+            next(Type.INT).writeInt(value == null ? NULL_INT : value);
+            return this;
+        }
+
+        public Writer putDate(LocalDate value) throws IOException {
+            next(Type.DATE).writeInt(value == null ? NULL_INT : Math.toIntExact(value.toEpochDay()));
+            return this;
+        }
+
+        public Writer putDecimal(BigDecimal value) throws IOException {
+            // next() checks the column before its spec is read
+            int index = column;
+            DataOutputStream out = next(Type.DECIMAL);
+            out.writeLong(value == null ? NULL_LONG : value.movePointRight(specs[index].scale).setScale(0, RoundingMode.HALF_UP).longValueExact());
+            return this;
+        }
+
+        public Writer putString(String value) throws IOException {
+            int index = column;
+            DataOutputStream out = next(Type.DICT);
+            Map<String, Integer> dictionary = dictionaries.get(index);
+            out.writeInt(value == null ? -1 : dictionary.computeIfAbsent(value, k -> dictionary.size()));
+            return this;
+        }
+
+        public void endRow() {
+            if (column != specs.length) throw new IllegalStateException("Row has " + column + " of " + specs.length + " columns.");
+            column = 0;
+            rows++;
+        }
+
+        public long rowCount() {
+            return rows;
+        }
+
+        /** Publishes the file. The target is replaced atomically, so readers never see a partial file. */
+        public void finish() throws IOException {
+            if (column != 0) throw new IllegalStateException("Last row is incomplete.");
+            if (finished) return;
+            finished = true;
+            try {
+                for (DataOutputStream out : outputs) out.close();
+
+                // Header size doesn't depend on the offsets' values, so lay it out once to measure it
+                byte[] header = header(new long[specs.length]);
+                long[] offsets = new long[specs.length];
+                long pos = align(header.length);
+                for (int c = 0; c < specs.length; c++) {
+                    offsets[c] = pos;
+                    pos = align(pos + rows * specs[c].type.width);
+                }
+                header = header(offsets);
+
+                Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+                    out.write(header);
+                    long written = header.length;
+                    for (int c = 0; c < specs.length; c++) {
+                        written += pad(out, offsets[c] - written);
+                        written += Files.copy(tempFiles[c], out);
+                    }
+                }
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                for (Path temp : tempFiles) Files.deleteIfExists(temp);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) return;
+            finished = true;
+            for (DataOutputStream out : outputs) out.close();
+            for (Path temp : tempFiles) Files.deleteIfExists(temp);
+        }
+
+        private byte[] header(long[] offsets) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(rows);
+            out.writeInt(specs.length);
+            for (int c = 0; c < specs.length; c++) {
+                out.writeUTF(specs[c].name);
+                out.writeByte(specs[c].type.ordinal());
+                out.writeByte(specs[c].scale);
+                out.writeLong(offsets[c]);
+                if (specs[c].type == Type.DICT) {
+                    Map<String, Integer> dictionary = dictionaries.get(c);
+                    out.writeInt(dictionary.size());
+                    for (String value : dictionary.keySet()) out.writeUTF(value); // Insertion order = code order
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static long align(long pos) {
+            return (pos + 7) & ~7L;
+        }
+
+        private static int pad(OutputStream out, long count) throws IOException {
+            for (long i = 0; i < count; i++) out.write(0);
+            return (int) count;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded JDBC connection pool.
+ *
+ * Callers lease a connection with {@link #borrow()} and give it back by calling
+ * {@code close()} on it (try-with-resources). The pool never hands out more than
+ * {@code maxSize} connections, keeps at least {@code minSize} open, validates
+ * every connection before lending it and closes connections that sat idle longer
+ * than {@code idleTimeoutMs}.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private final String url;
+    private final String username;
+    private final String password;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final int validationTimeoutSec;
+
+    // Most recently returned connection sits at the head, so the tail holds the oldest idle ones
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ScheduledExecutorService evictor;
+
+    // Statistics for sizing the pool
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+
+    /**
+     * Implemented by every connection the pool hands out.
+     */
+    public interface Leased {
+        /** Prepared statements cached on the underlying physical connection. */
+        StatementCache statementCache();
+    }
+
+    /** A physical connection together with the statements prepared on it. */
+    private static final class PhysicalConnection {
+        final Connection conn;
+        final StatementCache statements;
+
+        PhysicalConnection(Connection conn) {
+            this.conn = conn;
+            this.statements = new StatementCache(conn);
+        }
+    }
+
+    private static final class IdleConnection {
+        final PhysicalConnection physical;
+        final long idleSince;
+
+        IdleConnection(PhysicalConnection physical, long idleSince) {
+            this.physical = physical;
+            this.idleSince = idleSince;
+        }
+    }
+
+    public ConnectionPool(String url, String username, String password,
+                          int minSize, int maxSize, long borrowTimeoutMs,
+                          long idleTimeoutMs, long evictionIntervalMs, int validationTimeoutSec) throws SQLException {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.permits = new Semaphore(maxSize, true);
+
+        for (int i = 0; i < minSize; i++) {
+            idle.offerFirst(new IdleConnection(openPhysical(), System.nanoTime()));
+        }
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        if (idleTimeoutMs > 0 && evictionIntervalMs > 0) {
+            evictor.scheduleWithFixedDelay(this::evictIdle, evictionIntervalMs, evictionIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Builds a pool from the {@code db.*} and {@code db.pool.*} keys of app.properties.
+     */
+    public static ConnectionPool fromProperties(Properties props) throws SQLException {
+        return fromProperties(props, "db");
+    }
+
+    /**
+     * Builds a pool from {@code <prefix>.url}, {@code <prefix>.username}, {@code <prefix>.password}
+     * and the shared {@code db.pool.*} sizing keys.
+     */
+    public static ConnectionPool fromProperties(Properties props, String prefix) throws SQLException {
+        return new ConnectionPool(
+                props.getProperty(prefix + ".url"),
+                props.getProperty(prefix + ".username", props.getProperty("db.username")),
+                props.getProperty(prefix + ".password", props.getProperty("db.password")),
+                Integer.parseInt(props.getProperty("db.pool.minSize", "1")),
+                Integer.parseInt(props.getProperty("db.pool.maxSize", "10")),
+                Long.parseLong(props.getProperty("db.pool.borrowTimeoutMs", "5000")),
+                Long.parseLong(props.getProperty("db.pool.idleTimeoutMs", "300000")),
+                Long.parseLong(props.getProperty("db.pool.evictionIntervalMs", "60000")),
+                Integer.parseInt(props.getProperty("db.pool.validationTimeoutSec", "2")));
+    }
+
+    /**
+     * Leases a connection. The caller must close it to return it to the pool.
+     *
+     * @throws SQLException if no connection became available within the borrow timeout
+     */
+    public Connection borrow() throws SQLException {
+        if (closed.get()) throw new SQLException("Connection pool is closed.");
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Timed out after " + borrowTimeoutMs + " ms waiting for a database connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PhysicalConnection physical = takeValidConnection();
+            int current = inUse.incrementAndGet();
+            peakInUse.accumulateAndGet(current, Math::max);
+            borrowCount.incrementAndGet();
+            return wrap(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PhysicalConnection takeValidConnection() throws SQLException {
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            if (isUsable(candidate.physical)) {
+                return candidate.physical;
+            }
+            discard(candidate.physical);
+        }
+        return openPhysical();
+    }
+
+    private boolean isUsable(PhysicalConnection physical) {
+        try {
+            return !physical.conn.isClosed() && physical.conn.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PhysicalConnection openPhysical() throws SQLException {
+        Properties info = new Properties();
+        if (username != null) info.setProperty("user", username);
+        if (password != null) info.setProperty("password", password);
+        // Statements are cached per connection, so let the server parse each one only once
+        info.setProperty("useServerPrepStmts", "true");
+        Connection physical = DriverManager.getConnection(url, info);
+        openCount.incrementAndGet();
+        return new PhysicalConnection(physical);
+    }
+
+    private void discard(PhysicalConnection physical) {
+        openCount.decrementAndGet();
+        try {
+            physical.statements.close();
+            physical.conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    private void release(PhysicalConnection physical) {
+        inUse.decrementAndGet();
+        try {
+            // Never hand the next borrower an open transaction
+            Connection conn = physical.conn;
+            if (!conn.isClosed() && !conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            if (closed.get() || conn.isClosed()) {
+                discard(physical);
+            } else {
+                idle.offerFirst(new IdleConnection(physical, System.nanoTime()));
+            }
+        } catch (SQLException e) {
+            discard(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        while (openCount.get() > minSize) {
+            IdleConnection oldest = idle.pollLast();
+            if (oldest == null) break;
+            if (oldest.idleSince - cutoff > 0) {
+                idle.offerLast(oldest);
+                break;
+            }
+            discard(oldest.physical);
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private Connection wrap(PhysicalConnection physical) {
+        InvocationHandler handler = new LeaseHandler(physical);
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class, Leased.class}, handler);
+    }
+
+    /**
+     * Forwards every call to the physical connection, except close() which returns it to the pool.
+     */
+    private final class LeaseHandler implements InvocationHandler {
+        private final PhysicalConnection pooled;
+        private final Connection physical;
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        LeaseHandler(PhysicalConnection pooled) {
+            this.pooled = pooled;
+            this.physical = pooled.conn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) release(pooled);
+                    return null;
+                case "isClosed":
+                    return returned.get() || physical.isClosed();
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(physical)) return physical.unwrap((Class<?>) args[0]);
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "statementCache":
+                    if (returned.get()) throw new SQLException("Connection has already been returned to the pool.");
+                    return pooled.statements;
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    break;
+            }
+            if (returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    public int getInUseCount() {
+        return inUse.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getOpenCount() {
+        return openCount.get();
+    }
+
+    public int getPeakInUseCount() {
+        return peakInUse.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** Number of threads currently blocked waiting for a connection. */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / borrows;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public String describe() {
+        return String.format("Pool: in-use %d/%d (peak %d) | idle %d | waiting %d | borrows %d | timeouts %d | avg wait %.3f ms | max wait %.3f ms",
+                getInUseCount(), maxSize, getPeakInUseCount(), getIdleCount(), getWaitingCount(),
+                getBorrowCount(), getTimeoutCount(), getAverageWaitMillis(), getMaxWaitMillis());
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        evictor.shutdownNow();
+        IdleConnection c;
+        while ((c = idle.pollFirst()) != null) {
+            discard(c.physical);
+        }
+    }
+}
@@ -0,0 +1,476 @@
+import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Typed data access for the listings, item CRUD and checkout statements.
+ *
+ * Their SQL text lives here. Components that keep state of their own (PricingEngine,
+ * InventoryLedger, KeysetPager, SalesSummaryStore, ...) keep theirs as package-private
+ * constants next to the code that runs them; {@link QueryPlanAnalyzer} probes all of them
+ * through those constants. Statements come from the connection's {@link StatementCache},
+ * so each one is prepared once per pooled connection and reused on every call. Rows are
+ * mapped to {@link Rows} objects by column position.
+ *
+ * Listing methods stream rows to a callback and return the number of rows read.
+ * Every statement is timed by its own {@link QueryMetrics.Timer}.
+ */
+public final class DataAccess {
+
+    // ===== Listings =====
+
+    static final String LIST_ITEMS = """
+            SELECT
+                i.ID,
+                i.Name AS Item,
+                c.Name AS Category,
+                d.Description AS Discount,
+                i.Price
+            FROM Item i
+            LEFT JOIN Category c ON i.CategoryID = c.ID
+            LEFT JOIN Discount d ON i.DiscountID = d.ID
+            ORDER BY i.ID
+            """;
+
+    static final String FIND_ITEM = """
+            SELECT
+                i.ID,
+                i.Name AS Item,
+                c.Name AS Category,
+                d.Description AS Discount,
+                i.Price
+            FROM Item i
+            LEFT JOIN Category c ON i.CategoryID = c.ID
+            LEFT JOIN Discount d ON i.DiscountID = d.ID
+            WHERE i.ID = ?
+            """;
+
+    static final String LIST_CATEGORIES = "SELECT ID, Name, Description FROM Category ORDER BY Name";
+
+    static final String LIST_DISCOUNTS = "SELECT ID, Description, discountType, startDate, endDate FROM Discount ORDER BY startDate";
+
+    static final String LIST_CUSTOMERS = "SELECT ID, FirstName, LastName, Phone, Email FROM Customer ORDER BY LastName, FirstName";
+
+    static final String LIST_ORDERS = """
+            SELECT o.ID, o.CustomerID, c.FirstName, c.LastName
+            FROM Orders o
+            LEFT JOIN Customer c ON o.CustomerID = c.ID
+            ORDER BY o.ID
+            """;
+
+    static final String LIST_PAYMENTS = "SELECT ID, orderID, paymentType, Amount, paymentDate FROM Payment ORDER BY paymentDate";
+
+    static final String LIST_ORDER_LINES = """
+            SELECT ol.OrderID, ol.ItemID, i.Name AS ItemName, ol.Quantity, ol.Total
+            FROM OrderLine ol
+            LEFT JOIN Item i ON ol.ItemID = i.ID
+            ORDER BY ol.OrderID
+            """;
+
+    static final String SALES_SUMMARY = """
+            SELECT CustomerID, CustomerName, OrderCount, TotalSpent, AverageOrderValue
+            FROM SalesSummary
+            """;
+
+    static final String LIST_INVENTORY = "SELECT ID, ItemID, Quantity, StockDate FROM InventoryEntry";
+
+    // ===== Item CRUD =====
+
+    static final String INSERT_ITEM = """
+            INSERT INTO Item (Name, Price, CategoryID, DiscountID)
+            VALUES (?, ?, ?, ?)
+            """;
+
+    static final String UPDATE_ITEM = """
+            UPDATE Item
+            SET Name = ?, Price = ?
+            WHERE ID = ?
+            """;
+
+    static final String DELETE_ITEM = "DELETE FROM Item WHERE ID = ?";
+
+    // ===== Checkout =====
+
+    static final String INSERT_ORDER = "INSERT INTO Orders (CustomerID) VALUES (?)";
+
+    static final String INSERT_ORDER_LINE = "INSERT INTO OrderLine (OrderID, ItemID, Quantity, Total) VALUES (?, ?, ?, ?)";
+
+    static final String UPDATE_INVENTORY_ON_SALE = "CALL UpdateInventoryOnSale(?, ?, ?)";
+
+    static final String CALCULATE_DISCOUNTED_PRICE = "SELECT CalculateDiscountedPrice(?, ?) AS FinalPrice";
+
+    // IN lists are padded up to one of these sizes so only a handful of price statements get cached
+    private static final int[] IN_LIST_SIZES = {1, 2, 4, 8, 16, 32, 64};
+
+    // One timer per statement, published over JMX by QueryMetrics
+    private static final QueryMetrics.Timer LIST_ITEMS_TIMER = QueryMetrics.timer("DataAccess.listItems");
+    private static final QueryMetrics.Timer LIST_CATEGORIES_TIMER = QueryMetrics.timer("DataAccess.listCategories");
+    private static final QueryMetrics.Timer LIST_DISCOUNTS_TIMER = QueryMetrics.timer("DataAccess.listDiscounts");
+    private static final QueryMetrics.Timer LIST_CUSTOMERS_TIMER = QueryMetrics.timer("DataAccess.listCustomers");
+    private static final QueryMetrics.Timer LIST_ORDERS_TIMER = QueryMetrics.timer("DataAccess.listOrders");
+    private static final QueryMetrics.Timer LIST_PAYMENTS_TIMER = QueryMetrics.timer("DataAccess.listPayments");
+    private static final QueryMetrics.Timer LIST_ORDER_LINES_TIMER = QueryMetrics.timer("DataAccess.listOrderLines");
+    private static final QueryMetrics.Timer SALES_SUMMARY_TIMER = QueryMetrics.timer("DataAccess.salesSummary");
+    private static final QueryMetrics.Timer LIST_INVENTORY_TIMER = QueryMetrics.timer("DataAccess.listInventory");
+    private static final QueryMetrics.Timer FIND_ITEM_TIMER = QueryMetrics.timer("DataAccess.findItem");
+    private static final QueryMetrics.Timer INSERT_ITEM_TIMER = QueryMetrics.timer("DataAccess.insertItem");
+    private static final QueryMetrics.Timer UPDATE_ITEM_TIMER = QueryMetrics.timer("DataAccess.updateItem");
+    private static final QueryMetrics.Timer DELETE_ITEM_TIMER = QueryMetrics.timer("DataAccess.deleteItem");
+    private static final QueryMetrics.Timer INSERT_ORDER_TIMER = QueryMetrics.timer("DataAccess.insertOrder");
+    private static final QueryMetrics.Timer ITEM_PRICES_TIMER = QueryMetrics.timer("DataAccess.itemPrices");
+    private static final QueryMetrics.Timer INSERT_ORDER_LINES_TIMER = QueryMetrics.timer("DataAccess.insertOrderLines");
+    private static final QueryMetrics.Timer UPDATE_INVENTORY_TIMER = QueryMetrics.timer("DataAccess.updateInventoryOnSale");
+    private static final QueryMetrics.Timer DISCOUNTED_PRICE_TIMER = QueryMetrics.timer("DataAccess.calculateDiscountedPrice");
+
+    private final StatementCache statements;
+
+    private DataAccess(StatementCache statements) {
+        this.statements = statements;
+    }
+
+    public static DataAccess on(Connection conn) {
+        return new DataAccess(StatementCache.of(conn));
+    }
+
+    // ===== Listings =====
+
+    public int listItems(Consumer<Rows.Item> sink) throws SQLException {
+        return list(LIST_ITEMS, LIST_ITEMS_TIMER, rs ->
+                new Rows.Item(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getBigDecimal(5)), sink);
+    }
+
+    public int listCategories(Consumer<Rows.Category> sink) throws SQLException {
+        return list(LIST_CATEGORIES, LIST_CATEGORIES_TIMER, rs ->
+                new Rows.Category(rs.getInt(1), rs.getString(2), rs.getString(3)), sink);
+    }
+
+    public int listDiscounts(Consumer<Rows.Discount> sink) throws SQLException {
+        return list(LIST_DISCOUNTS, LIST_DISCOUNTS_TIMER, rs ->
+                new Rows.Discount(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getDate(4), rs.getDate(5)), sink);
+    }
+
+    public int listCustomers(Consumer<Rows.Customer> sink) throws SQLException {
+        return list(LIST_CUSTOMERS, LIST_CUSTOMERS_TIMER, rs ->
+                new Rows.Customer(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5)), sink);
+    }
+
+    public int listOrders(Consumer<Rows.Order> sink) throws SQLException {
+        return list(LIST_ORDERS, LIST_ORDERS_TIMER, rs ->
+                new Rows.Order(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4)), sink);
+    }
+
+    public int listPayments(Consumer<Rows.Payment> sink) throws SQLException {
+        return list(LIST_PAYMENTS, LIST_PAYMENTS_TIMER, rs ->
+                new Rows.Payment(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getBigDecimal(4), rs.getDate(5)), sink);
+    }
+
+    public int listOrderLines(Consumer<Rows.OrderLine> sink) throws SQLException {
+        return list(LIST_ORDER_LINES, LIST_ORDER_LINES_TIMER, rs ->
+                new Rows.OrderLine(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getInt(4), rs.getBigDecimal(5)), sink);
+    }
+
+    public int salesSummary(Consumer<Rows.SalesSummary> sink) throws SQLException {
+        return list(SALES_SUMMARY, SALES_SUMMARY_TIMER, rs ->
+                new Rows.SalesSummary(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getBigDecimal(4), rs.getBigDecimal(5)), sink);
+    }
+
+    public int listInventory(Consumer<Rows.InventoryEntry> sink) throws SQLException {
+        return list(LIST_INVENTORY, LIST_INVENTORY_TIMER, rs ->
+                new Rows.InventoryEntry(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getDate(4)), sink);
+    }
+
+    /**
+     * Streams every row of {@code sql} to {@code sink}. Rows arrive while the statement is
+     * still running, so the recorded time includes the sink's work.
+     */
+    private <T> int list(String sql, QueryMetrics.Timer timer, KeysetPager.RowMapper<T> mapper, Consumer<T> sink)
+            throws SQLException {
+        long start = System.nanoTime();
+        int count = 0;
+        try (ResultSet rs = statements.prepareStreaming(sql).executeQuery()) {
+            while (rs.next()) {
+                sink.accept(mapper.map(rs));
+                count++;
+            }
+        } catch (SQLException e) {
+            timer.failed(start, e);
+            throw e;
+        }
+        timer.record(start, count);
+        return count;
+    }
+
+    // ===== Item CRUD =====
+
+    /**
+     * @return the item with its category and discount, or null if it does not exist
+     */
+    public Rows.Item findItem(int id) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = statements.prepare(FIND_ITEM);
+            ps.setInt(1, id);
+            Rows.Item item = null;
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) item = new Rows.Item(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getBigDecimal(5));
+            }
+            FIND_ITEM_TIMER.record(start, item == null ? 0 : 1);
+            return item;
+        } catch (SQLException e) {
+            FIND_ITEM_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the generated item ID, or -1 if the driver returned none
+     */
+    public int insertItem(String name, BigDecimal price, Integer categoryId, Integer discountId) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = statements.prepareWithKeys(INSERT_ITEM);
+            ps.setString(1, name);
+            ps.setBigDecimal(2, price);
+
+            if (categoryId != null) {
+                ps.setInt(3, categoryId);
+            } else {
+                ps.setNull(3, Types.INTEGER);
+            }
+
+            if (discountId != null) {
+                ps.setInt(4, discountId);
+            } else {
+                ps.setNull(4, Types.INTEGER);
+            }
+
+            int rows = ps.executeUpdate();
+            int id;
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                id = rs.next() ? rs.getInt(1) : -1;
+            }
+            INSERT_ITEM_TIMER.record(start, rows);
+            return id;
+        } catch (SQLException e) {
+            INSERT_ITEM_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    public int updateItem(int id, String name, BigDecimal price) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = statements.prepare(UPDATE_ITEM);
+            ps.setString(1, name);
+            ps.setBigDecimal(2, price);
+            ps.setInt(3, id);
+            int rows = ps.executeUpdate();
+            UPDATE_ITEM_TIMER.record(start, rows);
+            return rows;
+        } catch (SQLException e) {
+            UPDATE_ITEM_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    public int deleteItem(int id) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = statements.prepare(DELETE_ITEM);
+            ps.setInt(1, id);
+            int rows = ps.executeUpdate();
+            DELETE_ITEM_TIMER.record(start, rows);
+            return rows;
+        } catch (SQLException e) {
+            DELETE_ITEM_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    // ===== Checkout =====
+
+    public int insertOrder(int customerId) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = statements.prepareWithKeys(INSERT_ORDER);
+            ps.setInt(1, customerId);
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next()) {
+                    INSERT_ORDER_TIMER.record(start, 1);
+                    return rs.getInt(1);
+                }
+            }
+            throw new SQLException("Failed to create order.");
+        } catch (SQLException e) {
+            INSERT_ORDER_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Inserts one order per customer ID as a single JDBC batch (one multi-row INSERT with
+     * rewriteBatchedStatements=true).
+     *
+     * @return the generated order IDs, in the order of {@code customerIds}
+     */
+    public int[] insertOrders(List<Integer> customerIds) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = statements.prepareWithKeys(INSERT_ORDER);
+            for (int customerId : customerIds) {
+                ps.setInt(1, customerId);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            int[] ids = new int[customerIds.size()];
+            int n = 0;
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                while (rs.next() && n < ids.length) ids[n++] = rs.getInt(1);
+            }
+            if (n != ids.length) throw new SQLException("Failed to create orders: " + n + " of " + ids.length + " IDs returned.");
+            INSERT_ORDER_TIMER.record(start, ids.length);
+            return ids;
+        } catch (SQLException e) {
+            INSERT_ORDER_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches the price of every item in one round trip.
+     *
+     * @return price per ItemID; items that do not exist are absent
+     */
+    public Map<Integer, BigDecimal> itemPrices(Collection<Integer> itemIds) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Map<Integer, BigDecimal> prices = fetchPrices(itemIds);
+            ITEM_PRICES_TIMER.record(start, prices.size());
+            return prices;
+        } catch (SQLException e) {
+            ITEM_PRICES_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    private Map<Integer, BigDecimal> fetchPrices(Collection<Integer> itemIds) throws SQLException {
+        Map<Integer, BigDecimal> prices = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(itemIds);
+        int from = 0;
+        while (from < ids.size()) {
+            int size = inListSize(ids.size() - from);
+            int chunk = Math.min(size, ids.size() - from);
+
+            PreparedStatement ps = statements.prepare(itemPricesSql(size));
+            for (int i = 0; i < size; i++) {
+                // Pad by repeating the last ID; duplicates in an IN list are harmless
+                ps.setInt(i + 1, ids.get(from + Math.min(i, chunk - 1)));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) prices.put(rs.getInt(1), rs.getBigDecimal(2));
+            }
+            from += chunk;
+        }
+        return prices;
+    }
+
+    /** Prices of {@code count} items by ID. */
+    static String itemPricesSql(int count) {
+        return "SELECT ID, Price FROM Item WHERE ID IN (" + String.join(", ", Collections.nCopies(count, "?")) + ")";
+    }
+
+    private static int inListSize(int remaining) {
+        for (int size : IN_LIST_SIZES) {
+            if (size >= remaining) return size;
+        }
+        return IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+    }
+
+    /**
+     * Inserts all lines of one order as a single JDBC batch.
+     */
+    public void insertOrderLines(int orderId, Map<Integer, Integer> quantities, Map<Integer, BigDecimal> prices) throws SQLException {
+        insertOrderLines(new int[] {orderId}, List.of(quantities), prices);
+    }
+
+    /**
+     * Inserts the lines of several orders as a single JDBC batch;
+     * {@code quantities.get(i)} holds the lines of {@code orderIds[i]}.
+     */
+    public void insertOrderLines(int[] orderIds, List<Map<Integer, Integer>> quantities, Map<Integer, BigDecimal> prices)
+            throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = statements.prepare(INSERT_ORDER_LINE);
+            int rows = 0;
+            for (int i = 0; i < orderIds.length; i++) {
+                for (Map.Entry<Integer, Integer> e : quantities.get(i).entrySet()) {
+                    ps.setInt(1, orderIds[i]);
+                    ps.setInt(2, e.getKey());
+                    ps.setInt(3, e.getValue());
+                    ps.setBigDecimal(4, prices.get(e.getKey()).multiply(new BigDecimal(e.getValue())));
+                    ps.addBatch();
+                    rows++;
+                }
+            }
+            ps.executeBatch();
+            INSERT_ORDER_LINES_TIMER.record(start, rows);
+        } catch (SQLException e) {
+            INSERT_ORDER_LINES_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return false if the item has no inventory entry or not enough stock
+     */
+    public boolean updateInventoryOnSale(int itemId, int quantity) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            CallableStatement cs = statements.prepareCall(UPDATE_INVENTORY_ON_SALE);
+            cs.setInt(1, itemId);
+            cs.setInt(2, quantity);
+            cs.registerOutParameter(3, Types.BOOLEAN);
+            cs.execute();
+            boolean success = cs.getBoolean(3);
+            UPDATE_INVENTORY_TIMER.record(start, success ? 1 : 0);
+            return success;
+        } catch (SQLException e) {
+            UPDATE_INVENTORY_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Server-side price, used to check {@link PricingEngine} against the stored function.
+     */
+    public BigDecimal calculateDiscountedPrice(int itemId, int quantity) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = statements.prepare(CALCULATE_DISCOUNTED_PRICE);
+            ps.setInt(1, itemId);
+            ps.setInt(2, quantity);
+            BigDecimal price;
+            try (ResultSet rs = ps.executeQuery()) {
+                price = rs.next() ? rs.getBigDecimal(1) : null;
+            }
+            DISCOUNTED_PRICE_TIMER.record(start, 1);
+            return price;
+        } catch (SQLException e) {
+            DISCOUNTED_PRICE_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for order placement: concurrent orders share one transaction and one commit.
+ *
+ * Callers {@link #submit} an order and get a future. A single committer thread takes the
+ * first waiting order, collects more until {@code maxBatch} orders are queued or
+ * {@code windowMicros} has passed, and writes them all in one transaction: one batched
+ * Orders INSERT, one price SELECT, one batched OrderLine INSERT, then the inventory
+ * updates. The server then syncs its log once for the whole batch instead of once per order.
+ *
+ * A failure fails only the order that caused it. Insufficient inventory and unknown items
+ * are tied to their order, which is dropped before the rest of the batch is retried. Other
+ * errors cannot be attributed, so the batch is split in halves until the failing order is
+ * alone. Deadlocks and lock wait timeouts retry the batch as a whole.
+ */
+public class GroupCommitter implements AutoCloseable {
+
+    private static final QueryMetrics.Timer BATCH_TIMER = QueryMetrics.timer("GroupCommitter.batch");
+
+    private static final class Request {
+        final int customerId;
+        final Map<Integer, Integer> quantities;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Request(int customerId, Map<Integer, Integer> quantities) {
+            this.customerId = customerId;
+            this.quantities = quantities;
+        }
+    }
+
+    /** A failure caused by one order of the batch, identified by its index. */
+    private static final class OrderFailure extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        final int index;
+
+        OrderFailure(int index, SQLException cause) {
+            super(cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+            this.index = index;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final InventoryLedger ledger;
+    private final SalesSummaryStore salesSummary;
+    private final int maxBatch;
+    private final long windowNanos;
+    private final int maxAttempts;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private volatile boolean running = true;
+
+    /**
+     * @param ledger       if not null, stock was reserved by the caller and is journaled here
+     * @param salesSummary if not null, each order is added to its customer's totals
+     */
+    public GroupCommitter(ConnectionPool pool, InventoryLedger ledger, SalesSummaryStore salesSummary,
+                          int maxBatch, long windowMicros) {
+        if (maxBatch < 1) throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+        this.pool = pool;
+        this.ledger = ledger;
+        this.salesSummary = salesSummary;
+        this.maxBatch = maxBatch;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxAttempts = 5;
+        this.committer = new Thread(this::run, "order-group-committer");
+        this.committer.setDaemon(true);
+    }
+
+    public void start() {
+        committer.start();
+    }
+
+    /**
+     * Queues an order whose lines are already merged by ItemID (see OrderService.mergeLines).
+     *
+     * @return completes with the order ID once committed, or with the SQLException that failed it
+     */
+    public CompletableFuture<Integer> submit(int customerId, Map<Integer, Integer> quantities) {
+        Request request = new Request(customerId, quantities);
+        if (!running) {
+            request.result.completeExceptionally(new SQLException("Group committer is closed."));
+            return request.result;
+        }
+        queue.add(request);
+        // close() may have drained the queue between the check and the add; take it back and fail it
+        if (!running && queue.remove(request)) {
+            request.result.completeExceptionally(new SQLException("Group committer is closed."));
+        }
+        return request.result;
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                commit(new ArrayList<>(batch));
+            } catch (InterruptedException e) {
+                running = false;
+                for (Request r : batch) r.result.completeExceptionally(new SQLException("Interrupted while committing order.", e));
+            } catch (RuntimeException e) {
+                // Never leave a caller waiting, whatever went wrong
+                for (Request r : batch) r.result.completeExceptionally(e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** Commits the batch, completing every request's future. */
+    private void commit(List<Request> pending) throws InterruptedException {
+        int attempt = 1;
+        while (!pending.isEmpty()) {
+            long start = System.nanoTime();
+            try {
+                int[] ids = commitOnce(pending);
+                BATCH_TIMER.record(start, ids.length);
+                for (int i = 0; i < ids.length; i++) pending.get(i).result.complete(ids[i]);
+                return;
+            } catch (OrderFailure f) {
+                BATCH_TIMER.failed(start);
+                pending.remove(f.index).result.completeExceptionally(f.getCause());
+            } catch (SQLException e) {
+                BATCH_TIMER.failed(start);
+                if (OrderService.isRetryable(e) && attempt++ < maxAttempts) {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(1, 20L << Math.min(attempt, 10)));
+                    continue;
+                }
+                if (pending.size() == 1) {
+                    pending.get(0).result.completeExceptionally(e);
+                    return;
+                }
+                // Not attributable to one order: commit each half on its own
+                int mid = pending.size() / 2;
+                commit(new ArrayList<>(pending.subList(0, mid)));
+                commit(new ArrayList<>(pending.subList(mid, pending.size())));
+                return;
+            }
+        }
+    }
+
+    private int[] commitOnce(List<Request> pending) throws SQLException {
+        Set<Integer> itemIds = new TreeSet<>();
+        List<Integer> customerIds = new ArrayList<>(pending.size());
+        List<Map<Integer, Integer>> quantities = new ArrayList<>(pending.size());
+        for (Request r : pending) {
+            itemIds.addAll(r.quantities.keySet());
+            customerIds.add(r.customerId);
+            quantities.add(r.quantities);
+        }
+
+        try (Connection conn = pool.borrow()) {
+            DataAccess db = DataAccess.on(conn);
+            conn.setAutoCommit(false);
+            try {
+                Map<Integer, BigDecimal> prices = db.itemPrices(itemIds);
+                for (int i = 0; i < pending.size(); i++) {
+                    for (int itemId : quantities.get(i).keySet()) {
+                        if (!prices.containsKey(itemId)) throw new OrderFailure(i, new SQLException("Item not found: " + itemId));
+                    }
+                }
+
+                int[] orderIds = db.insertOrders(customerIds);
+                db.insertOrderLines(orderIds, quantities, prices);
+
+                for (int i = 0; i < pending.size(); i++) {
+                    Map<Integer, Integer> lines = quantities.get(i);
+                    if (salesSummary != null) {
+                        salesSummary.recordOrder(conn, customerIds.get(i), OrderService.orderTotal(lines, prices));
+                    }
+                    if (ledger != null) {
+                        ledger.journal(conn, orderIds[i], lines);
+                    } else {
+                        for (Map.Entry<Integer, Integer> e : lines.entrySet()) {
+                            if (!db.updateInventoryOnSale(e.getKey(), e.getValue())) {
+                                throw new OrderFailure(i, new SQLException("Insufficient inventory for item " + e.getKey() + "."));
+                            }
+                        }
+                    }
+                }
+
+                conn.commit();
+                QueryMetrics.commit();
+                return orderIds;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                QueryMetrics.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /** Stops accepting orders and waits for the queued ones to be committed. */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            committer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Request leftover;
+        while ((leftover = queue.poll()) != null) {
+            leftover.result.completeExceptionally(new SQLException("Group committer is closed."));
+        }
+    }
+}
@@ -0,0 +1,339 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Versioned index migrations for the statements {@link QueryPlanAnalyzer} checks, and the
+ * change tracking {@link CatalogReplica} reads.
+ *
+ * Applied versions are recorded in SchemaMigration. MySQL commits every DDL statement on
+ * its own, so a migration can stop half-way; every step therefore checks the catalog
+ * first and does nothing if its work is already there. Running {@code apply} again, or on
+ * a database created from a newer create_and_populate.sql, is always safe.
+ *
+ * Usage: IndexMigrations [status|apply]
+ */
+public final class IndexMigrations {
+
+    private static final String CREATE_SCHEMA_MIGRATION = """
+            CREATE TABLE IF NOT EXISTS SchemaMigration (
+                Version INT PRIMARY KEY,
+                Description VARCHAR(255) NOT NULL,
+                AppliedAt TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+            )
+            """;
+
+    private static final String APPLIED_VERSIONS = "SELECT Version FROM SchemaMigration";
+
+    private static final String RECORD_VERSION = "INSERT IGNORE INTO SchemaMigration (Version, Description) VALUES (?, ?)";
+
+    private static final String INDEX_COLUMNS = """
+            SELECT INDEX_NAME, COLUMN_NAME
+            FROM INFORMATION_SCHEMA.STATISTICS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?
+            ORDER BY INDEX_NAME, SEQ_IN_INDEX
+            """;
+
+    private static final String HAS_COLUMN = """
+            SELECT 1 FROM INFORMATION_SCHEMA.COLUMNS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?
+            """;
+
+    private static final String HAS_TABLE = """
+            SELECT 1 FROM INFORMATION_SCHEMA.TABLES
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?
+            """;
+
+    private static final String HAS_DEFAULT = """
+            SELECT 1 FROM INFORMATION_SCHEMA.COLUMNS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ? AND COLUMN_DEFAULT IS NOT NULL
+            """;
+
+    /** Dates orders from before OrderDate existed by their first payment; unpaid ones stay NULL. */
+    static final String BACKFILL_ORDER_DATE = """
+            UPDATE Orders o
+            JOIN (SELECT orderID, MIN(paymentDate) AS FirstPaid FROM Payment GROUP BY orderID) p ON p.orderID = o.ID
+            SET o.OrderDate = p.FirstPaid
+            WHERE o.OrderDate IS NULL
+            """;
+
+    private static final String HAS_TRIGGER = """
+            SELECT 1 FROM INFORMATION_SCHEMA.TRIGGERS
+            WHERE TRIGGER_SCHEMA = DATABASE() AND TRIGGER_NAME = ?
+            """;
+
+    /** When each catalog row last changed. */
+    private static final String LAST_MODIFIED = "TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6)";
+
+    /** One idempotent DDL statement. */
+    private interface Step {
+        /** @return true if it changed the schema, false if there was nothing to do */
+        boolean run(Connection conn) throws SQLException;
+    }
+
+    public static final class Migration {
+        public final int version;
+        public final String description;
+        private final Step[] steps;
+
+        Migration(int version, String description, Step... steps) {
+            this.version = version;
+            this.description = description;
+            this.steps = steps;
+        }
+    }
+
+    public static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "InventoryEntry(ItemID, StockDate): latest stock per item without a filesort",
+                    createIndex("InventoryEntry", "idx_inventory_item_date", "ItemID", "StockDate"),
+                    // Now a prefix of the new index; the ItemID foreign key uses the new one
+                    dropIndex("InventoryEntry", "idx_inventory_item", "ItemID", "StockDate")),
+            new Migration(2, "OrderLine(OrderID, ItemID, Total): order joins and OrderLine paging",
+                    createIndex("OrderLine", "idx_orderline_order", "OrderID", "ItemID", "Total")),
+            new Migration(3, "Orders(CustomerID): SalesSummary join",
+                    createIndex("Orders", "idx_orders_customer", "CustomerID")),
+            new Migration(4, "Item(DiscountID): item listing and price lookups",
+                    createIndex("Item", "idx_item_discount", "DiscountID")),
+            new Migration(5, "Payment(orderID, Amount): payment totals per order without row lookups",
+                    createIndex("Payment", "idx_payment_order_amount", "orderID", "Amount"),
+                    dropIndex("Payment", "idx_payment_order", "orderID", "Amount")),
+            new Migration(6, "Catalog change tracking: LastModified columns and the CatalogDeletion log",
+                    addColumn("Category", "LastModified", LAST_MODIFIED),
+                    createIndex("Category", "idx_category_modified", "LastModified"),
+                    addColumn("Discount", "LastModified", LAST_MODIFIED),
+                    createIndex("Discount", "idx_discount_modified", "LastModified"),
+                    addColumn("Item", "LastModified", LAST_MODIFIED),
+                    createIndex("Item", "idx_item_modified", "LastModified"),
+                    addColumn("Customer", "LastModified", LAST_MODIFIED),
+                    createIndex("Customer", "idx_customer_modified", "LastModified"),
+                    createTable("CatalogDeletion", """
+                            CREATE TABLE CatalogDeletion (
+                                ID BIGINT PRIMARY KEY AUTO_INCREMENT,
+                                TableName VARCHAR(32) NOT NULL,
+                                RowID INT NOT NULL,
+                                DeletedAt TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),
+                                INDEX idx_catalog_deletion_time (DeletedAt)
+                            )
+                            """),
+                    createTrigger("trg_category_deleted", "AFTER DELETE ON Category FOR EACH ROW "
+                            + "INSERT INTO CatalogDeletion (TableName, RowID) VALUES ('Category', OLD.ID)"),
+                    createTrigger("trg_discount_deleted", "AFTER DELETE ON Discount FOR EACH ROW "
+                            + "INSERT INTO CatalogDeletion (TableName, RowID) VALUES ('Discount', OLD.ID)"),
+                    createTrigger("trg_item_deleted", "AFTER DELETE ON Item FOR EACH ROW "
+                            + "INSERT INTO CatalogDeletion (TableName, RowID) VALUES ('Item', OLD.ID)"),
+                    createTrigger("trg_customer_deleted", "AFTER DELETE ON Customer FOR EACH ROW "
+                            + "INSERT INTO CatalogDeletion (TableName, RowID) VALUES ('Customer', OLD.ID)")),
+            new Migration(7, "Orders.OrderDate and its index: orders placed in a date window (ReorderJob sales)",
+                    // NULL for the orders already there, not the time of the migration
+                    addColumn("Orders", "OrderDate", "TIMESTAMP NULL DEFAULT NULL"),
+                    setDefault("Orders", "OrderDate", "TIMESTAMP NULL DEFAULT CURRENT_TIMESTAMP"),
+                    update(BACKFILL_ORDER_DATE),
+                    createIndex("Orders", "idx_orders_date", "OrderDate")),
+            new Migration(8, "ImportCheckpoint: bulk import progress, committed with each chunk",
+                    createTable("ImportCheckpoint", """
+                            CREATE TABLE ImportCheckpoint (
+                                FileName VARCHAR(512) PRIMARY KEY,
+                                LinesDone BIGINT NOT NULL,
+                                UpdatedAt TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+                            )
+                            """)));
+
+    private IndexMigrations() {
+    }
+
+    /**
+     * Creates the index unless an index with these leading columns already exists, under
+     * any name (InnoDB adds one for each foreign key on its own).
+     */
+    static Step createIndex(String table, String name, String... columns) {
+        return conn -> {
+            if (hasIndexStartingWith(conn, table, columns)) return false;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE INDEX " + name + " ON " + table + " (" + String.join(", ", columns) + ")");
+            }
+            return true;
+        };
+    }
+
+    /**
+     * Drops the index if it exists and an index starting with {@code coveredBy} is there to
+     * replace it.
+     */
+    static Step dropIndex(String table, String name, String... coveredBy) {
+        return conn -> {
+            Map<String, List<String>> indexes = indexes(conn, table);
+            if (!indexes.containsKey(name.toLowerCase(Locale.ROOT))) return false;
+            if (!hasIndexStartingWith(conn, table, coveredBy)) {
+                throw new SQLException("Refusing to drop " + table + "." + name + ": no index on " + String.join(", ", coveredBy) + ".");
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DROP INDEX " + name + " ON " + table);
+            }
+            return true;
+        };
+    }
+
+    /** Adds the column unless the table already has one of that name. */
+    static Step addColumn(String table, String column, String definition) {
+        return conn -> {
+            if (exists(conn, HAS_COLUMN, table, column)) return false;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+            }
+            return true;
+        };
+    }
+
+    /** Redefines the column as {@code definition}, which must give it a default, unless it has one. */
+    static Step setDefault(String table, String column, String definition) {
+        return conn -> {
+            if (exists(conn, HAS_DEFAULT, table, column)) return false;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("ALTER TABLE " + table + " MODIFY COLUMN " + column + " " + definition);
+            }
+            return true;
+        };
+    }
+
+    /** Runs {@code dml}, which must leave nothing to do when run again. */
+    static Step update(String dml) {
+        return conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                return stmt.executeUpdate(dml) > 0;
+            }
+        };
+    }
+
+    /** Runs {@code ddl}, a CREATE TABLE, unless the table exists. */
+    static Step createTable(String table, String ddl) {
+        return conn -> {
+            if (exists(conn, HAS_TABLE, table)) return false;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(ddl);
+            }
+            return true;
+        };
+    }
+
+    /** Creates the trigger unless one of that name exists; {@code body} is everything after the name. */
+    static Step createTrigger(String name, String body) {
+        return conn -> {
+            if (exists(conn, HAS_TRIGGER, name)) return false;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TRIGGER " + name + " " + body);
+            }
+            return true;
+        };
+    }
+
+    private static boolean exists(Connection conn, String query, String... params) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
+            for (int i = 0; i < params.length; i++) ps.setString(i + 1, params[i]);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static boolean hasIndexStartingWith(Connection conn, String table, String... columns) throws SQLException {
+        List<String> wanted = new ArrayList<>();
+        for (String column : columns) wanted.add(column.toLowerCase(Locale.ROOT));
+        for (List<String> indexed : indexes(conn, table).values()) {
+            if (indexed.size() >= wanted.size() && indexed.subList(0, wanted.size()).equals(wanted)) return true;
+        }
+        return false;
+    }
+
+    /** Lower-cased index name to its lower-cased columns, in index order. */
+    private static Map<String, List<String>> indexes(Connection conn, String table) throws SQLException {
+        Map<String, List<String>> indexes = new LinkedHashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(INDEX_COLUMNS)) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    indexes.computeIfAbsent(rs.getString(1).toLowerCase(Locale.ROOT), k -> new ArrayList<>())
+                            .add(rs.getString(2).toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return indexes;
+    }
+
+    /** Whether each migration has been applied, by version. Creates SchemaMigration if needed. */
+    public static Map<Integer, Boolean> status(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(CREATE_SCHEMA_MIGRATION);
+        }
+        List<Integer> applied = new ArrayList<>();
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(APPLIED_VERSIONS)) {
+            while (rs.next()) applied.add(rs.getInt(1));
+        }
+        Map<Integer, Boolean> status = new TreeMap<>();
+        for (Migration m : MIGRATIONS) status.put(m.version, applied.contains(m.version));
+        return status;
+    }
+
+    /**
+     * Runs every migration not yet recorded, in version order.
+     *
+     * @return the versions applied by this call
+     */
+    public static List<Integer> apply(Connection conn) throws SQLException {
+        Map<Integer, Boolean> status = status(conn);
+        List<Integer> applied = new ArrayList<>();
+        for (Migration m : MIGRATIONS) {
+            if (status.get(m.version)) continue;
+
+            int changed = 0;
+            for (Step step : m.steps) {
+                if (step.run(conn)) changed++;
+            }
+            try (PreparedStatement ps = conn.prepareStatement(RECORD_VERSION)) {
+                ps.setInt(1, m.version);
+                ps.setString(2, m.description);
+                ps.executeUpdate();
+            }
+            System.out.println("Applied migration " + m.version + " (" + m.description + ")"
+                    + (changed == 0 ? ": already in place." : "."));
+            applied.add(m.version);
+        }
+        return applied;
+    }
+
+    public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "status";
+        boolean failed = false;
+        try (Connection conn = Main.getConnection()) {
+            switch (command) {
+                case "status" -> {
+                    Map<Integer, Boolean> status = status(conn);
+                    for (Migration m : MIGRATIONS) {
+                        System.out.printf("%3d %-8s %s%n", m.version, status.get(m.version) ? "applied" : "pending", m.description);
+                    }
+                }
+                case "apply" -> {
+                    List<Integer> applied = apply(conn);
+                    if (applied.isEmpty()) System.out.println("Schema is up to date.");
+                }
+                default -> {
+                    System.err.println("Usage: IndexMigrations [status|apply]");
+                    failed = true;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Migration failed: " + e.getMessage());
+            failed = true;
+        } finally {
+            Main.closeConnection();
+        }
+        System.exit(failed ? 1 : 0);
+    }
+}
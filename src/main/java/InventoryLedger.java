@@ -0,0 +1,305 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process stock ledger in front of UpdateInventoryOnSale.
+ *
+ * Holds the current stock of every item (the Quantity of its latest InventoryEntry row,
+ * like the stored procedure reads it). Orders reserve stock here without a database
+ * round trip, and an oversell is rejected before any SQL runs. A reservation for several
+ * items takes the lock stripes of all of them in ascending order, so it either succeeds
+ * for every line or changes nothing.
+ *
+ * Write-behind: instead of updating the hot InventoryEntry row, the order transaction
+ * inserts its decrements into InventoryReservation ({@link #journal}). A background
+ * flusher folds pending reservations into InventoryEntry in batches and deletes them in
+ * the same transaction. Because reservations commit with their order, a crash loses
+ * nothing: {@link #start} applies whatever is still pending before loading the counters.
+ */
+public class InventoryLedger implements AutoCloseable {
+
+    static final String LOAD_STOCK = """
+            SELECT ie.ItemID, ie.Quantity
+            FROM InventoryEntry ie
+            WHERE ie.ID = (
+                SELECT latest.ID FROM InventoryEntry latest
+                WHERE latest.ItemID = ie.ItemID
+                ORDER BY latest.StockDate DESC
+                LIMIT 1)
+            """;
+
+    static final String RESERVED_TOTALS = "SELECT ItemID, SUM(Quantity) FROM InventoryReservation GROUP BY ItemID";
+
+    private static final String INSERT_RESERVATION = "INSERT INTO InventoryReservation (OrderID, ItemID, Quantity) VALUES (?, ?, ?)";
+
+    static final String PENDING_RESERVATIONS = "SELECT ID, ItemID, Quantity FROM InventoryReservation ORDER BY ID LIMIT ? FOR UPDATE";
+
+    static final String APPLY_DECREMENT = """
+            UPDATE InventoryEntry
+            SET Quantity = Quantity - ?
+            WHERE ItemID = ?
+            ORDER BY StockDate DESC
+            LIMIT 1
+            """;
+
+    private static final String DELETE_RESERVATION = "DELETE FROM InventoryReservation WHERE ID = ?";
+
+    private static final QueryMetrics.Timer JOURNAL_TIMER = QueryMetrics.timer("InventoryLedger.journal");
+    private static final QueryMetrics.Timer FLUSH_TIMER = QueryMetrics.timer("InventoryLedger.flush");
+    private static final QueryMetrics.Timer RELOAD_TIMER = QueryMetrics.timer("InventoryLedger.reload");
+
+    private final ConnectionPool pool;
+    private final ReentrantLock[] stripes;
+    private final int flushBatchSize;
+    private final long flushIntervalMs;
+    private final ScheduledExecutorService flusher;
+
+    // Guarded by the item's stripe lock
+    private final Map<Integer, int[]> stock = new ConcurrentHashMap<>();
+
+    public InventoryLedger(ConnectionPool pool, int stripeCount, int flushBatchSize, long flushIntervalMs) {
+        if (stripeCount < 1) throw new IllegalArgumentException("Stripe count must be positive: " + stripeCount);
+        this.pool = pool;
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) stripes[i] = new ReentrantLock();
+        this.flushBatchSize = flushBatchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-ledger-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Applies reservations left over from a previous run, loads current stock and
+     * starts the write-behind flusher.
+     */
+    public void start() throws SQLException {
+        while (flush() > 0) {
+            // Drain everything a crash left behind before trusting InventoryEntry
+        }
+        reload();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reloads counters from InventoryEntry, minus reservations not yet flushed.
+     * Call after stock is received outside the application, while no orders are in flight.
+     */
+    public void reload() throws SQLException {
+        Map<Integer, Integer> loaded = new HashMap<>();
+        long start = System.nanoTime();
+        try (Connection conn = pool.borrow()) {
+            try (PreparedStatement ps = Main.prepareStreaming(conn, LOAD_STOCK);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) loaded.put(rs.getInt(1), rs.getInt(2));
+            }
+            try (PreparedStatement ps = Main.prepareStreaming(conn, RESERVED_TOTALS);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) loaded.merge(rs.getInt(1), -rs.getInt(2), Integer::sum);
+            }
+            RELOAD_TIMER.record(start, loaded.size());
+        } catch (SQLException e) {
+            RELOAD_TIMER.failed(start, e);
+            throw e;
+        }
+
+        for (Map.Entry<Integer, Integer> e : loaded.entrySet()) {
+            ReentrantLock lock = stripeFor(e.getKey());
+            lock.lock();
+            try {
+                stock.computeIfAbsent(e.getKey(), k -> new int[1])[0] = e.getValue();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private int stripeIndex(int itemId) {
+        // Spread consecutive IDs over the stripes
+        return Math.floorMod(itemId * 0x9E3779B9, stripes.length);
+    }
+
+    private ReentrantLock stripeFor(int itemId) {
+        return stripes[stripeIndex(itemId)];
+    }
+
+    /** Current in-memory stock of an item, or -1 if it has no inventory entry. */
+    public int available(int itemId) {
+        ReentrantLock lock = stripeFor(itemId);
+        lock.lock();
+        try {
+            int[] count = stock.get(itemId);
+            return count == null ? -1 : count[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves stock for every line, or for none of them.
+     *
+     * @return the ItemID that lacks stock, or -1 if the whole reservation succeeded
+     */
+    public int reserve(Map<Integer, Integer> quantities) {
+        List<ReentrantLock> locks = lockAll(quantities);
+        try {
+            for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+                int[] count = stock.get(e.getKey());
+                if (count == null || count[0] < e.getValue()) return e.getKey();
+            }
+            for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+                stock.get(e.getKey())[0] -= e.getValue();
+            }
+            return -1;
+        } finally {
+            unlockAll(locks);
+        }
+    }
+
+    /** Gives back a reservation whose order was rolled back. */
+    public void release(Map<Integer, Integer> quantities) {
+        List<ReentrantLock> locks = lockAll(quantities);
+        try {
+            for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+                int[] count = stock.get(e.getKey());
+                if (count != null) count[0] += e.getValue();
+            }
+        } finally {
+            unlockAll(locks);
+        }
+    }
+
+    private List<ReentrantLock> lockAll(Map<Integer, Integer> quantities) {
+        // Distinct stripe indexes in ascending order, so two reservations never deadlock
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (int itemId : quantities.keySet()) {
+            indexes.add(stripeIndex(itemId));
+        }
+        List<ReentrantLock> locks = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            stripes[index].lock();
+            locks.add(stripes[index]);
+        }
+        return locks;
+    }
+
+    private static void unlockAll(List<ReentrantLock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) locks.get(i).unlock();
+    }
+
+    /**
+     * Records an order's decrements inside the caller's (order) transaction.
+     */
+    public void journal(Connection conn, int orderId, Map<Integer, Integer> quantities) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = StatementCache.of(conn).prepare(INSERT_RESERVATION);
+            for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+                ps.setInt(1, orderId);
+                ps.setInt(2, e.getKey());
+                ps.setInt(3, e.getValue());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            JOURNAL_TIMER.record(start, quantities.size());
+        } catch (SQLException e) {
+            JOURNAL_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Folds up to one batch of pending reservations into InventoryEntry.
+     *
+     * @return the number of reservations applied
+     */
+    public int flush() throws SQLException {
+        long start = System.nanoTime();
+        try (Connection conn = pool.borrow()) {
+            StatementCache statements = StatementCache.of(conn);
+            conn.setAutoCommit(false);
+            try {
+                List<Integer> ids = new ArrayList<>();
+                Map<Integer, Integer> decrements = new HashMap<>();
+                PreparedStatement pending = statements.prepare(PENDING_RESERVATIONS);
+                pending.setInt(1, flushBatchSize);
+                try (ResultSet rs = pending.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                        decrements.merge(rs.getInt(2), rs.getInt(3), Integer::sum);
+                    }
+                }
+                if (ids.isEmpty()) {
+                    conn.commit();
+                    FLUSH_TIMER.record(start, 0);
+                    return 0;
+                }
+
+                PreparedStatement apply = statements.prepare(APPLY_DECREMENT);
+                for (Map.Entry<Integer, Integer> e : decrements.entrySet()) {
+                    apply.setInt(1, e.getValue());
+                    apply.setInt(2, e.getKey());
+                    apply.addBatch();
+                }
+                apply.executeBatch();
+
+                PreparedStatement delete = statements.prepare(DELETE_RESERVATION);
+                for (int id : ids) {
+                    delete.setInt(1, id);
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+
+                conn.commit();
+                QueryMetrics.commit();
+                FLUSH_TIMER.record(start, ids.size());
+                return ids.size();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                QueryMetrics.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            FLUSH_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            while (flush() == flushBatchSize) {
+                // Keep going while there is a backlog
+            }
+        } catch (SQLException e) {
+            System.err.println("Inventory flush failed, will retry: " + e.getMessage());
+        }
+    }
+
+    /** Stops the flusher after writing every pending reservation. */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+}
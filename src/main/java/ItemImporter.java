@@ -0,0 +1,225 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming bulk import of Item rows from a CSV or TSV file.
+ *
+ * Expected columns: Name, Price, CategoryID, DiscountID. CategoryID and DiscountID
+ * may be blank (or NULL) and are stored as SQL NULL, like {@link Main#insertItem}.
+ * A header line starting with "Name" is skipped. The file is read line by line and
+ * rows are sent with addBatch/executeBatch, committing every {@code chunkSize} rows.
+ *
+ * Each chunk's transaction also records the number of consumed lines in the
+ * ImportCheckpoint row of the file, so the rows and the progress commit together.
+ * Running the import again on the same file resumes exactly after the last committed
+ * chunk; the row is deleted with the last chunk.
+ */
+public class ItemImporter {
+
+    static final String READ_CHECKPOINT = "SELECT LinesDone FROM ImportCheckpoint WHERE FileName = ?";
+
+    static final String WRITE_CHECKPOINT = """
+            INSERT INTO ImportCheckpoint (FileName, LinesDone)
+            VALUES (?, ?)
+            ON DUPLICATE KEY UPDATE LinesDone = VALUES(LinesDone)
+            """;
+
+    static final String DELETE_CHECKPOINT = "DELETE FROM ImportCheckpoint WHERE FileName = ?";
+
+    private final int chunkSize;
+
+    /** Outcome of one import run. */
+    public static final class Result {
+        private final long rowsImported;
+        private final long linesSkipped;
+        private final long elapsedNanos;
+
+        Result(long rowsImported, long linesSkipped, long elapsedNanos) {
+            this.rowsImported = rowsImported;
+            this.linesSkipped = linesSkipped;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRowsImported() {
+            return rowsImported;
+        }
+
+        /** Lines skipped because an earlier run had already committed them. */
+        public long getLinesSkipped() {
+            return linesSkipped;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : rowsImported * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d rows in %.2f s (%.0f rows/s), resumed past %d lines",
+                    rowsImported, elapsedNanos / 1_000_000_000.0, getRowsPerSecond(), linesSkipped);
+        }
+    }
+
+    public ItemImporter(int chunkSize) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        this.chunkSize = chunkSize;
+    }
+
+    /** The file's ImportCheckpoint key: its absolute path. */
+    static String checkpointKey(Path input) {
+        return input.toAbsolutePath().normalize().toString();
+    }
+
+    /** Lines of {@code input} an earlier, unfinished import already committed; 0 if none. */
+    public static long committedLines(Connection conn, Path input) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(READ_CHECKPOINT)) {
+            ps.setString(1, checkpointKey(input));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    public Result importFile(Connection conn, Path input) throws IOException, SQLException {
+        char delimiter = input.getFileName().toString().toLowerCase().endsWith(".tsv") ? '\t' : ',';
+        String checkpoint = checkpointKey(input);
+        long resumeAfter = committedLines(conn, input);
+
+        long start = System.nanoTime();
+        long lineNo = 0;
+        long imported = 0;
+        int pending = 0;
+        boolean previousAutoCommit = conn.getAutoCommit();
+
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             PreparedStatement ps = conn.prepareStatement(DataAccess.INSERT_ITEM);
+             PreparedStatement progress = conn.prepareStatement(WRITE_CHECKPOINT)) {
+
+            conn.setAutoCommit(false);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (lineNo <= resumeAfter) continue;
+                if (line.isBlank()) continue;
+
+                List<String> fields = split(line, delimiter);
+                if (lineNo == 1 && fields.get(0).trim().equalsIgnoreCase("Name")) continue;
+
+                try {
+                    bind(ps, fields);
+                } catch (IllegalArgumentException e) {
+                    throw new SQLException("Invalid row at line " + lineNo + ": " + e.getMessage(), e);
+                }
+                ps.addBatch();
+                pending++;
+
+                if (pending == chunkSize) {
+                    ps.executeBatch();
+                    progress.setString(1, checkpoint);
+                    progress.setLong(2, lineNo);
+                    progress.executeUpdate();
+                    conn.commit();
+                    QueryMetrics.commit();
+                    imported += pending;
+                    pending = 0;
+                }
+            }
+
+            if (pending > 0) ps.executeBatch();
+            try (PreparedStatement done = conn.prepareStatement(DELETE_CHECKPOINT)) {
+                done.setString(1, checkpoint);
+                done.executeUpdate();
+            }
+            conn.commit();
+            QueryMetrics.commit();
+            imported += pending;
+
+        } catch (SQLException | IOException | RuntimeException e) {
+            conn.rollback();
+            QueryMetrics.rollback();
+            if (e instanceof SQLException) QueryMetrics.error((SQLException) e);
+            throw e;
+        } finally {
+            conn.setAutoCommit(previousAutoCommit);
+        }
+
+        return new Result(imported, resumeAfter, System.nanoTime() - start);
+    }
+
+    private static void bind(PreparedStatement ps, List<String> fields) throws SQLException {
+        if (fields.size() < 2) {
+            throw new IllegalArgumentException("expected Name, Price[, CategoryID, DiscountID]");
+        }
+        ps.setString(1, fields.get(0).trim());
+        ps.setBigDecimal(2, new BigDecimal(fields.get(1).trim()));
+        setNullableInt(ps, 3, fields.size() > 2 ? fields.get(2) : null);
+        setNullableInt(ps, 4, fields.size() > 3 ? fields.get(3) : null);
+    }
+
+    private static void setNullableInt(PreparedStatement ps, int index, String value) throws SQLException {
+        String v = value == null ? "" : value.trim();
+        if (v.isEmpty() || v.equalsIgnoreCase("NULL")) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, Integer.parseInt(v));
+        }
+    }
+
+    /**
+     * Splits one line; double-quoted fields may contain the delimiter and "" escapes.
+     */
+    static List<String> split(String line, char delimiter) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: ItemImporter <items.csv|items.tsv> [chunkSize]");
+            return;
+        }
+        int chunkSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        try (Connection conn = Main.getConnection()) {
+            System.out.println(new ItemImporter(chunkSize).importFile(conn, Paths.get(args[0])));
+        } catch (IOException | SQLException e) {
+            System.err.println("Bulk import failed: " + e.getMessage());
+        } finally {
+            Main.closeConnection();
+        }
+    }
+}
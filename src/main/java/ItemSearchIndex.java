@@ -0,0 +1,320 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Case-insensitive in-memory name search over Item, for typeahead at the POS.
+ *
+ * Names are normalized (lower case, punctuation as spaces) and indexed under every
+ * trigram they contain and under the one- and two-letter prefix of every word. Each key
+ * maps to a sorted int[] of ItemIDs. A query word of three or more letters is answered by
+ * intersecting its trigram postings; a shorter word by its word-prefix postings. The
+ * candidates are then checked against the name and ranked: whole-name prefix first, then
+ * word prefixes, then substrings, shorter names first.
+ *
+ * {@link #refresh} re-reads one item in the background after it is inserted, updated or
+ * deleted, so writers never wait on the index.
+ */
+public class ItemSearchIndex implements AutoCloseable {
+
+    /** One search hit. */
+    public static final class Match {
+        public final int id;
+        public final String name;
+        public final String category;
+        public final BigDecimal price;
+
+        Match(Rows.Item item) {
+            this.id = item.id;
+            this.name = item.name;
+            this.category = item.category;
+            this.price = item.price;
+        }
+    }
+
+    private static final class Entry {
+        final Rows.Item item;
+        final String normalized;
+
+        Entry(Rows.Item item) {
+            this.item = item;
+            this.normalized = normalize(item.name);
+        }
+    }
+
+    /** Sorted, duplicate-free ItemIDs. */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) return;
+            pos = -pos - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) return;
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+        }
+    }
+
+    private static final int[] EMPTY = new int[0];
+
+    private final ConnectionPool pool;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final ExecutorService refresher;
+
+    public ItemSearchIndex(ConnectionPool pool) {
+        this.pool = pool;
+        this.refresher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "item-search-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Rebuilds the index from every Item row. */
+    public void load() throws SQLException {
+        List<Rows.Item> items = new ArrayList<>();
+        try (Connection conn = pool.borrow()) {
+            DataAccess.on(conn).listItems(items::add);
+        }
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            postings.clear();
+            for (Rows.Item item : items) add(new Entry(item));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Re-reads one item in the background; removes it if it no longer exists. */
+    public void refresh(int itemId) {
+        refresher.execute(() -> {
+            try (Connection conn = pool.borrow()) {
+                put(itemId, DataAccess.on(conn).findItem(itemId));
+            } catch (SQLException e) {
+                System.err.println("Could not refresh item " + itemId + " in search index: " + e.getMessage());
+            }
+        });
+    }
+
+    /** Reloads everything in the background, e.g. after a bulk import. */
+    public void reloadLater() {
+        refresher.execute(() -> {
+            try {
+                load();
+            } catch (SQLException e) {
+                System.err.println("Could not reload item search index: " + e.getMessage());
+            }
+        });
+    }
+
+    /** Replaces the indexed item, or removes it when {@code item} is null. */
+    public void put(int itemId, Rows.Item item) {
+        lock.writeLock().lock();
+        try {
+            Entry old = entries.remove(itemId);
+            if (old != null) {
+                for (long key : keys(old.normalized)) {
+                    Postings p = postings.get(key);
+                    if (p == null) continue;
+                    p.remove(itemId);
+                    if (p.size == 0) postings.remove(key);
+                }
+            }
+            if (item != null) add(new Entry(item));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Entry entry) {
+        entries.put(entry.item.id, entry);
+        for (long key : keys(entry.normalized)) {
+            postings.computeIfAbsent(key, k -> new Postings()).add(entry.item.id);
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Items whose name contains every word of {@code query}, best matches first.
+     * Words shorter than three letters must start a word of the name.
+     */
+    public List<Match> search(String query, int limit) {
+        String normalized = normalize(query);
+        String[] words = normalized.isEmpty() ? new String[0] : normalized.split(" ");
+        if (words.length == 0 || limit <= 0) return List.of();
+
+        lock.readLock().lock();
+        try {
+            int[] candidates = null;
+            for (String word : words) {
+                int[] ids = word.length() < 3 ? lookup(prefixKey(word)) : trigramCandidates(word);
+                candidates = candidates == null ? ids : intersect(candidates, ids);
+                if (candidates.length == 0) return List.of();
+            }
+
+            // Keep the best `limit` hits: the heap's head is the worst one kept so far
+            Comparator<Entry> ranking = Comparator.<Entry>comparingInt(e -> rank(e.normalized, normalized, words))
+                    .thenComparingInt(e -> e.normalized.length())
+                    .thenComparingInt(e -> e.item.id);
+            PriorityQueue<Entry> best = new PriorityQueue<>(limit + 1, ranking.reversed());
+            for (int id : candidates) {
+                Entry entry = entries.get(id);
+                if (entry == null || !matches(entry.normalized, words)) continue;
+                best.add(entry);
+                if (best.size() > limit) best.poll();
+            }
+
+            List<Entry> sorted = new ArrayList<>(best);
+            sorted.sort(ranking);
+            List<Match> matches = new ArrayList<>(sorted.size());
+            for (Entry entry : sorted) matches.add(new Match(entry.item));
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] lookup(long key) {
+        Postings p = postings.get(key);
+        return p == null ? EMPTY : Arrays.copyOf(p.ids, p.size);
+    }
+
+    private int[] trigramCandidates(String word) {
+        // Smallest posting list first keeps the intersection short
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= word.length(); i++) {
+            Postings p = postings.get(trigramKey(word, i));
+            if (p == null) return EMPTY;
+            lists.add(p);
+        }
+        lists.sort(Comparator.comparingInt(p -> p.size));
+        int[] result = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, Arrays.copyOf(lists.get(i).ids, lists.get(i).size));
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static boolean matches(String name, String[] words) {
+        for (String word : words) {
+            if (word.length() < 3 ? !startsWord(name, word) : !name.contains(word)) return false;
+        }
+        return true;
+    }
+
+    private static int rank(String name, String query, String[] words) {
+        if (name.startsWith(query)) return 0;
+        for (String word : words) {
+            if (!startsWord(name, word)) return 2;
+        }
+        return 1;
+    }
+
+    private static boolean startsWord(String name, String word) {
+        return name.startsWith(word) || name.contains(" " + word);
+    }
+
+    static String normalize(String s) {
+        if (s == null) return "";
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean space = true;
+        for (char c : s.toLowerCase(Locale.ROOT).toCharArray()) {
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int end = sb.length();
+        if (end > 0 && sb.charAt(end - 1) == ' ') sb.setLength(end - 1);
+        return sb.toString();
+    }
+
+    /** Every trigram of the name plus the one- and two-letter prefix of each word. */
+    private static Set<Long> keys(String normalized) {
+        Set<Long> keys = new HashSet<>();
+        for (String word : normalized.split(" ")) {
+            if (word.isEmpty()) continue;
+            keys.add(prefixKey(word.substring(0, 1)));
+            if (word.length() >= 2) keys.add(prefixKey(word.substring(0, 2)));
+        }
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            if (normalized.charAt(i + 1) == ' ') continue; // "a b" never occurs inside a query word
+            keys.add(trigramKey(normalized, i));
+        }
+        return keys;
+    }
+
+    // Key layout: kind in bits 48+, then up to three 16-bit chars
+    private static long prefixKey(String prefix) {
+        long key = (long) prefix.length() << 48;
+        for (int i = 0; i < prefix.length(); i++) key |= (long) prefix.charAt(i) << (16 * (prefix.length() - 1 - i));
+        return key;
+    }
+
+    private static long trigramKey(String s, int i) {
+        return 3L << 48 | (long) s.charAt(i) << 32 | (long) s.charAt(i + 1) << 16 | s.charAt(i + 2);
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdown();
+        try {
+            refresher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the network service, so the application keeps a single dependency.
+ *
+ * {@link Obj} builds one object as text; {@link #parse} reads a request body into
+ * Map / List / String / BigDecimal / Boolean / null values.
+ */
+public final class Json {
+
+    private Json() {
+    }
+
+    /** Builder for one JSON object, written field by field. */
+    public static final class Obj {
+        private final StringBuilder sb = new StringBuilder("{");
+
+        private StringBuilder name(String name) {
+            if (sb.length() > 1) sb.append(',');
+            return quote(sb, name).append(':');
+        }
+
+        public Obj put(String name, String value) {
+            StringBuilder out = name(name);
+            if (value == null) out.append("null");
+            else quote(out, value);
+            return this;
+        }
+
+        public Obj put(String name, Number value) {
+            name(name).append(value == null ? "null" : value instanceof BigDecimal bd ? bd.toPlainString() : value.toString());
+            return this;
+        }
+
+        public Obj put(String name, boolean value) {
+            name(name).append(value);
+            return this;
+        }
+
+        public Obj put(String name, Object value) {
+            if (value == null || value instanceof String) return put(name, (String) value);
+            if (value instanceof Number n) return put(name, n);
+            if (value instanceof Boolean b) return put(name, (boolean) b);
+            return put(name, value.toString());
+        }
+
+        /** Adds pre-rendered JSON (an array or object) as the field's value. */
+        public Obj putRaw(String name, String json) {
+            name(name).append(json);
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return sb + "}";
+        }
+    }
+
+    public static Obj object() {
+        return new Obj();
+    }
+
+    public static String quote(String s) {
+        return quote(new StringBuilder(s.length() + 2), s).toString();
+    }
+
+    static StringBuilder quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Parses one JSON value.
+     *
+     * @throws IllegalArgumentException if the text is not valid JSON
+     */
+    public static Object parse(String text) {
+        Parser p = new Parser(text);
+        Object value = p.value();
+        p.skipWhitespace();
+        if (p.pos != text.length()) throw p.error("Unexpected trailing content");
+        return value;
+    }
+
+    /** Deepest nesting of objects and arrays {@link #parse} accepts; the parser recurses per level. */
+    static final int MAX_DEPTH = 64;
+
+    private static final class Parser {
+        private final String s;
+        private int pos;
+        private int depth;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Object value() {
+            skipWhitespace();
+            if (pos >= s.length()) throw error("Unexpected end of input");
+            char c = s.charAt(pos);
+            if ((c == '{' || c == '[') && depth >= MAX_DEPTH) throw error("Nested deeper than " + MAX_DEPTH + " levels");
+            switch (c) {
+                case '{': return object();
+                case '[': return array();
+                case '"': return string();
+                case 't': return literal("true", Boolean.TRUE);
+                case 'f': return literal("false", Boolean.FALSE);
+                case 'n': return literal("null", null);
+                default: return number();
+            }
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            pos++;
+            depth++;
+            skipWhitespace();
+            if (peek('}')) {
+                depth--;
+                return map;
+            }
+            do {
+                skipWhitespace();
+                if (pos >= s.length() || s.charAt(pos) != '"') throw error("Expected field name");
+                String name = string();
+                skipWhitespace();
+                expect(':');
+                map.put(name, value());
+                skipWhitespace();
+            } while (peek(','));
+            expect('}');
+            depth--;
+            return map;
+        }
+
+        private List<Object> array() {
+            List<Object> list = new ArrayList<>();
+            pos++;
+            depth++;
+            skipWhitespace();
+            if (peek(']')) {
+                depth--;
+                return list;
+            }
+            do {
+                list.add(value());
+                skipWhitespace();
+            } while (peek(','));
+            expect(']');
+            depth--;
+            return list;
+        }
+
+        private String string() {
+            StringBuilder sb = new StringBuilder();
+            pos++;
+            while (pos < s.length()) {
+                char c = s.charAt(pos++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= s.length()) break;
+                char e = s.charAt(pos++);
+                switch (e) {
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > s.length()) throw error("Bad unicode escape");
+                        sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    }
+                    default -> sb.append(e);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private BigDecimal number() {
+            int start = pos;
+            while (pos < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos)) >= 0) pos++;
+            if (start == pos) throw error("Unexpected character '" + s.charAt(pos) + "'");
+            try {
+                return new BigDecimal(s.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error("Bad number");
+            }
+        }
+
+        private Object literal(String word, Object value) {
+            if (!s.startsWith(word, pos)) throw error("Unexpected token");
+            pos += word.length();
+            return value;
+        }
+
+        private boolean peek(char c) {
+            if (pos < s.length() && s.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!peek(c)) throw error("Expected '" + c + "'");
+        }
+
+        void skipWhitespace() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos + " of JSON input.");
+        }
+    }
+}
@@ -0,0 +1,274 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily pages through a table with keyset ("seek") pagination.
+ *
+ * Each page is one {@code ... WHERE key > last-seen-key ORDER BY key LIMIT n} query,
+ * so every page costs an index range read no matter how deep into the table it is,
+ * unlike OFFSET. Only one page is held in memory at a time.
+ *
+ * The query's seek parameters come first, followed by a single LIMIT parameter.
+ * Close the pager (or the stream) if iteration is abandoned early.
+ *
+ * A pager can also run the same query on several databases, such as the
+ * {@link ShardRouter} shards. Each page then asks every database for its next page
+ * after the last key, and keeps the first {@code pageSize} rows of the merged results.
+ */
+public class KeysetPager<T> implements Iterator<List<T>>, AutoCloseable {
+
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Binds the seek parameters for the page after {@code last} (null before the first page)
+     * and returns the index of the next free parameter.
+     */
+    @FunctionalInterface
+    public interface SeekBinder<T> {
+        int bind(PreparedStatement ps, T last) throws SQLException;
+    }
+
+    private final List<PreparedStatement> statements;
+    /** Connections the pager borrowed and closes; empty for a caller's connection. */
+    private final List<Connection> owned;
+    private final Comparator<T> order;
+    private final int pageSize;
+    private final SeekBinder<T> binder;
+    private final RowMapper<T> mapper;
+
+    private List<T> next;
+    private T last;
+    private boolean exhausted;
+    private boolean closed;
+
+    public KeysetPager(Connection conn, String sql, int pageSize, SeekBinder<T> binder, RowMapper<T> mapper) throws SQLException {
+        this(List.of(conn), List.of(), sql, pageSize, null, binder, mapper);
+    }
+
+    /**
+     * Pages through {@code sql} on every connection in {@code owned}, which the pager closes.
+     *
+     * @param order the query's ORDER BY, by which the databases' pages are merged
+     */
+    public KeysetPager(List<Connection> owned, String sql, int pageSize, Comparator<T> order,
+                       SeekBinder<T> binder, RowMapper<T> mapper) throws SQLException {
+        this(owned, owned, sql, pageSize, order, binder, mapper);
+    }
+
+    private KeysetPager(List<Connection> conns, List<Connection> owned, String sql, int pageSize, Comparator<T> order,
+                        SeekBinder<T> binder, RowMapper<T> mapper) throws SQLException {
+        if (pageSize < 1) throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        this.statements = new ArrayList<>(conns.size());
+        this.owned = owned;
+        this.order = order;
+        this.pageSize = pageSize;
+        this.binder = binder;
+        this.mapper = mapper;
+        try {
+            for (Connection conn : conns) statements.add(conn.prepareStatement(sql));
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !exhausted) {
+            next = fetchPage();
+        }
+        return next != null;
+    }
+
+    @Override
+    public List<T> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        List<T> page = next;
+        next = null;
+        return page;
+    }
+
+    private List<T> fetchPage() {
+        try {
+            List<T> page = new ArrayList<>(pageSize);
+            boolean more = false;
+            for (PreparedStatement ps : statements) {
+                int limitIndex = binder.bind(ps, last);
+                ps.setInt(limitIndex, pageSize);
+                int rows = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        page.add(mapper.map(rs));
+                        rows++;
+                    }
+                }
+                if (rows == pageSize) more = true;
+            }
+            if (statements.size() > 1) {
+                page.sort(order);
+                if (page.size() > pageSize) {
+                    page = new ArrayList<>(page.subList(0, pageSize));
+                    more = true;
+                }
+            }
+
+            if (!more) {
+                exhausted = true;
+                close();
+            }
+            if (page.isEmpty()) return null;
+
+            last = page.get(page.size() - 1);
+            return Collections.unmodifiableList(page);
+        } catch (SQLException e) {
+            exhausted = true;
+            close();
+            throw new IllegalStateException("Error fetching page: " + e.getMessage(), e);
+        }
+    }
+
+    /** Flattens the pages into a lazy stream of rows; closing the stream closes the pager. */
+    public Stream<T> stream() {
+        Spliterator<List<T>> pages = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(pages, false)
+                .flatMap(List::stream)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (PreparedStatement ps : statements) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing pager statement: " + e.getMessage());
+            }
+        }
+        for (Connection conn : owned) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing pager connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A pager over {@code conn}, or over every shard when orders are sharded (on a
+     * connection borrowed from each shard, ordered by {@code order}).
+     */
+    private static <T> KeysetPager<T> ofOrders(Connection conn, String sql, int pageSize, Comparator<T> order,
+                                               SeekBinder<T> binder, RowMapper<T> mapper) throws SQLException {
+        ShardRouter shards = Main.getShardRouter();
+        if (shards == null) return new KeysetPager<>(conn, sql, pageSize, binder, mapper);
+        List<Connection> conns = new ArrayList<>(shards.size());
+        try {
+            for (int k = 0; k < shards.size(); k++) conns.add(shards.pool(k).borrow());
+        } catch (SQLException e) {
+            for (Connection c : conns) c.close();
+            throw e;
+        }
+        return new KeysetPager<>(conns, sql, pageSize, order, binder, mapper);
+    }
+
+    // ===== Pagers for the large listings =====
+
+    static final String ITEMS_PAGE = """
+            SELECT i.ID, i.Name, c.Name, d.Description, i.Price
+            FROM Item i
+            LEFT JOIN Category c ON i.CategoryID = c.ID
+            LEFT JOIN Discount d ON i.DiscountID = d.ID
+            WHERE i.ID > ?
+            ORDER BY i.ID
+            LIMIT ?
+            """;
+
+    static final String ORDERS_PAGE = """
+            SELECT o.ID, o.CustomerID, c.FirstName, c.LastName
+            FROM Orders o
+            LEFT JOIN Customer c ON o.CustomerID = c.ID
+            WHERE o.ID > ?
+            ORDER BY o.ID
+            LIMIT ?
+            """;
+
+    static final String ORDER_LINES_PAGE = """
+            SELECT ol.OrderID, ol.ItemID, i.Name, ol.Quantity, ol.Total
+            FROM OrderLine ol
+            LEFT JOIN Item i ON ol.ItemID = i.ID
+            WHERE ol.OrderID > ? OR (ol.OrderID = ? AND ol.ItemID > ?)
+            ORDER BY ol.OrderID, ol.ItemID
+            LIMIT ?
+            """;
+
+    static final String PAYMENTS_PAGE = """
+            SELECT ID, orderID, paymentType, Amount, paymentDate
+            FROM Payment
+            WHERE ID > ?
+            ORDER BY ID
+            LIMIT ?
+            """;
+
+    public static KeysetPager<Rows.Item> items(Connection conn, int pageSize) throws SQLException {
+        return new KeysetPager<>(conn, ITEMS_PAGE, pageSize,
+                (ps, last) -> {
+                    ps.setInt(1, last == null ? 0 : last.id);
+                    return 2;
+                },
+                rs -> new Rows.Item(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getBigDecimal(5)));
+    }
+
+    /** Orders of {@code conn}'s database, or of every shard. */
+    public static KeysetPager<Rows.Order> orders(Connection conn, int pageSize) throws SQLException {
+        return ofOrders(conn, ORDERS_PAGE, pageSize, Comparator.comparingInt(o -> o.id),
+                (ps, last) -> {
+                    ps.setInt(1, last == null ? 0 : last.id);
+                    return 2;
+                },
+                rs -> new Rows.Order(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4)));
+    }
+
+    /**
+     * OrderLine has no single-column key, so it seeks on (OrderID, ItemID). Reads every
+     * shard when orders are sharded.
+     */
+    public static KeysetPager<Rows.OrderLine> orderLines(Connection conn, int pageSize) throws SQLException {
+        return ofOrders(conn, ORDER_LINES_PAGE, pageSize,
+                Comparator.comparingInt((Rows.OrderLine ol) -> ol.orderId).thenComparingInt(ol -> ol.itemId),
+                (ps, last) -> {
+                    int orderId = last == null ? 0 : last.orderId;
+                    ps.setInt(1, orderId);
+                    ps.setInt(2, orderId);
+                    ps.setInt(3, last == null ? 0 : last.itemId);
+                    return 4;
+                },
+                rs -> new Rows.OrderLine(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getInt(4), rs.getBigDecimal(5)));
+    }
+
+    /** Payments of {@code conn}'s database, or of every shard. */
+    public static KeysetPager<Rows.Payment> payments(Connection conn, int pageSize) throws SQLException {
+        return ofOrders(conn, PAYMENTS_PAGE, pageSize, Comparator.comparingInt(p -> p.id),
+                (ps, last) -> {
+                    ps.setInt(1, last == null ? 0 : last.id);
+                    return 2;
+                },
+                rs -> new Rows.Payment(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getBigDecimal(4), rs.getDate(5)));
+    }
+}
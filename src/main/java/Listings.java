@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The columns of every listing, and how to stream a listing into a {@link RowWriter}.
+ *
+ * The View Data menu prints through these with {@link RowWriter.Format#TEXT}; {@link #export}
+ * and {@link #main} write the same rows to a CSV or JSON Lines file.
+ *
+ * Usage: Listings &lt;table&gt; &lt;file&gt; [csv|jsonl]
+ */
+public final class Listings {
+
+    @FunctionalInterface
+    public interface Source<T> {
+        int list(Connection conn, Consumer<T> sink) throws SQLException;
+    }
+
+    /** One listing: its source query, column names and how a row fills them. */
+    public static final class Listing<T> {
+        public final String name;
+        private final Source<T> source;
+        private final String[] columns;
+        private final BiConsumer<T, RowWriter> values;
+
+        Listing(String name, Source<T> source, BiConsumer<T, RowWriter> values, String... columns) {
+            this.name = name;
+            this.source = source;
+            this.values = values;
+            this.columns = columns;
+        }
+
+        /** Streams every row to {@code out}; the caller flushes or closes it. */
+        public int write(Connection conn, RowWriter out) throws SQLException, IOException {
+            out.begin(columns);
+            try {
+                return source.list(conn, row -> {
+                    out.row();
+                    values.accept(row, out);
+                    out.end();
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    public static final Listing<Rows.Item> ITEMS = new Listing<>("items",
+            Listings::items,
+            (item, out) -> out.value(item.id).value(item.name).value(item.price).value(item.category).value(item.discount),
+            "ID", "Item", "Price", "Category", "Discount");
+
+    public static final Listing<Rows.Category> CATEGORIES = new Listing<>("categories",
+            Listings::categories,
+            (c, out) -> out.value(c.id).value(c.name).value(c.description),
+            "ID", "Name", "Description");
+
+    public static final Listing<Rows.Discount> DISCOUNTS = new Listing<>("discounts",
+            Listings::discounts,
+            (d, out) -> out.value(d.id).value(d.description).value(d.discountType).value(d.startDate).value(d.endDate),
+            "ID", "Description", "Type", "Start", "End");
+
+    public static final Listing<Rows.Customer> CUSTOMERS = new Listing<>("customers",
+            Listings::customers,
+            (c, out) -> out.value(c.id).value(c.firstName).value(c.lastName).value(c.phone).value(c.email),
+            "ID", "First Name", "Last Name", "Phone", "Email");
+
+    public static final Listing<Rows.Order> ORDERS = new Listing<>("orders",
+            Listings::orders,
+            (o, out) -> out.value(o.id).value(o.customerId).value(o.firstName).value(o.lastName),
+            "Order ID", "CustomerID", "First Name", "Last Name");
+
+    public static final Listing<Rows.Payment> PAYMENTS = new Listing<>("payments",
+            Listings::payments,
+            (p, out) -> out.value(p.id).value(p.orderId).value(p.paymentType).value(p.amount).value(p.paymentDate),
+            "ID", "OrderID", "Type", "Amount", "Date");
+
+    public static final Listing<Rows.OrderLine> ORDER_LINES = new Listing<>("order-lines",
+            Listings::orderLines,
+            (ol, out) -> out.value(ol.orderId).value(ol.itemId).value(ol.itemName).value(ol.quantity).value(ol.total),
+            "OrderID", "ItemID", "Item", "Quantity", "Total");
+
+    public static final Listing<Rows.SalesSummary> SALES_SUMMARY = new Listing<>("sales-summary",
+            Listings::salesSummary,
+            (s, out) -> out.value(s.customerId).value(s.customerName).value(s.orderCount).value(s.totalSpent).value(s.averageOrderValue),
+            "CustomerID", "Customer", "Orders", "Total Spent", "Average Order");
+
+    public static final Listing<Rows.InventoryEntry> INVENTORY = new Listing<>("inventory",
+            (conn, sink) -> DataAccess.on(conn).listInventory(sink),
+            (e, out) -> out.value(e.id).value(e.itemId).value(e.quantity).value(e.stockDate),
+            "ID", "ItemID", "Quantity", "StockDate");
+
+    private static final Map<String, Listing<?>> BY_NAME = new LinkedHashMap<>();
+
+    static {
+        for (Listing<?> listing : new Listing<?>[]{ITEMS, CATEGORIES, DISCOUNTS, CUSTOMERS, ORDERS, PAYMENTS,
+                ORDER_LINES, SALES_SUMMARY, INVENTORY}) {
+            BY_NAME.put(listing.name, listing);
+        }
+    }
+
+    private Listings() {
+    }
+
+    // Catalog tables: from memory when the catalog replica is enabled
+
+    static int items(Connection conn, Consumer<Rows.Item> sink) throws SQLException {
+        CatalogReplica catalog = Main.getCatalogReplica();
+        return catalog != null ? catalog.listItems(sink) : DataAccess.on(conn).listItems(sink);
+    }
+
+    static int categories(Connection conn, Consumer<Rows.Category> sink) throws SQLException {
+        CatalogReplica catalog = Main.getCatalogReplica();
+        return catalog != null ? catalog.listCategories(sink) : DataAccess.on(conn).listCategories(sink);
+    }
+
+    static int discounts(Connection conn, Consumer<Rows.Discount> sink) throws SQLException {
+        CatalogReplica catalog = Main.getCatalogReplica();
+        return catalog != null ? catalog.listDiscounts(sink) : DataAccess.on(conn).listDiscounts(sink);
+    }
+
+    static int customers(Connection conn, Consumer<Rows.Customer> sink) throws SQLException {
+        CatalogReplica catalog = Main.getCatalogReplica();
+        return catalog != null ? catalog.listCustomers(sink) : DataAccess.on(conn).listCustomers(sink);
+    }
+
+    // Per-customer tables: with shards, every shard is read and the rows merged in the
+    // order of the listing's ORDER BY
+
+    static int orders(Connection conn, Consumer<Rows.Order> sink) throws SQLException {
+        ShardRouter shards = Main.getShardRouter();
+        return shards == null
+                ? DataAccess.on(conn).listOrders(sink)
+                : shards.gather((c, s) -> DataAccess.on(c).listOrders(s), Comparator.comparingInt(o -> o.id), sink);
+    }
+
+    static int payments(Connection conn, Consumer<Rows.Payment> sink) throws SQLException {
+        ShardRouter shards = Main.getShardRouter();
+        return shards == null
+                ? DataAccess.on(conn).listPayments(sink)
+                : shards.gather((c, s) -> DataAccess.on(c).listPayments(s),
+                        Comparator.comparing((Rows.Payment p) -> p.paymentDate, Comparator.nullsFirst(Comparator.naturalOrder())), sink);
+    }
+
+    static int orderLines(Connection conn, Consumer<Rows.OrderLine> sink) throws SQLException {
+        ShardRouter shards = Main.getShardRouter();
+        return shards == null
+                ? DataAccess.on(conn).listOrderLines(sink)
+                : shards.gather((c, s) -> DataAccess.on(c).listOrderLines(s), Comparator.comparingInt(ol -> ol.orderId), sink);
+    }
+
+    static int salesSummary(Connection conn, Consumer<Rows.SalesSummary> sink) throws SQLException {
+        ShardRouter shards = Main.getShardRouter();
+        if (shards != null) {
+            // A customer's orders are all on its shard, so each shard's rows are complete
+            return shards.gather((c, s) -> DataAccess.on(c).salesSummary(s), BY_TOTAL_SPENT, sink);
+        }
+        SalesSummaryStore store = Main.getSalesSummaryStore();
+        return store != null ? store.forEach(conn, sink) : DataAccess.on(conn).salesSummary(sink);
+    }
+
+    /** TotalSpent DESC, NULLs last, like the SalesSummary listing. */
+    private static final Comparator<Rows.SalesSummary> BY_TOTAL_SPENT =
+            Comparator.comparing((Rows.SalesSummary row) -> row.totalSpent, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    /**
+     * The {@code n} customers who spent most, highest first. With the incremental store
+     * this reads only those {@code n} rows through its TotalSpent index; otherwise it
+     * streams the whole summary and keeps the best {@code n}.
+     */
+    static int topSalesSummary(Connection conn, int n, Consumer<Rows.SalesSummary> sink) throws SQLException {
+        if (n < 1) throw new IllegalArgumentException("Limit must be positive: " + n);
+        SalesSummaryStore store = Main.getShardRouter() == null ? Main.getSalesSummaryStore() : null;
+        List<Rows.SalesSummary> rows;
+        if (store != null) {
+            rows = store.top(conn, n);
+        } else {
+            // Worst of the best n on top, to be dropped first
+            PriorityQueue<Rows.SalesSummary> best = new PriorityQueue<>(BY_TOTAL_SPENT.reversed());
+            salesSummary(conn, row -> {
+                best.add(row);
+                if (best.size() > n) best.poll();
+            });
+            rows = new ArrayList<>(best);
+            rows.sort(BY_TOTAL_SPENT);
+        }
+        rows.forEach(sink);
+        return rows.size();
+    }
+
+    /** The sales summary listing, cut to the {@code n} customers who spent most. */
+    public static Listing<Rows.SalesSummary> topSalesSummary(int n) {
+        return new Listing<>(SALES_SUMMARY.name, (conn, sink) -> topSalesSummary(conn, n, sink),
+                SALES_SUMMARY.values, SALES_SUMMARY.columns);
+    }
+
+    /** @throws IllegalArgumentException if there is no listing of that name */
+    public static Listing<?> byName(String name) {
+        Listing<?> listing = BY_NAME.get(name.trim().toLowerCase(Locale.ROOT));
+        if (listing == null) throw new IllegalArgumentException("Unknown table '" + name + "', expected one of " + BY_NAME.keySet() + ".");
+        return listing;
+    }
+
+    /** Prints a listing on the console as {@code Label: value} lines. */
+    public static void print(Connection conn, Listing<?> listing) throws SQLException, IOException {
+        try (RowWriter out = RowWriter.console(RowWriter.Format.TEXT)) {
+            listing.write(conn, out);
+        }
+    }
+
+    /**
+     * Writes a listing to {@code file} (UTF-8), replacing it.
+     *
+     * @return rows written
+     */
+    public static int export(Connection conn, Listing<?> listing, RowWriter.Format format, Path file)
+            throws SQLException, IOException {
+        try (RowWriter out = RowWriter.of(format, new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8))) {
+            return listing.write(conn, out);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: Listings <" + String.join("|", BY_NAME.keySet()) + "> <file> [csv|jsonl]");
+            System.exit(1);
+        }
+        try (Connection conn = Main.getReadConnection(null)) {
+            Listing<?> listing = byName(args[0]);
+            RowWriter.Format format = RowWriter.Format.of(args.length > 2 ? args[2] : "csv");
+            Path file = Paths.get(args[1]);
+
+            long start = System.nanoTime();
+            int rows = export(conn, listing, format, file);
+            System.out.printf("Wrote %d rows to %s in %.1f s.%n", rows, file, (System.nanoTime() - start) / 1e9);
+        } catch (SQLException | IOException e) {
+            System.err.println("Export failed: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } finally {
+            Main.closeConnection();
+        }
+    }
+}
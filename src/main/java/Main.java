@@ -1,27 +1,44 @@
 import java.io.InputStream;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
 import java.sql.ResultSet;
-import java.sql.Statement;
 import java.sql.PreparedStatement;
-import java.sql.Types;
 import java.math.BigDecimal;
 import java.sql.Driver;
 import java.util.Enumeration;
 import java.util.Scanner;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class Main {
 
-    private static Connection connection = null;
-
-    public static Connection getConnection() {
-        if (connection != null) {
-            return connection;
-        }
-
+    private static ConnectionPool pool = null;
+    private static PricingEngine pricingEngine = null;
+    private static InventoryLedger inventoryLedger = null;
+    private static SalesSummaryStore salesSummaryStore = null;
+    private static OrderService orderService = null;
+    private static GroupCommitter groupCommitter = null;
+    private static ItemSearchIndex itemSearchIndex = null;
+    private static ReadRouter readRouter = null;
+    private static final Map<Integer, PaymentWriter> paymentWriters = new HashMap<>();
+    private static ShardRouter shardRouter = null;
+    private static CatalogReplica catalogReplica = null;
+    private static boolean catalogReplicaFailed = false;
+    /** Volatile so payment writer threads can invalidate it without the Main lock that close() holds while joining them. */
+    private static volatile OrderHistory orderHistory = null;
+    private static boolean shardsChecked = false;
+
+    /** Read-your-writes session key for the interactive menu. */
+    private static final Object CONSOLE_SESSION = "console";
+
+    public static Properties loadProperties() {
         Properties props = new Properties();
 
         try (InputStream is = Main.class.getClassLoader().getResourceAsStream("app.properties")) {
@@ -33,40 +50,343 @@ public class Main {
 
             props.load(is);
 
-            // Get database properties
-            String url = props.getProperty("db.url");
-            String username = props.getProperty("db.username");
-            String password = props.getProperty("db.password");
+        } catch (IOException e) {
+            System.err.println("Error reading app.properties file: " + e.getMessage());
+            return null;
+        }
+
+        return props;
+    }
+
+    public static synchronized ConnectionPool getPool() {
+        if (pool != null) {
+            return pool;
+        }
+
+        Properties props = loadProperties();
+        if (props == null) {
+            return null;
+        }
+
+        try {
             String driver = props.getProperty("db.driver", "com.mysql.cj.jdbc.Driver");
 
             // Load MySQL JDBC driver
             Class.forName(driver);
 
-            // Establish connection
-            connection = DriverManager.getConnection(url, username, password);
-            System.out.println("Database connection established successfully!");
+            // Open the minimum number of pooled connections
+            pool = ConnectionPool.fromProperties(props);
+            System.out.println("Database connection pool established successfully!");
 
-        } catch (IOException e) {
-            System.err.println("Error reading app.properties file: " + e.getMessage());
         } catch (ClassNotFoundException e) {
             System.err.println("MySQL JDBC Driver not found: " + e.getMessage());
         } catch (SQLException e) {
             System.err.println("Database connection failed: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid db.pool setting in app.properties: " + e.getMessage());
         }
 
-        return connection;
+        return pool;
     }
 
-    public static void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                System.out.println("Database connection closed.");
-                cleanupJdbcDrivers();
-            } catch (SQLException e) {
-                System.err.println("Error closing connection: " + e.getMessage());
+    /**
+     * Leases a connection from the pool. Closing it returns it to the pool.
+     */
+    public static Connection getConnection() throws SQLException {
+        ConnectionPool p = getPool();
+        if (p == null) {
+            throw new SQLException("Connection pool is not available.");
+        }
+        return p.borrow();
+    }
+
+    /**
+     * Routes read-only listing and reporting queries to the {@code db.replica.*} servers,
+     * or to the primary when none is configured or usable.
+     */
+    public static synchronized ReadRouter getReadRouter() throws SQLException {
+        if (readRouter == null) {
+            ConnectionPool p = getPool();
+            Properties props = loadProperties();
+            if (p == null || props == null) {
+                throw new SQLException("Connection pool is not available.");
+            }
+            readRouter = new ReadRouter(p, props);
+        }
+        return readRouter;
+    }
+
+    /**
+     * Leases a connection for read-only queries. Never use it to write.
+     *
+     * @param session reads right after this session's own writes go to the primary; see {@link ReadRouter#wrote}
+     */
+    public static Connection getReadConnection(Object session) throws SQLException {
+        return getReadRouter().borrowRead(session);
+    }
+
+    /**
+     * Routes customers to the {@code db.shard.*} databases, or null if none is configured
+     * and everything lives in the primary.
+     */
+    public static synchronized ShardRouter getShardRouter() throws SQLException {
+        if (!shardsChecked) {
+            Properties props = loadProperties();
+            if (props != null && props.getProperty("db.shard.1.url") != null) {
+                if (getPool() == null) {
+                    throw new SQLException("Connection pool is not available.");
+                }
+                shardRouter = new ShardRouter(props);
+            }
+            shardsChecked = true;
+        }
+        return shardRouter;
+    }
+
+    public static synchronized PricingEngine getPricingEngine() throws SQLException {
+        if (pricingEngine == null) {
+            ConnectionPool p = getPool();
+            if (p == null) {
+                throw new SQLException("Connection pool is not available.");
+            }
+            PricingEngine engine = new PricingEngine(p);
+            engine.load();
+            pricingEngine = engine;
+        }
+        return pricingEngine;
+    }
+
+    /**
+     * The incrementally maintained sales summary, or null unless sales.summary.incremental=true.
+     */
+    public static synchronized SalesSummaryStore getSalesSummaryStore() {
+        if (salesSummaryStore == null) {
+            ConnectionPool p = getPool();
+            Properties props = loadProperties();
+            if (p != null && props != null && Boolean.parseBoolean(props.getProperty("sales.summary.incremental", "false"))) {
+                SalesSummaryStore store = new SalesSummaryStore(p);
+                store.startConsistencyCheck(Long.parseLong(props.getProperty("sales.summary.checkIntervalMs", "0")));
+                salesSummaryStore = store;
+            }
+        }
+        return salesSummaryStore;
+    }
+
+    /**
+     * In-memory catalog (Item, Category, Discount, Customer), or null unless
+     * catalog.replica.enabled=true. If it cannot load, for example because migration 6 was
+     * not applied, a warning is printed and catalog reads go to the database.
+     */
+    public static synchronized CatalogReplica getCatalogReplica() {
+        if (catalogReplica == null && !catalogReplicaFailed) {
+            ConnectionPool p = getPool();
+            Properties props = loadProperties();
+            if (p != null && props != null && Boolean.parseBoolean(props.getProperty("catalog.replica.enabled", "false"))) {
+                CatalogReplica replica = new CatalogReplica(p, Long.parseLong(props.getProperty("catalog.replica.overlapMs", "5000")));
+                try {
+                    replica.start(Long.parseLong(props.getProperty("catalog.replica.refreshMs", "1000")));
+                    catalogReplica = replica;
+                } catch (SQLException e) {
+                    replica.close();
+                    catalogReplicaFailed = true;
+                    System.err.println("Catalog replica disabled, reading the catalog from the database "
+                            + "(run IndexMigrations apply, or grant PROCESS?): " + e.getMessage());
+                }
             }
         }
+        return catalogReplica;
+    }
+
+    /**
+     * Shared order service. With inventory.ledger.enabled=true, stock is reserved in an
+     * in-memory ledger and written to InventoryEntry in the background. With
+     * sales.summary.incremental=true, each order also updates CustomerSalesSummary. With
+     * orders.groupCommit.enabled=true, concurrent orders are committed together in batches.
+     * With shards configured, orders go to the customer's shard instead and none of these apply.
+     */
+    public static synchronized OrderService getOrderService() throws SQLException {
+        if (orderService == null) {
+            ConnectionPool p = getPool();
+            if (p == null) {
+                throw new SQLException("Connection pool is not available.");
+            }
+            Properties props = loadProperties();
+            ShardRouter shards = getShardRouter();
+            if (shards != null) {
+                System.out.println("Orders are placed on " + shards.size() + " shards; inventory ledger, group commit and "
+                        + "incremental sales summary settings are not used.");
+                orderService = new ShardedOrderService(p, shards);
+                return orderService;
+            }
+            if (props != null && Boolean.parseBoolean(props.getProperty("inventory.ledger.enabled", "false"))) {
+                InventoryLedger ledger = new InventoryLedger(p,
+                        Integer.parseInt(props.getProperty("inventory.ledger.stripes", "64")),
+                        Integer.parseInt(props.getProperty("inventory.ledger.flushBatchSize", "500")),
+                        Long.parseLong(props.getProperty("inventory.ledger.flushIntervalMs", "200")));
+                ledger.start();
+                inventoryLedger = ledger;
+            }
+            SalesSummaryStore store = getSalesSummaryStore();
+            if (props != null && Boolean.parseBoolean(props.getProperty("orders.groupCommit.enabled", "false"))) {
+                GroupCommitter committer = new GroupCommitter(p, inventoryLedger, store,
+                        Integer.parseInt(props.getProperty("orders.groupCommit.maxBatch", "64")),
+                        Long.parseLong(props.getProperty("orders.groupCommit.windowMicros", "500")));
+                committer.start();
+                groupCommitter = committer;
+            }
+            orderService = new OrderService(p, inventoryLedger, store, groupCommitter);
+        }
+        return orderService;
+    }
+
+    /**
+     * Background Payment writer for the database holding {@code customerId}'s orders:
+     * checkout queues payments and returns without waiting for the INSERT. Sized by the
+     * payments.* properties; with shards there is one writer per shard.
+     */
+    public static synchronized PaymentWriter getPaymentWriter(int customerId) throws SQLException {
+        ShardRouter shards = getShardRouter();
+        int shard = shards == null ? 0 : shards.shardOf(customerId);
+        PaymentWriter writer = paymentWriters.get(shard);
+        if (writer == null) {
+            ConnectionPool p = shards == null ? getPool() : shards.pool(shard);
+            Properties props = loadProperties();
+            if (p == null || props == null) {
+                throw new SQLException("Connection pool is not available.");
+            }
+            writer = new PaymentWriter(p,
+                    Integer.parseInt(props.getProperty("payments.queueCapacity", "10000")),
+                    Integer.parseInt(props.getProperty("payments.batchSize", "500")),
+                    Long.parseLong(props.getProperty("payments.flushIntervalMs", "200")),
+                    Long.parseLong(props.getProperty("payments.offerTimeoutMs", "50")));
+            writer.onWritten(Main::customerOrdersChanged);
+            writer.start();
+            paymentWriters.put(shard, writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Cached per-customer order history, read from the primary or the customer's shard.
+     * Caches the pages of up to orders.history.cacheSize customers.
+     */
+    public static synchronized OrderHistory getOrderHistory() throws SQLException {
+        if (orderHistory == null) {
+            ConnectionPool p = getPool();
+            Properties props = loadProperties();
+            if (p == null || props == null) {
+                throw new SQLException("Connection pool is not available.");
+            }
+            orderHistory = new OrderHistory(p, getShardRouter(),
+                    Integer.parseInt(props.getProperty("orders.history.cacheSize", "10000")));
+        }
+        return orderHistory;
+    }
+
+    /**
+     * In-memory item name index for typeahead search, loaded on first use.
+     */
+    public static synchronized ItemSearchIndex getItemSearchIndex() throws SQLException {
+        if (itemSearchIndex == null) {
+            ConnectionPool p = getPool();
+            if (p == null) {
+                throw new SQLException("Connection pool is not available.");
+            }
+            ItemSearchIndex index = new ItemSearchIndex(p);
+            index.load();
+            itemSearchIndex = index;
+        }
+        return itemSearchIndex;
+    }
+
+    /**
+     * Drops in-memory state derived from an item after it is inserted, updated or deleted.
+     */
+    public static synchronized void itemChanged(int itemId) {
+        if (pricingEngine != null) {
+            pricingEngine.invalidate(itemId);
+        }
+        if (itemSearchIndex != null) {
+            itemSearchIndex.refresh(itemId);
+        }
+        if (shardRouter != null) {
+            shardRouter.replicateItem(pool, itemId);
+        }
+        if (catalogReplica != null) {
+            catalogReplica.refreshLater();
+        }
+    }
+
+    /**
+     * Drops cached order history of a customer after one of their orders or payments is
+     * committed. Not synchronized: payment writer threads call it.
+     */
+    public static void customerOrdersChanged(int customerId) {
+        OrderHistory history = orderHistory;
+        if (history != null) {
+            history.invalidate(customerId);
+        }
+    }
+
+    /**
+     * Like {@link #itemChanged} after items were added in bulk.
+     */
+    public static synchronized void itemsAdded() {
+        if (itemSearchIndex != null) {
+            itemSearchIndex.reloadLater();
+        }
+        if (shardRouter != null) {
+            shardRouter.syncReferenceDataLater(pool);
+        }
+        if (catalogReplica != null) {
+            catalogReplica.refreshLater();
+        }
+    }
+
+    public static synchronized void closeConnection() {
+        if (pool != null) {
+            if (groupCommitter != null) {
+                groupCommitter.close(); // Commit queued orders before the ledger flushes
+                groupCommitter = null;
+            }
+            for (PaymentWriter writer : paymentWriters.values()) {
+                writer.close(); // Write queued payments while the pools are still open
+            }
+            paymentWriters.clear();
+            if (inventoryLedger != null) {
+                inventoryLedger.close(); // Flush pending stock decrements first
+                inventoryLedger = null;
+            }
+            if (salesSummaryStore != null) {
+                salesSummaryStore.close();
+                salesSummaryStore = null;
+            }
+            if (itemSearchIndex != null) {
+                itemSearchIndex.close();
+                itemSearchIndex = null;
+            }
+            if (readRouter != null) {
+                readRouter.close();
+                readRouter = null;
+            }
+            if (shardRouter != null) {
+                shardRouter.close();
+                shardRouter = null;
+            }
+            shardsChecked = false;
+            if (catalogReplica != null) {
+                catalogReplica.close();
+                catalogReplica = null;
+            }
+            catalogReplicaFailed = false;
+            orderHistory = null;
+            orderService = null;
+            pool.close();
+            pool = null;
+            pricingEngine = null;
+            System.out.println("Database connection pool closed.");
+            cleanupJdbcDrivers();
+        }
     }
 
       public static void cleanupJdbcDrivers() {
@@ -97,9 +417,19 @@ public class Main {
     public static void main(String[] args) {
         // Ensure JDBC drivers/cleanup logic runs on JVM shutdown
         Runtime.getRuntime().addShutdownHook(new Thread(Main::cleanupJdbcDrivers));
+
+        if (args.length > 0 && args[0].equals("serve")) {
+            // Headless mode for POS terminals instead of the interactive menu
+            try {
+                PosServer.serve();
+            } catch (IOException e) {
+                System.err.println("Could not start server: " + e.getMessage());
+                closeConnection();
+            }
+            return;
+        }
         
-        Connection conn = getConnection();
-        if (conn == null) {
+        if (getPool() == null) {
             System.out.println("Failed to connect to database.");
             return;
         }
@@ -113,22 +443,71 @@ public class Main {
                 System.out.println("1. View Data (Tables & Views)");
                 System.out.println("2. Manage Items (Insert, Update, Delete)");
                 System.out.println("3. Place Order (Transactional Workflow)");
-                System.out.println("4. Check Price (Stored Function)");
+                System.out.println("4. Check Price");
                 System.out.println("5. Exit");
+                System.out.println("6. Connection Pool Stats");
+                System.out.println("7. Query Metrics");
+                System.out.println("8. Search Items by Name");
                 System.out.print("Enter choice: ");
 
                 String choice = scanner.nextLine().trim();
 
-                switch (choice) {
-                    case "1" -> handleViewMenu(conn, scanner);
-                    case "2" -> handleItemMenu(conn, scanner);
-                    case "3" -> placeOrderTransaction(conn, scanner);
-                    case "4" -> checkItemPrice(conn, scanner);
-                    case "5" -> {
-                        running = false;
-                        System.out.println("Goodbye!");
+                if (choice.equals("5")) {
+                    running = false;
+                    System.out.println("Goodbye!");
+                    continue;
+                }
+                if (choice.equals("6")) {
+                    System.out.println(getPool().describe());
+                    if (readRouter != null && readRouter.hasReplicas()) {
+                        System.out.println(readRouter.describe());
+                    }
+                    if (shardRouter != null) {
+                        System.out.println(shardRouter.describe());
+                    }
+                    if (catalogReplica != null) {
+                        System.out.println(catalogReplica.describe());
+                    }
+                    if (orderHistory != null) {
+                        System.out.println(orderHistory.describe());
                     }
-                    default -> System.out.println("Invalid option. Please try again.");
+                    for (PaymentWriter writer : paymentWriters.values()) {
+                        System.out.println(writer.describe());
+                    }
+                    continue;
+                }
+                if (choice.equals("7")) {
+                    System.out.println(QueryMetrics.snapshot());
+                    continue;
+                }
+                if (choice.equals("8")) {
+                    searchItems(scanner);
+                    continue;
+                }
+
+                if (choice.equals("1")) {
+                    // Listings and reports only read, so they may run on a replica
+                    try (Connection conn = getReadConnection(CONSOLE_SESSION)) {
+                        handleViewMenu(conn, scanner);
+                    } catch (SQLException e) {
+                        System.out.println("Could not obtain a database connection: " + e.getMessage());
+                    }
+                    continue;
+                }
+
+                // Each operation leases its own connection and hands it back when done
+                try (Connection conn = getConnection()) {
+                    switch (choice) {
+                        case "2" -> handleItemMenu(conn, scanner);
+                        case "3" -> placeOrderTransaction(conn, scanner);
+                        case "4" -> checkItemPrice(conn, scanner);
+                        default -> System.out.println("Invalid option. Please try again.");
+                    }
+                    if (choice.equals("2") || choice.equals("3")) {
+                        getReadRouter().wrote(CONSOLE_SESSION);
+                    }
+                } catch (SQLException e) {
+                    System.out.println("Could not obtain a database connection: " + e.getMessage());
                 }
             }
         }
@@ -136,168 +515,85 @@ public class Main {
         closeConnection();
     }
 
-    public static void selectAllItems(Connection conn) {
-        String query = """ 
-            SELECT
-                i.ID,
-                i.Name AS Item,
-                c.Name AS Category,
-                d.Description AS Discount,
-                i.Price
-            FROM Item i
-            LEFT JOIN Category c ON i.CategoryID = c.ID
-            LEFT JOIN Discount d ON i.DiscountID = d.ID
-            ORDER BY i.ID;
-            """;
-        
-        try (PreparedStatement stmt = conn.prepareStatement(query);
-             ResultSet res = stmt.executeQuery()) {
+    /**
+     * Prepares a forward-only, read-only statement that streams rows from the server
+     * one at a time instead of buffering the whole result set on the heap.
+     * The connection cannot run another statement until the result set is closed.
+     */
+    public static PreparedStatement prepareStreaming(Connection conn, String query) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(Integer.MIN_VALUE); // Connector/J: stream row by row
+        return stmt;
+    }
 
+    public static void selectAllItems(Connection conn) {
+        try {
             System.out.println("\n--- Items ---");
-            while (res.next()) {
-                System.out.printf("ID: %d | Item: %s | Price: %s | Category: %s | Discount: %s%n",
-                    res.getInt("ID"),
-                    res.getString("Item"),
-                    res.getBigDecimal("Price"),
-                    res.getString("Category"),
-                    res.getString("Discount"));
-            }
-
-        } catch (SQLException e) {
+            Listings.print(conn, Listings.ITEMS);
+        } catch (SQLException | IOException e) {
             System.out.println("Error selecting items: " + e.getMessage());
         }
     }
 
     public static void selectAllCategories(Connection conn) {
-        String query = "SELECT ID, Name, Description FROM Category ORDER BY Name";
-        try (PreparedStatement stmt = conn.prepareStatement(query);
-             ResultSet res = stmt.executeQuery()) {
+        try {
             System.out.println("\n--- Categories ---");
-            while (res.next()) {
-                System.out.println("ID: " + res.getInt("ID") +
-                        ", Name: " + res.getString("Name") +
-                        ", Description: " + res.getString("Description"));
-            }
-        } catch (SQLException e) {
+            Listings.print(conn, Listings.CATEGORIES);
+        } catch (SQLException | IOException e) {
             System.out.println("Error selecting categories: " + e.getMessage());
         }
     }
 
     public static void selectAllDiscounts(Connection conn) {
-        String query = "SELECT ID, Description, discountType, startDate, endDate FROM Discount ORDER BY startDate";
-        try (PreparedStatement stmt = conn.prepareStatement(query);
-             ResultSet res = stmt.executeQuery()) {
+        try {
             System.out.println("\n--- Discounts ---");
-            while (res.next()) {
-                System.out.println("ID: " + res.getInt("ID") +
-                        ", Description: " + res.getString("Description") +
-                        ", Type: " + res.getString("discountType") +
-                        ", Start: " + res.getDate("startDate") +
-                        ", End: " + res.getDate("endDate"));
-            }
-        } catch (SQLException e) {
+            Listings.print(conn, Listings.DISCOUNTS);
+        } catch (SQLException | IOException e) {
             System.out.println("Error selecting discounts: " + e.getMessage());
         }
     }
 
     public static void selectAllCustomers(Connection conn) {
-        String query = "SELECT ID, FirstName, LastName, Phone, Email FROM Customer ORDER BY LastName, FirstName";
-        try (PreparedStatement stmt = conn.prepareStatement(query);
-             ResultSet res = stmt.executeQuery()) {
+        try {
             System.out.println("\n--- Customers ---");
-            while (res.next()) {
-                System.out.println("ID: " + res.getInt("ID") +
-                        ", Name: " + res.getString("FirstName") + " " + res.getString("LastName") +
-                        ", Phone: " + res.getString("Phone") +
-                        ", Email: " + res.getString("Email"));
-            }
-        } catch (SQLException e) {
+            Listings.print(conn, Listings.CUSTOMERS);
+        } catch (SQLException | IOException e) {
             System.out.println("Error selecting customers: " + e.getMessage());
         }
     }
 
     public static void selectAllOrders(Connection conn) {
-        String query = """
-        SELECT o.ID, o.CustomerID, c.FirstName, c.LastName 
-        FROM Orders o 
-        LEFT JOIN Customer c ON o.CustomerID = c.ID 
-        ORDER BY o.ID
-        """;
-        try (PreparedStatement stmt = conn.prepareStatement(query);
-             ResultSet res = stmt.executeQuery()) {
+        try {
             System.out.println("\n--- Orders ---");
-            while (res.next()) {
-                System.out.println("Order ID: " + res.getInt("ID") +
-                        ", CustomerID: " + res.getInt("CustomerID") +
-                        ", Customer: " + res.getString("FirstName") + " " + res.getString("LastName"));
-            }
-        } catch (SQLException e) {
+            Listings.print(conn, Listings.ORDERS);
+        } catch (SQLException | IOException e) {
             System.out.println("Error selecting orders: " + e.getMessage());
         }
     }
 
     public static void selectAllPayments(Connection conn) {
-        String query = "SELECT ID, orderID, paymentType, Amount, paymentDate FROM Payment ORDER BY paymentDate";
-        try (PreparedStatement stmt = conn.prepareStatement(query);
-             ResultSet res = stmt.executeQuery()) {
+        try {
             System.out.println("\n--- Payments ---");
-            while (res.next()) {
-                System.out.println("ID: " + res.getInt("ID") +
-                        ", OrderID: " + res.getInt("orderID") +
-                        ", Type: " + res.getString("paymentType") +
-                        ", Amount: " + res.getBigDecimal("Amount") +
-                        ", Date: " + res.getDate("paymentDate"));
-            }
-        } catch (SQLException e) {
+            Listings.print(conn, Listings.PAYMENTS);
+        } catch (SQLException | IOException e) {
             System.out.println("Error selecting payments: " + e.getMessage());
         }
     }
 
     public static void selectAllOrderLines(Connection conn) {
-        String query = """
-        SELECT ol.OrderID, ol.ItemID, i.Name AS ItemName, ol.Quantity, ol.Total 
-        FROM OrderLine ol 
-        LEFT JOIN Item i ON ol.ItemID = i.ID 
-        ORDER BY ol.OrderID
-        """;
-        try (PreparedStatement stmt = conn.prepareStatement(query);
-             ResultSet res = stmt.executeQuery()) {
+        try {
             System.out.println("\n--- OrderLines ---");
-            while (res.next()) {
-                System.out.println("OrderID: " + res.getInt("OrderID") +
-                        ", ItemID: " + res.getInt("ItemID") +
-                        ", Item: " + res.getString("ItemName") +
-                        ", Quantity: " + res.getInt("Quantity") +
-                        ", Total: " + res.getBigDecimal("Total"));
-            }
-        } catch (SQLException e) {
+            Listings.print(conn, Listings.ORDER_LINES);
+        } catch (SQLException | IOException e) {
             System.out.println("Error selecting order lines: " + e.getMessage());
         }
     }
 
     public static void insertItem(Connection conn, String name, BigDecimal price, Integer categoryId, Integer discountId) {
-        String sql = """
-        INSERT INTO Item (Name, Price, CategoryID, DiscountID) 
-        VALUES (?, ?, ?, ?);
-        """;
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, name);
-            ps.setBigDecimal(2, price);
-
-            if (categoryId != null) {
-                ps.setInt(3, categoryId);
-            } else {
-                ps.setNull(3, Types.INTEGER);
-            }
-
-            if (discountId != null) {
-                ps.setInt(4, discountId);
-            } else {
-                ps.setNull(4, Types.INTEGER);
-            }
-
-            int rows = ps.executeUpdate();
-            System.out.println("Inserted item '" + name + "' — rows affected: " + rows);
+        try {
+            int id = DataAccess.on(conn).insertItem(name, price, categoryId, discountId);
+            if (id > 0) itemChanged(id);
+            System.out.println("Inserted item '" + name + "' with ID " + id);
 
         } catch (SQLException e) {
             System.err.println("Error inserting item: " + e.getMessage());
@@ -327,12 +623,38 @@ public class Main {
         }
     }
 
+    public static void promptBulkImportItems(Connection conn, Scanner scanner) {
+        System.out.print("Enter path to item file (Name, Price, CategoryID, DiscountID): ");
+        Path file = Paths.get(scanner.nextLine().trim());
+        if (!Files.isRegularFile(file)) {
+            System.out.println("File not found: " + file);
+            return;
+        }
+
+        Properties props = loadProperties();
+        int chunkSize = Integer.parseInt(props == null ? "1000" : props.getProperty("db.import.chunkSize", "1000"));
+
+        try {
+            if (ItemImporter.committedLines(conn, file) > 0) {
+                System.out.println("Resuming previous import from its last committed chunk.");
+            }
+            System.out.println(new ItemImporter(chunkSize).importFile(conn, file));
+            itemsAdded();
+        } catch (IOException | SQLException e) {
+            itemsAdded(); // Earlier chunks are committed
+            System.out.println("Bulk import failed, last chunk rolled back (run again to resume): " + e.getMessage());
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number in import file: " + e.getMessage());
+        }
+    }
+
     public static void handleItemMenu(Connection conn, Scanner scanner) {
         System.out.println("\n--- Manage Items ---");
         System.out.println("1. Insert Item");
         System.out.println("2. Update Item");
         System.out.println("3. Delete Item");
         System.out.println("4. Back");
+        System.out.println("5. Bulk Import Items (CSV/TSV file)");
         System.out.print("Enter choice: ");
         String choice = scanner.nextLine();
 
@@ -341,6 +663,7 @@ public class Main {
             case "2" -> updateItem(conn, scanner);
             case "3" -> deleteItem(conn, scanner);
             case "4" -> {}
+            case "5" -> promptBulkImportItems(conn, scanner);
             default -> System.out.println("Invalid choice.");
         }
     }
@@ -356,20 +679,10 @@ public class Main {
             System.out.print("Enter new Price: ");
             BigDecimal price = new BigDecimal(scanner.nextLine().trim());
 
-            String sql = """
-            UPDATE Item 
-            SET Name = ?, Price = ? 
-            WHERE ID = ?
-            """;
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, name);
-                ps.setBigDecimal(2, price);
-                ps.setInt(3, id);
-                
-                int rows = ps.executeUpdate();
-                if (rows > 0) System.out.println("Item updated successfully.");
-                else System.out.println("Item not found.");
-            }
+            int rows = DataAccess.on(conn).updateItem(id, name, price);
+            itemChanged(id);
+            if (rows > 0) System.out.println("Item updated successfully.");
+            else System.out.println("Item not found.");
         } catch (SQLException | NumberFormatException e) {
             System.out.println("Error updating item: " + e.getMessage());
         }
@@ -380,13 +693,10 @@ public class Main {
             System.out.print("Enter Item ID to delete: ");
             int id = Integer.parseInt(scanner.nextLine().trim());
 
-            String sql = "DELETE FROM Item WHERE ID = ?";
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, id);
-                int rows = ps.executeUpdate();
-                if (rows > 0) System.out.println("Item deleted successfully.");
-                else System.out.println("Item not found.");
-            }
+            int rows = DataAccess.on(conn).deleteItem(id);
+            itemChanged(id);
+            if (rows > 0) System.out.println("Item deleted successfully.");
+            else System.out.println("Item not found.");
         } catch (SQLException e) {
             System.out.println("Error deleting item (check constraints): " + e.getMessage());
         } catch (NumberFormatException e) {
@@ -399,84 +709,48 @@ public class Main {
         try {
             System.out.print("Enter Customer ID: ");
             int customerId = Integer.parseInt(scanner.nextLine().trim());
-            
-            System.out.print("Enter Item ID: ");
-            int itemId = Integer.parseInt(scanner.nextLine().trim());
-            
-            System.out.print("Enter Quantity: ");
-            int quantity = Integer.parseInt(scanner.nextLine().trim());
-
-            conn.setAutoCommit(false); // Start Transaction
-
-            try {
-                // 1. Create Order
-                String orderSql = "INSERT INTO Orders (CustomerID) VALUES (?)";
-                int orderId = -1;
-                try (PreparedStatement ps = conn.prepareStatement(orderSql, Statement.RETURN_GENERATED_KEYS)) {
-                    ps.setInt(1, customerId);
-                    ps.executeUpdate();
-                    try (ResultSet rs = ps.getGeneratedKeys()) {
-                        if (rs.next()) orderId = rs.getInt(1);
-                    }
-                }
-
-                if (orderId == -1) throw new SQLException("Failed to create order.");
-
-                // 2. Get Item Price
-                BigDecimal price = BigDecimal.ZERO;
-                String priceSql = """
-                SELECT Price FROM Item WHERE ID = ?
-                """;
-                try (PreparedStatement ps = conn.prepareStatement(priceSql)) {
-                    ps.setInt(1, itemId);
-                    try (ResultSet rs = ps.executeQuery()) {
-                        if (rs.next()) price = rs.getBigDecimal("Price");
-                        else throw new SQLException("Item not found.");
-                    }
-                }
-
-                // 3. Create OrderLine
-                BigDecimal total = price.multiply(new BigDecimal(quantity));
-                String lineSql = """
-                INSERT INTO OrderLine (OrderID, ItemID, Quantity, Total) VALUES (?, ?, ?, ?)
-                """;
-                try (PreparedStatement ps = conn.prepareStatement(lineSql)) {
-                    ps.setInt(1, orderId);
-                    ps.setInt(2, itemId);
-                    ps.setInt(3, quantity);
-                    ps.setBigDecimal(4, total);
-                    ps.executeUpdate();
-                }
 
-                // 4. Update Inventory with stored procedure
-                String invSql = """
-                CALL UpdateInventoryOnSale(?, ?, ?)
-                """;
-                try (java.sql.CallableStatement cs = conn.prepareCall(invSql)) {
-                    // IN parameters
-                    cs.setInt(1, itemId);
-                    cs.setInt(2, quantity);
+            List<OrderService.Line> lines = new ArrayList<>();
+            while (true) {
+                System.out.print("Enter Item ID (blank to finish): ");
+                String itemInput = scanner.nextLine().trim();
+                if (itemInput.isEmpty()) break;
+                int itemId = Integer.parseInt(itemInput);
 
-                    // OUT parameter
-                    cs.registerOutParameter(3, java.sql.Types.BOOLEAN);
+                System.out.print("Enter Quantity: ");
+                int quantity = Integer.parseInt(scanner.nextLine().trim());
 
-                    cs.execute();
+                lines.add(new OrderService.Line(itemId, quantity));
+            }
 
-                    boolean success = cs.getBoolean(3);
-                    if (!success) throw new SQLException("Insufficient inventory.");
-                }
+            if (lines.isEmpty()) {
+                System.out.println("No items entered. Order cancelled.");
+                return;
+            }
 
-                conn.commit(); // Commit Transaction
+            int orderId;
+            try {
+                orderId = getOrderService().placeOrder(conn, customerId, lines);
+                customerOrdersChanged(customerId);
                 System.out.println("Order placed successfully! Order ID: " + orderId);
-
             } catch (SQLException e) {
-                conn.rollback(); // Rollback on error
                 System.out.println("Transaction failed! Rolled back. Error: " + e.getMessage());
-            } finally {
-                conn.setAutoCommit(true); // Reset
+                return;
             }
 
-        } catch (SQLException | NumberFormatException e) {
+            System.out.print("Payment type (blank to pay later): ");
+            String paymentType = scanner.nextLine().trim();
+            if (paymentType.isEmpty()) return;
+            System.out.print("Amount (blank for the order total): ");
+            String amountInput = scanner.nextLine().trim();
+            try {
+                getPaymentWriter(customerId).submit(customerId, orderId, paymentType, amountInput.isEmpty() ? null : new BigDecimal(amountInput));
+                System.out.println("Payment recorded.");
+            } catch (SQLException e) {
+                System.out.println("Payment could not be recorded: " + e.getMessage());
+            }
+
+        } catch (IllegalArgumentException e) {
             System.out.println("Invalid input: " + e.getMessage());
         }
     }
@@ -488,61 +762,156 @@ public class Main {
             System.out.print("Enter Quantity: ");
             int qty = Integer.parseInt(scanner.nextLine().trim());
 
-            String sql = "SELECT CalculateDiscountedPrice(?, ?) AS FinalPrice";
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, itemId);
-                ps.setInt(2, qty);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        System.out.println("Calculated Price: " + rs.getBigDecimal("FinalPrice"));
-                    }
-                }
+            // Same result as CalculateDiscountedPrice, without a server round trip
+            BigDecimal price = getPricingEngine().price(itemId, qty);
+            if (price != null) {
+                System.out.println("Calculated Price: " + price);
+            } else {
+                System.out.println("No price available (unknown item or discount without a value).");
             }
         } catch (SQLException | NumberFormatException e) {
             System.out.println("Error checking price: " + e.getMessage());
         }
     }
 
-    public static void viewSalesSummary(Connection conn) {
-        String query = "SELECT * FROM SalesSummary";
-        try (PreparedStatement ps = conn.prepareStatement(query);
-             ResultSet rs = ps.executeQuery()) {
-            
-            System.out.println("\n--- Sales Summary ---");
-            while (rs.next()) {
-                System.out.printf("Customer: %s | Orders: %d | Total Spent: %s%n",
-                    rs.getString("CustomerName"),
-                    rs.getInt("OrderCount"),
-                    rs.getBigDecimal("TotalSpent"));
+    public static void searchItems(Scanner scanner) {
+        try {
+            ItemSearchIndex index = getItemSearchIndex();
+            System.out.print("Enter part of an item name: ");
+            String query = scanner.nextLine().trim();
+
+            List<ItemSearchIndex.Match> matches = index.search(query, 20);
+            if (matches.isEmpty()) {
+                System.out.println("No matching items.");
+            }
+            for (ItemSearchIndex.Match m : matches) {
+                System.out.printf("ID: %d | Name: %s | Category: %s | Price: %s%n", m.id, m.name, m.category, m.price);
             }
         } catch (SQLException e) {
+            System.out.println("Error searching items: " + e.getMessage());
+        }
+    }
+
+    public static void viewSalesSummary(Connection conn, Scanner scanner) {
+        try {
+            System.out.print("Show the top N customers (Enter for all): ");
+            String top = scanner.nextLine().trim();
+            Listings.Listing<Rows.SalesSummary> listing = top.isEmpty()
+                    ? Listings.SALES_SUMMARY
+                    : Listings.topSalesSummary(Integer.parseInt(top));
+            System.out.println("\n--- Sales Summary ---");
+            Listings.print(conn, listing);
+        } catch (SQLException | IOException e) {
             System.out.println("Error viewing summary: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid number: " + e.getMessage());
         }
     }
 
     public static void viewInventoryEntry(Connection conn) {
-        String query = "SELECT * FROM InventoryEntry;";
-        try (PreparedStatement ps = conn.prepareStatement(query);
-             ResultSet rs = ps.executeQuery()) {
-
+        try {
             System.out.println("\n--- Inventory Summary ---");
-            while (rs.next()) {
-//                System.out.printf("Customer:"TotalSpent")); %s | Orders: %d | Total Spent: %s%n",
-////                        rs.getString("CustomerName"),
-////                        rs.getInt("OrderCount"),
-////                        rs.getBigDecimal(
+            Listings.print(conn, Listings.INVENTORY);
+        } catch (SQLException | IOException e) {
+            System.out.println("Error viewing summary: " + e.getMessage());
+        }
+    }
 
-                System.out.printf("ItemID: %s | Quantity: %d | StockDate: %s%n",
-                        rs.getInt("ItemID"),
-                        rs.getInt("Quantity"),
-                        rs.getDate("StockDate"));
+    public static void exportTable(Connection conn, Scanner scanner) {
+        try {
+            System.out.print("Enter table (items, orders, payments, order-lines, ...): ");
+            Listings.Listing<?> listing = Listings.byName(scanner.nextLine());
+            System.out.print("Enter file path: ");
+            Path file = Paths.get(scanner.nextLine().trim());
+            System.out.print("Enter format (csv, jsonl) [csv]: ");
+            String format = scanner.nextLine().trim();
+
+            long start = System.nanoTime();
+            int rows = Listings.export(conn, listing, RowWriter.Format.of(format.isEmpty() ? "csv" : format), file);
+            System.out.printf("Wrote %d rows to %s in %.1f s.%n", rows, file, (System.nanoTime() - start) / 1e9);
+        } catch (SQLException | IOException e) {
+            System.out.println("Export failed: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid input: " + e.getMessage());
+        }
+    }
+
+    public static final int PAGE_SIZE = 50;
+
+    public static void browseOrderLines(Connection conn, Scanner scanner) {
+        try (KeysetPager<Rows.OrderLine> pager = KeysetPager.orderLines(conn, PAGE_SIZE)) {
+            System.out.println("\n--- OrderLines ---");
+            while (pager.hasNext()) {
+                for (Rows.OrderLine ol : pager.next()) {
+                    System.out.println("OrderID: " + ol.orderId +
+                            ", ItemID: " + ol.itemId +
+                            ", Item: " + ol.itemName +
+                            ", Quantity: " + ol.quantity +
+                            ", Total: " + ol.total);
+                }
+                if (!nextPage(pager, scanner)) break;
+            }
+        } catch (SQLException | IllegalStateException e) {
+            System.out.println("Error browsing order lines: " + e.getMessage());
+        }
+    }
 
+    public static void browsePayments(Connection conn, Scanner scanner) {
+        try (KeysetPager<Rows.Payment> pager = KeysetPager.payments(conn, PAGE_SIZE)) {
+            System.out.println("\n--- Payments ---");
+            while (pager.hasNext()) {
+                for (Rows.Payment p : pager.next()) {
+                    System.out.println("ID: " + p.id +
+                            ", OrderID: " + p.orderId +
+                            ", Type: " + p.paymentType +
+                            ", Amount: " + p.amount +
+                            ", Date: " + p.paymentDate);
+                }
+                if (!nextPage(pager, scanner)) break;
             }
+        } catch (SQLException | IllegalStateException e) {
+            System.out.println("Error browsing payments: " + e.getMessage());
+        }
+    }
+
+    public static void viewOrderHistory(Scanner scanner) {
+        try {
+            System.out.print("Enter Customer ID: ");
+            int customerId = Integer.parseInt(scanner.nextLine().trim());
+            OrderHistory history = getOrderHistory();
+            OrderHistory.Page page = history.latest(customerId, PAGE_SIZE);
+            System.out.println("\n--- Orders of Customer " + customerId + " ---");
+            if (page.orders.isEmpty()) System.out.println("No orders.");
+            while (true) {
+                for (OrderHistory.Order o : page.orders) {
+                    System.out.println("Order " + o.id +
+                            ", Total: " + o.total +
+                            ", Paid: " + (o.paid == null ? "unpaid" : o.paid + " (" + o.paymentTypes + ")"));
+                    for (OrderHistory.Line l : o.lines) {
+                        System.out.println("    ItemID: " + l.itemId +
+                                ", Item: " + l.itemName +
+                                ", Quantity: " + l.quantity +
+                                ", Total: " + l.total);
+                    }
+                }
+                if (page.nextBefore == null) break;
+                System.out.print("-- Enter for older orders, q to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) break;
+                page = history.page(customerId, page.nextBefore, PAGE_SIZE);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid ID format.");
         } catch (SQLException e) {
-            System.out.println("Error viewing summary: " + e.getMessage());
+            System.out.println("Error reading order history: " + e.getMessage());
         }
     }
 
+    private static boolean nextPage(KeysetPager<?> pager, Scanner scanner) {
+        if (!pager.hasNext()) return false;
+        System.out.print("-- Enter for next page, q to stop: ");
+        return !scanner.nextLine().trim().equalsIgnoreCase("q");
+    }
+
     public static void handleViewMenu(Connection conn, Scanner scanner) {
         System.out.println("\n--- View Data ---");
         System.out.println("1. Items");
@@ -555,6 +924,10 @@ public class Main {
         System.out.println("8. Sales Summary (View)");
         System.out.println("9. Back");
         System.out.println("10. Inventory");
+        System.out.println("11. Browse Order Lines (paged)");
+        System.out.println("12. Browse Payments (paged)");
+        System.out.println("13. Export Table to File (CSV/JSON Lines)");
+        System.out.println("14. Customer Order History");
 
         System.out.print("Enter choice: ");
         String choice = scanner.nextLine();
@@ -567,9 +940,13 @@ public class Main {
             case "5" -> selectAllOrders(conn);
             case "6" -> selectAllPayments(conn);
             case "7" -> selectAllOrderLines(conn);
-            case "8" -> viewSalesSummary(conn);
+            case "8" -> viewSalesSummary(conn, scanner);
             case "9" -> {}
             case "10" -> viewInventoryEntry(conn);
+            case "11" -> browseOrderLines(conn, scanner);
+            case "12" -> browsePayments(conn, scanner);
+            case "13" -> exportTable(conn, scanner);
+            case "14" -> viewOrderHistory(scanner);
             default -> System.out.println("Invalid choice.");
         }
     }
@@ -0,0 +1,246 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * One customer's orders, newest first, with their lines, totals and payments, for the
+ * receipt-reprint and returns desks.
+ *
+ * A page is one query: the customer's next {@code limit} order IDs below the cursor come
+ * from idx_orders_customer (CustomerID, then ID), and their lines, item names and payment
+ * sums are joined to those IDs only, through idx_orderline_order and
+ * idx_payment_order_amount. Pages are read from the primary, or the customer's shard, so a
+ * page never shows less than the customer's last order.
+ *
+ * Pages are cached per customer in an LRU map of at most {@code maxCustomers} customers.
+ * {@link #invalidate} drops a customer's pages after an order or payment of theirs is
+ * written. A page read while the same customer is invalidated is returned but not cached.
+ */
+public class OrderHistory {
+
+    private static final QueryMetrics.Timer PAGE_TIMER = QueryMetrics.timer("OrderHistory.page");
+
+    static final String ORDERS_PAGE = """
+            SELECT o.ID, ol.ItemID, i.Name, ol.Quantity, ol.Total, p.Paid, p.PaymentTypes
+            FROM (SELECT ID FROM Orders
+                  WHERE CustomerID = ? AND ID < ?
+                  ORDER BY ID DESC
+                  LIMIT ?) o
+            LEFT JOIN OrderLine ol ON ol.OrderID = o.ID
+            LEFT JOIN Item i ON i.ID = ol.ItemID
+            LEFT JOIN LATERAL (SELECT SUM(Amount) AS Paid,
+                                      GROUP_CONCAT(DISTINCT paymentType ORDER BY paymentType) AS PaymentTypes
+                               FROM Payment
+                               WHERE orderID = o.ID) p ON TRUE
+            """;
+
+    /** Most orders one page may hold. */
+    public static final int MAX_LIMIT = 100;
+
+    /** Pages kept per customer; older cursors are read again. */
+    private static final int PAGES_PER_CUSTOMER = 8;
+
+    private static final int STAMP_STRIPES = 1024;
+
+    public static final class Line {
+        public final int itemId;
+        /** Null if the item was deleted. */
+        public final String itemName;
+        public final int quantity;
+        public final BigDecimal total;
+
+        Line(int itemId, String itemName, int quantity, BigDecimal total) {
+            this.itemId = itemId;
+            this.itemName = itemName;
+            this.quantity = quantity;
+            this.total = total;
+        }
+    }
+
+    public static final class Order {
+        public final int id;
+        public final List<Line> lines;
+        /** Sum of the line totals; zero if the order has no lines. */
+        public final BigDecimal total;
+        /** Sum of the payments, or null if the order is unpaid. */
+        public final BigDecimal paid;
+        /** Comma-separated payment types, or null if the order is unpaid. */
+        public final String paymentTypes;
+
+        Order(int id, List<Line> lines, BigDecimal paid, String paymentTypes) {
+            this.id = id;
+            this.lines = lines;
+            this.paid = paid;
+            this.paymentTypes = paymentTypes;
+            BigDecimal sum = BigDecimal.ZERO;
+            for (Line line : lines) sum = sum.add(line.total);
+            this.total = sum;
+        }
+    }
+
+    public static final class Page {
+        public final int customerId;
+        public final List<Order> orders;
+        /** Cursor for the next page, or null if this is the last one. */
+        public final Integer nextBefore;
+
+        Page(int customerId, List<Order> orders, Integer nextBefore) {
+            this.customerId = customerId;
+            this.orders = orders;
+            this.nextBefore = nextBefore;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection borrow(int customerId) throws SQLException;
+    }
+
+    private final ConnectionSource connections;
+    private final int maxCustomers;
+
+    /** Customer ID to that customer's cached pages, keyed by cursor and limit; least recently used first. */
+    private final LinkedHashMap<Integer, Map<Long, Page>> cache;
+
+    /** Bumped by {@link #invalidate}; a read whose customer's stripe moved is not cached. */
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param shards the customers' shards, or null if orders live in {@code primary}
+     * @param maxCustomers customers whose pages are cached; 0 disables the cache
+     */
+    public OrderHistory(ConnectionPool primary, ShardRouter shards, int maxCustomers) {
+        if (maxCustomers < 0) throw new IllegalArgumentException("Cache size must not be negative: " + maxCustomers);
+        this.connections = shards == null
+                ? customerId -> primary.borrow()
+                : customerId -> shards.forCustomer(customerId).borrow();
+        this.maxCustomers = maxCustomers;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Map<Long, Page>> eldest) {
+                if (size() <= OrderHistory.this.maxCustomers) return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /** The customer's latest orders. */
+    public Page latest(int customerId, int limit) throws SQLException {
+        return page(customerId, Integer.MAX_VALUE, limit);
+    }
+
+    /**
+     * The customer's {@code limit} newest orders with IDs below {@code before}.
+     *
+     * @param before {@link Page#nextBefore} of the previous page, or Integer.MAX_VALUE for the first
+     */
+    public Page page(int customerId, int before, int limit) throws SQLException {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LIMIT + ": " + limit);
+        }
+        long key = ((long) before << 8) | limit;
+        synchronized (cache) {
+            Map<Long, Page> pages = cache.get(customerId);
+            Page page = pages == null ? null : pages.get(key);
+            if (page != null) {
+                hits.incrementAndGet();
+                return page;
+            }
+        }
+        misses.incrementAndGet();
+
+        int stripe = Math.floorMod(customerId, STAMP_STRIPES);
+        long stamp = stamps.get(stripe);
+        Page page = read(customerId, before, limit);
+        if (maxCustomers > 0) {
+            synchronized (cache) {
+                if (stamps.get(stripe) == stamp) {
+                    Map<Long, Page> pages = cache.computeIfAbsent(customerId, id -> new LinkedHashMap<>(4, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<Long, Page> eldest) {
+                            return size() > PAGES_PER_CUSTOMER;
+                        }
+                    });
+                    pages.put(key, page);
+                }
+            }
+        }
+        return page;
+    }
+
+    private Page read(int customerId, int before, int limit) throws SQLException {
+        long start = System.nanoTime();
+        // Newest order first; lines in item order
+        TreeMap<Integer, List<Line>> lines = new TreeMap<>(Comparator.reverseOrder());
+        Map<Integer, BigDecimal> paid = new LinkedHashMap<>();
+        Map<Integer, String> paymentTypes = new LinkedHashMap<>();
+        int rows = 0;
+        try (Connection conn = connections.borrow(customerId);
+             PreparedStatement ps = conn.prepareStatement(ORDERS_PAGE)) {
+            ps.setInt(1, customerId);
+            ps.setInt(2, before);
+            ps.setInt(3, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    int orderId = rs.getInt(1);
+                    List<Line> orderLines = lines.computeIfAbsent(orderId, id -> new ArrayList<>());
+                    int itemId = rs.getInt(2);
+                    if (!rs.wasNull()) {
+                        orderLines.add(new Line(itemId, rs.getString(3), rs.getInt(4), rs.getBigDecimal(5)));
+                    }
+                    paid.put(orderId, rs.getBigDecimal(6));
+                    paymentTypes.put(orderId, rs.getString(7));
+                }
+            }
+            PAGE_TIMER.record(start, rows);
+        } catch (SQLException e) {
+            PAGE_TIMER.failed(start, e);
+            throw e;
+        }
+
+        List<Order> orders = new ArrayList<>(lines.size());
+        for (Map.Entry<Integer, List<Line>> e : lines.entrySet()) {
+            List<Line> orderLines = e.getValue();
+            orderLines.sort(Comparator.comparingInt(l -> l.itemId));
+            orders.add(new Order(e.getKey(), List.copyOf(orderLines), paid.get(e.getKey()), paymentTypes.get(e.getKey())));
+        }
+        Integer nextBefore = orders.size() == limit ? orders.get(orders.size() - 1).id : null;
+        return new Page(customerId, List.copyOf(orders), nextBefore);
+    }
+
+    /** Drops the customer's cached pages; call after one of their orders or payments is committed. */
+    public void invalidate(int customerId) {
+        stamps.incrementAndGet(Math.floorMod(customerId, STAMP_STRIPES));
+        synchronized (cache) {
+            if (cache.remove(customerId) != null) invalidations.incrementAndGet();
+        }
+    }
+
+    public String describe() {
+        long h = hits.get();
+        long m = misses.get();
+        int cached;
+        synchronized (cache) {
+            cached = cache.size();
+        }
+        return String.format("Order history: %d/%d customers cached | hits %d | misses %d (%.1f%% hit) | evictions %d | invalidations %d",
+                cached, maxCustomers, h, m, h + m == 0 ? 0.0 : 100.0 * h / (h + m), evictions.get(), invalidations.get());
+    }
+}
@@ -0,0 +1,278 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Programmatic order placement. Safe to call from many threads: every call leases
+ * its own connection from the pool and runs in its own transaction.
+ *
+ * An order is written with one Orders INSERT, one price SELECT for all items,
+ * one batched OrderLine INSERT and one UpdateInventoryOnSale call per item,
+ * all through {@link DataAccess}.
+ * Transactions that fail with a deadlock or lock wait timeout are retried with
+ * exponential backoff.
+ *
+ * With a {@link GroupCommitter}, orders placed without a caller-supplied connection are
+ * queued and committed together with other concurrent orders.
+ */
+public class OrderService {
+
+    // MySQL error codes for ER_LOCK_DEADLOCK and ER_LOCK_WAIT_TIMEOUT
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+
+    /** Longest wait for a group-committed order; as long as closing the committer may take. */
+    private static final long GROUP_COMMIT_TIMEOUT_SECONDS = 30;
+
+    private static final QueryMetrics.Timer PLACE_ORDER_TIMER = QueryMetrics.timer("OrderService.placeOrder");
+
+    private final ConnectionPool pool;
+    final int maxAttempts;
+    private final long baseBackoffMs;
+    private final InventoryLedger ledger;
+    private final SalesSummaryStore salesSummary;
+    private final GroupCommitter groupCommitter;
+
+    /** One requested line of an order. */
+    public static final class Line {
+        private final int itemId;
+        private final int quantity;
+
+        public Line(int itemId, int quantity) {
+            if (quantity <= 0) throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+            this.itemId = itemId;
+            this.quantity = quantity;
+        }
+
+        public int getItemId() {
+            return itemId;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+    }
+
+    public OrderService(ConnectionPool pool) {
+        this(pool, null, null);
+    }
+
+    /**
+     * @param ledger       if not null, stock is reserved in memory and journaled for write-behind
+     *                     instead of calling UpdateInventoryOnSale
+     * @param salesSummary if not null, each order is added to its customer's totals in the same transaction
+     */
+    public OrderService(ConnectionPool pool, InventoryLedger ledger, SalesSummaryStore salesSummary) {
+        this(pool, ledger, salesSummary, 5, 20);
+    }
+
+    /**
+     * @param groupCommitter if not null, {@link #placeOrder(int, List)} commits through it; it must
+     *                       be built with the same ledger and sales summary
+     */
+    public OrderService(ConnectionPool pool, InventoryLedger ledger, SalesSummaryStore salesSummary,
+                        GroupCommitter groupCommitter) {
+        this(pool, ledger, salesSummary, groupCommitter, 5, 20);
+    }
+
+    public OrderService(ConnectionPool pool, InventoryLedger ledger, SalesSummaryStore salesSummary,
+                        int maxAttempts, long baseBackoffMs) {
+        this(pool, ledger, salesSummary, null, maxAttempts, baseBackoffMs);
+    }
+
+    public OrderService(ConnectionPool pool, InventoryLedger ledger, SalesSummaryStore salesSummary,
+                        GroupCommitter groupCommitter, int maxAttempts, long baseBackoffMs) {
+        this.pool = pool;
+        this.ledger = ledger;
+        this.salesSummary = salesSummary;
+        this.groupCommitter = groupCommitter;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMs = baseBackoffMs;
+    }
+
+    /**
+     * Places an order on a leased connection.
+     *
+     * @return the generated order ID
+     * @throws SQLException if the order could not be placed; nothing is committed in that case
+     */
+    public int placeOrder(int customerId, List<Line> lines) throws SQLException {
+        if (groupCommitter != null) {
+            return placeOrderGrouped(customerId, lines);
+        }
+        try (Connection conn = pool.borrow()) {
+            return placeOrder(conn, customerId, lines);
+        }
+    }
+
+    private int placeOrderGrouped(int customerId, List<Line> lines) throws SQLException {
+        Map<Integer, Integer> quantities = mergeLines(lines);
+        long start = System.nanoTime();
+
+        if (ledger != null) {
+            int shortItem = ledger.reserve(quantities);
+            if (shortItem != -1) {
+                PLACE_ORDER_TIMER.failed(start);
+                throw new SQLException("Insufficient inventory for item " + shortItem + ".");
+            }
+        }
+
+        boolean placed = false;
+        try {
+            int orderId = groupCommitter.submit(customerId, quantities).get(GROUP_COMMIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            placed = true;
+            PLACE_ORDER_TIMER.record(start, quantities.size());
+            return orderId;
+        } catch (ExecutionException e) {
+            PLACE_ORDER_TIMER.failed(start);
+            if (e.getCause() instanceof SQLException cause) throw cause;
+            throw new SQLException("Order failed: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            // The order may still commit; keep its reservation so the ledger does not oversell
+            placed = true;
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the order to commit.", e);
+        } catch (TimeoutException e) {
+            // Same: it may commit later
+            placed = true;
+            PLACE_ORDER_TIMER.failed(start);
+            throw new SQLException("Order was not committed within " + GROUP_COMMIT_TIMEOUT_SECONDS + " s; it may still be.", e);
+        } finally {
+            if (ledger != null && !placed) ledger.release(quantities);
+        }
+    }
+
+    /**
+     * Places an order on the given connection, retrying on deadlock and lock wait timeout.
+     */
+    public int placeOrder(Connection conn, int customerId, List<Line> lines) throws SQLException {
+        Map<Integer, Integer> quantities = mergeLines(lines);
+        long start = System.nanoTime();
+
+        if (ledger != null) {
+            int shortItem = ledger.reserve(quantities);
+            if (shortItem != -1) {
+                PLACE_ORDER_TIMER.failed(start);
+                throw new SQLException("Insufficient inventory for item " + shortItem + ".");
+            }
+        }
+
+        boolean placed = false;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    int orderId = placeOrderOnce(conn, customerId, quantities);
+                    placed = true;
+                    PLACE_ORDER_TIMER.record(start, quantities.size());
+                    return orderId;
+                } catch (SQLException e) {
+                    if (!isRetryable(e) || attempt >= maxAttempts) {
+                        PLACE_ORDER_TIMER.failed(start);
+                        throw e;
+                    }
+                    backoff(attempt);
+                }
+            }
+        } finally {
+            if (ledger != null && !placed) ledger.release(quantities);
+        }
+    }
+
+    /**
+     * Merges duplicate ItemIDs (OrderLine's key is (ItemID, OrderID)) and sorts by ItemID,
+     * so concurrent orders lock InventoryEntry rows in the same order.
+     */
+    static Map<Integer, Integer> mergeLines(List<Line> lines) {
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("An order needs at least one line.");
+        }
+        Map<Integer, Integer> quantities = new TreeMap<>();
+        for (Line line : lines) {
+            quantities.merge(line.getItemId(), line.getQuantity(), Integer::sum);
+        }
+        return Collections.unmodifiableMap(quantities);
+    }
+
+    private int placeOrderOnce(Connection conn, int customerId, Map<Integer, Integer> quantities) throws SQLException {
+        DataAccess db = DataAccess.on(conn);
+        conn.setAutoCommit(false); // Start Transaction
+        try {
+            int orderId = db.insertOrder(customerId);
+
+            Map<Integer, BigDecimal> prices = db.itemPrices(quantities.keySet());
+            for (int itemId : quantities.keySet()) {
+                if (!prices.containsKey(itemId)) throw new SQLException("Item not found: " + itemId);
+            }
+
+            db.insertOrderLines(orderId, quantities, prices);
+
+            if (salesSummary != null) {
+                salesSummary.recordOrder(conn, customerId, orderTotal(quantities, prices));
+            }
+
+            if (ledger != null) {
+                // Stock is already reserved; the flusher applies it to InventoryEntry later
+                ledger.journal(conn, orderId, quantities);
+            } else {
+                for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+                    if (!db.updateInventoryOnSale(e.getKey(), e.getValue())) {
+                        throw new SQLException("Insufficient inventory for item " + e.getKey() + ".");
+                    }
+                }
+            }
+
+            conn.commit(); // Commit Transaction
+            QueryMetrics.commit();
+            return orderId;
+
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback(); // Rollback on error
+            QueryMetrics.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true); // Reset
+        }
+    }
+
+    static BigDecimal orderTotal(Map<Integer, Integer> quantities, Map<Integer, BigDecimal> prices) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+            total = total.add(prices.get(e.getKey()).multiply(new BigDecimal(e.getValue())));
+        }
+        return total;
+    }
+
+    /**
+     * True for MySQL deadlocks and lock wait timeouts, which succeed when simply re-run.
+     */
+    static boolean isRetryable(SQLException e) {
+        for (SQLException cur = e; cur != null; cur = cur.getNextException()) {
+            int code = cur.getErrorCode();
+            if (code == ER_LOCK_DEADLOCK || code == ER_LOCK_WAIT_TIMEOUT || "40001".equals(cur.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void backoff(int attempt) throws SQLException {
+        // Exponential backoff with full jitter so retrying checkouts don't collide again
+        long cap = baseBackoffMs << Math.min(attempt - 1, 10);
+        long sleepMs = ThreadLocalRandom.current().nextLong(cap + 1);
+        try {
+            Thread.sleep(sleepMs);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while retrying order.", ie);
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares what every order was charged (the sum of its Payment amounts) with what it
+ * costs (the sum of its OrderLine totals).
+ *
+ * Orders are split into ranges of {@code chunkSize} IDs. Each range is one query that
+ * aggregates OrderLine and Payment over that ID range only, through their OrderID indexes,
+ * and returns just the orders that disagree, so no query reads a whole table and the
+ * client never sees the orders that match. Ranges run on {@code threads} connections at
+ * once, from a replica when one is configured, and their mismatches are written in order
+ * ID order as the ranges complete. With {@link ShardRouter} shards, each shard is checked
+ * in turn.
+ *
+ * Run it after {@link PaymentWriter} has drained: payments still queued show up as unpaid.
+ * Exits with status 1 if any order disagrees.
+ *
+ * Usage: PaymentReconciler [chunkSize] [threads] [file.csv]
+ */
+public class PaymentReconciler {
+
+    private static final QueryMetrics.Timer CHUNK_TIMER = QueryMetrics.timer("PaymentReconciler.chunk");
+
+    static final String ORDER_ID_RANGE = "SELECT MIN(ID), MAX(ID) FROM Orders";
+
+    static final String MISMATCHES = """
+            SELECT o.ID, l.Total, p.Paid
+            FROM Orders o
+            LEFT JOIN (SELECT OrderID, SUM(Total) AS Total FROM OrderLine
+                       WHERE OrderID BETWEEN ? AND ? GROUP BY OrderID) l ON l.OrderID = o.ID
+            LEFT JOIN (SELECT orderID, SUM(Amount) AS Paid FROM Payment
+                       WHERE orderID BETWEEN ? AND ? GROUP BY orderID) p ON p.orderID = o.ID
+            WHERE o.ID BETWEEN ? AND ?
+            AND NOT (l.Total <=> p.Paid)
+            ORDER BY o.ID
+            """;
+
+    /** An order whose payments do not add up to its lines. */
+    public static final class Mismatch {
+        public final int orderId;
+        /** Null if the order has no lines. */
+        public final BigDecimal total;
+        /** Null if the order has no payments. */
+        public final BigDecimal paid;
+
+        Mismatch(int orderId, BigDecimal total, BigDecimal paid) {
+            this.orderId = orderId;
+            this.total = total;
+            this.paid = paid;
+        }
+
+        public String status() {
+            if (paid == null) return "unpaid";
+            if (total == null) return "no lines";
+            return paid.compareTo(total) < 0 ? "underpaid" : "overpaid";
+        }
+
+        /** Amount still owed; negative if overpaid. */
+        public BigDecimal difference() {
+            return (total == null ? BigDecimal.ZERO : total).subtract(paid == null ? BigDecimal.ZERO : paid);
+        }
+    }
+
+    /** Totals of one run. */
+    public static final class Result {
+        public final int chunks;
+        public final int mismatches;
+        public final BigDecimal outstanding;
+
+        Result(int chunks, int mismatches, BigDecimal outstanding) {
+            this.chunks = chunks;
+            this.mismatches = mismatches;
+            this.outstanding = outstanding;
+        }
+    }
+
+    /** Columns of the rows {@link #reconcile} writes. */
+    public static final String[] COLUMNS = {"OrderID", "Status", "Lines Total", "Paid", "Difference"};
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection borrow() throws SQLException;
+    }
+
+    private final ConnectionSource connections;
+    private final int chunkSize;
+    private final int threads;
+
+    /** Reconciles the orders of the primary, reading from a replica if one is healthy. */
+    public PaymentReconciler(ReadRouter router, int chunkSize, int threads) {
+        this(() -> router.borrowRead(null), chunkSize, threads);
+    }
+
+    /** Reconciles the orders of one database, such as a shard. */
+    public PaymentReconciler(ConnectionPool pool, int chunkSize, int threads) {
+        this(pool::borrow, chunkSize, threads);
+    }
+
+    private PaymentReconciler(ConnectionSource connections, int chunkSize, int threads) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        if (threads < 1) throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        this.connections = connections;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Checks every order and writes one row per mismatch to {@code out}, which the caller
+     * has begun with {@link #COLUMNS} and flushes or closes.
+     */
+    public Result reconcile(RowWriter out) throws SQLException, IOException {
+        int minId;
+        int maxId;
+        try (Connection conn = connections.borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(ORDER_ID_RANGE)) {
+            rs.next();
+            minId = rs.getInt(1);
+            maxId = rs.getInt(2);
+            if (rs.wasNull()) return new Result(0, 0, BigDecimal.ZERO);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "payment-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        int chunks = 0;
+        int mismatches = 0;
+        BigDecimal outstanding = BigDecimal.ZERO;
+        try {
+            // Keep a few ranges in flight per thread; write each one's rows as soon as it and all before it are done
+            Deque<Future<List<Mismatch>>> inFlight = new ArrayDeque<>();
+            long from = minId;
+            while (from <= maxId || !inFlight.isEmpty()) {
+                while (from <= maxId && inFlight.size() < threads * 2) {
+                    int lo = (int) from;
+                    int hi = (int) Math.min(maxId, from + chunkSize - 1);
+                    inFlight.add(executor.submit(() -> chunk(lo, hi)));
+                    from = (long) hi + 1;
+                }
+                for (Mismatch m : await(inFlight.poll())) {
+                    out.row().value(m.orderId).value(m.status()).value(m.total).value(m.paid).value(m.difference()).end();
+                    mismatches++;
+                    outstanding = outstanding.add(m.difference());
+                }
+                chunks++;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Result(chunks, mismatches, outstanding);
+    }
+
+    private static List<Mismatch> await(Future<List<Mismatch>> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while reconciling payments.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException s) throw s;
+            throw new SQLException("Reconciliation failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /** The mismatched orders with IDs from {@code lo} to {@code hi}. */
+    List<Mismatch> chunk(int lo, int hi) throws SQLException {
+        long start = System.nanoTime();
+        List<Mismatch> found = new ArrayList<>();
+        try (Connection conn = connections.borrow();
+             PreparedStatement ps = Main.prepareStreaming(conn, MISMATCHES)) {
+            for (int i = 0; i < 3; i++) {
+                ps.setInt(2 * i + 1, lo);
+                ps.setInt(2 * i + 2, hi);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) found.add(new Mismatch(rs.getInt(1), rs.getBigDecimal(2), rs.getBigDecimal(3)));
+            }
+            CHUNK_TIMER.record(start, found.size());
+            return found;
+        } catch (SQLException e) {
+            CHUNK_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    public static void main(String[] args) {
+        boolean clean = false;
+        try {
+            int chunkSize = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+            // With shards, each shard's orders are checked in turn
+            List<PaymentReconciler> reconcilers = new ArrayList<>();
+            ShardRouter shards = Main.getShardRouter();
+            if (shards == null) {
+                reconcilers.add(new PaymentReconciler(Main.getReadRouter(), chunkSize, threads));
+            } else {
+                for (int k = 0; k < shards.size(); k++) reconcilers.add(new PaymentReconciler(shards.pool(k), chunkSize, threads));
+            }
+
+            long start = System.nanoTime();
+            int chunks = 0;
+            int mismatches = 0;
+            BigDecimal outstanding = BigDecimal.ZERO;
+            try (RowWriter out = args.length > 2
+                    ? RowWriter.of(RowWriter.Format.CSV, new OutputStreamWriter(Files.newOutputStream(Paths.get(args[2])), StandardCharsets.UTF_8))
+                    : RowWriter.console(RowWriter.Format.TEXT)) {
+                out.begin(COLUMNS);
+                for (PaymentReconciler reconciler : reconcilers) {
+                    Result result = reconciler.reconcile(out);
+                    chunks += result.chunks;
+                    mismatches += result.mismatches;
+                    outstanding = outstanding.add(result.outstanding);
+                }
+            }
+            System.out.printf("Checked %d chunk(s) in %.1f s: %d order(s) disagree, %s outstanding.%n",
+                    chunks, (System.nanoTime() - start) / 1e9, mismatches, outstanding);
+            clean = mismatches == 0;
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: PaymentReconciler [chunkSize] [threads] [file.csv]");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } catch (SQLException | IOException e) {
+            System.err.println("Reconciliation failed: " + e.getMessage());
+        } finally {
+            Main.closeConnection();
+        }
+        System.exit(clean ? 0 : 1);
+    }
+}
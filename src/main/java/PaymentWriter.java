@@ -0,0 +1,287 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * Writes Payment rows in the background so checkout does not wait for them.
+ *
+ * Checkout {@link #submit}s a payment once its order is committed and returns at once. A
+ * single writer thread takes up to {@code batchSize} queued payments, or whatever arrived
+ * within {@code flushIntervalMs}, and inserts them as one JDBC batch in one transaction.
+ * A payment without an amount is charged its order's total, summed from OrderLine in one
+ * query per batch.
+ *
+ * The queue is bounded. When it is full the caller waits up to {@code offerTimeoutMs} and
+ * then writes its payment itself, so a stalled database slows checkout down instead of
+ * growing the heap or losing payments. Deadlocks and lock wait timeouts retry the batch;
+ * any other error writes the batch row by row so one bad payment (an order that no longer
+ * exists) does not take the others with it. Payments that still fail are logged, and
+ * {@link PaymentReconciler} reports their orders as unpaid.
+ *
+ * Payments still queued when the process dies are lost the same way; {@link #close}
+ * writes everything queued before returning. The {@link #onWritten} listener hears the
+ * customer of each payment once it is committed.
+ */
+public class PaymentWriter implements AutoCloseable {
+
+    private static final QueryMetrics.Timer BATCH_TIMER = QueryMetrics.timer("PaymentWriter.batch");
+    private static final QueryMetrics.Timer INLINE_TIMER = QueryMetrics.timer("PaymentWriter.inline");
+
+    static final String INSERT_PAYMENT = "INSERT INTO Payment (orderID, paymentType, Amount, paymentDate) VALUES (?, ?, ?, ?)";
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    /** One payment to write. */
+    public static final class Payment {
+        public final int customerId;
+        public final int orderId;
+        public final String paymentType;
+        /** Null to charge the order's total. */
+        public final BigDecimal amount;
+        public final LocalDate paymentDate;
+
+        public Payment(int customerId, int orderId, String paymentType, BigDecimal amount, LocalDate paymentDate) {
+            this.customerId = customerId;
+            this.orderId = orderId;
+            this.paymentType = paymentType;
+            this.amount = amount;
+            this.paymentDate = paymentDate;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final BlockingQueue<Payment> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile IntConsumer onWritten = customerId -> { };
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong writtenInline = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public PaymentWriter(ConnectionPool pool, int capacity, int batchSize, long flushIntervalMs, long offerTimeoutMs) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        this.pool = pool;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.writer = new Thread(this::run, "payment-writer");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    /** Called with the customer ID of every payment after it is committed, on the writing thread. */
+    public void onWritten(IntConsumer listener) {
+        this.onWritten = listener;
+    }
+
+    /**
+     * Queues a payment for an order that is already committed. Returns as soon as it is
+     * queued; only if the queue stays full is the payment written on the calling thread.
+     *
+     * @param amount null to charge the order's total
+     * @throws SQLException if the payment had to be written inline and that failed
+     */
+    public void submit(int customerId, int orderId, String paymentType, BigDecimal amount) throws SQLException {
+        Payment payment = new Payment(customerId, orderId, paymentType, amount, LocalDate.now());
+        try {
+            if (running && queue.offer(payment, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                queued.incrementAndGet();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeInline(payment);
+    }
+
+    private void writeInline(Payment payment) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            write(List.of(payment));
+            INLINE_TIMER.record(start, 1);
+            writtenInline.incrementAndGet();
+        } catch (SQLException e) {
+            INLINE_TIMER.failed(start, e);
+            failed.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private void run() {
+        List<Payment> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Payment first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    // Take whatever is already waiting before blocking again
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize) break;
+                    long remaining = deadline - System.nanoTime();
+                    Payment next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                running = false;
+                if (!batch.isEmpty()) flushOneByOne(batch);
+            } catch (RuntimeException e) {
+                failed.addAndGet(batch.size());
+                System.err.println("Payment writer dropped " + batch.size() + " payment(s): " + e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Payment> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                write(batch);
+                BATCH_TIMER.record(start, batch.size());
+                written.addAndGet(batch.size());
+                return;
+            } catch (SQLException e) {
+                BATCH_TIMER.failed(start, e);
+                if (OrderService.isRetryable(e) && attempt < MAX_ATTEMPTS) {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(1, 20L << Math.min(attempt, 10)));
+                    continue;
+                }
+                if (batch.size() == 1) {
+                    fail(batch.get(0), e);
+                    return;
+                }
+                flushOneByOne(batch);
+                return;
+            }
+        }
+    }
+
+    private void flushOneByOne(List<Payment> batch) {
+        for (Payment payment : batch) {
+            long start = System.nanoTime();
+            try {
+                write(List.of(payment));
+                BATCH_TIMER.record(start, 1);
+                written.incrementAndGet();
+            } catch (SQLException e) {
+                BATCH_TIMER.failed(start, e);
+                fail(payment, e);
+            }
+        }
+    }
+
+    private void fail(Payment payment, SQLException e) {
+        failed.incrementAndGet();
+        System.err.println("Payment for order " + payment.orderId + " (" + payment.paymentType + ", "
+                + (payment.amount == null ? "order total" : payment.amount) + ") could not be written: " + e.getMessage());
+    }
+
+    /** Inserts the payments in one transaction. */
+    private void write(List<Payment> payments) throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            conn.setAutoCommit(false);
+            try {
+                Map<Integer, BigDecimal> totals = orderTotals(conn, payments);
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_PAYMENT)) {
+                    for (Payment p : payments) {
+                        BigDecimal amount = p.amount != null ? p.amount : totals.get(p.orderId);
+                        if (amount == null) throw new SQLException("Order " + p.orderId + " has no lines to charge.");
+                        ps.setInt(1, p.orderId);
+                        ps.setString(2, p.paymentType);
+                        ps.setBigDecimal(3, amount);
+                        ps.setDate(4, Date.valueOf(p.paymentDate));
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                conn.commit();
+                QueryMetrics.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                QueryMetrics.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        IntConsumer listener = onWritten;
+        for (Payment p : payments) listener.accept(p.customerId);
+    }
+
+    /** OrderLine totals of the orders whose payments carry no amount. */
+    private static Map<Integer, BigDecimal> orderTotals(Connection conn, List<Payment> payments) throws SQLException {
+        TreeSet<Integer> orderIds = new TreeSet<>();
+        for (Payment p : payments) {
+            if (p.amount == null) orderIds.add(p.orderId);
+        }
+        Map<Integer, BigDecimal> totals = new HashMap<>();
+        if (orderIds.isEmpty()) return totals;
+
+        String sql = "SELECT OrderID, SUM(Total) FROM OrderLine WHERE OrderID IN ("
+                + String.join(", ", Collections.nCopies(orderIds.size(), "?")) + ") GROUP BY OrderID";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            for (int id : orderIds) ps.setInt(i++, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) totals.put(rs.getInt(1), rs.getBigDecimal(2));
+            }
+        }
+        return totals;
+    }
+
+    /** Payments waiting to be written. */
+    public int backlog() {
+        return queue.size();
+    }
+
+    public String describe() {
+        return String.format("Payments: queued %d | written %d | written inline (queue full) %d | failed %d | waiting %d",
+                queued.get(), written.get(), writtenInline.get(), failed.get(), queue.size());
+    }
+
+    /** Stops accepting payments and writes the queued ones. */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Payment> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        if (!leftover.isEmpty()) flushOneByOne(leftover);
+    }
+}
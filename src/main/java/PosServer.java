@@ -0,0 +1,552 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * HTTP/JSON front end for POS terminals, on the JDK's built-in HTTP server.
+ *
+ * Exposes the menu operations:
+ * <pre>
+ * GET    /items, /categories, /discounts, /customers, /orders, /payments,
+ *        /order-lines, /sales-summary, /inventory       JSON array, streamed
+ * GET    /sales-summary?limit=   only the customers who spent most, highest first
+ * POST   /items          {"name", "price", "categoryId", "discountId"}
+ * PUT    /items/{id}     {"name", "price"}
+ * DELETE /items/{id}
+ * POST   /orders         {"customerId", "lines": [{"itemId", "quantity"}, ...],
+ *                         "payment": {"type", "amount"}}   payment and its amount optional
+ * GET    /customers/{id}/orders?limit=&amp;before=   newest first, with lines and payments;
+ *                         "nextBefore" is the cursor for older orders
+ * GET    /price?itemId=&amp;quantity=
+ * GET    /search?q=&amp;limit=   items by name, best matches first
+ * GET    /metrics        QueryMetrics snapshot as text
+ * </pre>
+ *
+ * Listings are read through {@link ReadRouter}, so they may be served by a replica; after
+ * a terminal writes, its own listings read from the primary for a few seconds.
+ *
+ * Each request runs on its own virtual thread when the JVM provides them, and on a bounded
+ * thread pool otherwise. No more requests than the connection pool has connections run at
+ * once; the rest wait up to the admission timeout and then get 503. Without virtual
+ * threads, as many requests again may wait; any beyond that get 503 without waiting.
+ */
+public class PosServer implements HttpHandler, AutoCloseable {
+
+    private static final int MAX_BODY_BYTES = 1 << 20;
+
+    /** Set while a request the fallback pool had no thread for is answered. */
+    private static final ThreadLocal<Boolean> SHED = new ThreadLocal<>();
+
+    @FunctionalInterface
+    private interface Listing<T> {
+        int list(Connection conn, Consumer<T> sink) throws SQLException;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore admission;
+    private final int maxConcurrent;
+    private final long admissionTimeoutMs;
+
+    public PosServer(InetSocketAddress address, int maxConcurrent, long admissionTimeoutMs) throws IOException {
+        this.admission = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.admissionTimeoutMs = admissionTimeoutMs;
+        this.executor = newRequestExecutor(maxConcurrent);
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext("/", this);
+        this.server.setExecutor(executor);
+    }
+
+    /**
+     * Reads {@code server.host}, {@code server.port}, {@code server.maxConcurrent} (default
+     * db.pool.maxSize) and {@code server.admissionTimeoutMs} (default db.pool.borrowTimeoutMs).
+     */
+    public static PosServer fromProperties(Properties props) throws IOException {
+        String host = props.getProperty("server.host", "127.0.0.1");
+        int port = Integer.parseInt(props.getProperty("server.port", "8080"));
+        int maxConcurrent = Integer.parseInt(props.getProperty("server.maxConcurrent",
+                props.getProperty("db.pool.maxSize", "10")));
+        long admissionTimeoutMs = Long.parseLong(props.getProperty("server.admissionTimeoutMs",
+                props.getProperty("db.pool.borrowTimeoutMs", "5000")));
+        return new PosServer(new InetSocketAddress(host, port), maxConcurrent, admissionTimeoutMs);
+    }
+
+    /**
+     * One virtual thread per request where available (Java 21+), looked up reflectively so
+     * the application still builds and runs on Java 17.
+     *
+     * Otherwise up to {@code 2 * maxConcurrent} platform threads and no queue: the threads
+     * past maxConcurrent wait for admission, so they can time out with 503. A request
+     * arriving when every thread is taken is handed to a single shedding thread, which
+     * answers 503 without admitting it, instead of queuing it behind the others.
+     */
+    static ExecutorService newRequestExecutor(int maxConcurrent) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            ThreadPoolExecutor shedder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), daemonThreads("pos-server-shed-"));
+            return new ThreadPoolExecutor(maxConcurrent, 2 * maxConcurrent, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), daemonThreads("pos-server-"), (request, pool) -> {
+                if (pool.isShutdown()) {
+                    shedder.shutdown();
+                    return;
+                }
+                shedder.execute(() -> {
+                    SHED.set(Boolean.TRUE);
+                    try {
+                        request.run();
+                    } finally {
+                        SHED.remove();
+                    }
+                });
+            }) {
+                @Override
+                protected void terminated() {
+                    shedder.shutdown();
+                }
+            };
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public void start() {
+        server.start();
+        InetSocketAddress address = server.getAddress();
+        System.out.println("POS server listening on http://" + address.getHostString() + ":" + address.getPort() + "/");
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /** Requests admitted and not yet answered. */
+    int inFlight() {
+        return maxConcurrent - admission.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (SHED.get() != null || !admission.tryAcquire(admissionTimeoutMs, TimeUnit.MILLISECONDS)) {
+                sendError(exchange, 503, "Server busy, try again.");
+                return;
+            }
+            try {
+                route(exchange);
+            } finally {
+                admission.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+        String resource = path[0];
+        String id = path.length > 1 ? path[1] : null;
+        String sub = path.length > 2 ? "/" + String.join("/", Arrays.copyOfRange(path, 2, path.length)) : "";
+
+        try {
+            switch (method + " " + resource + (id == null ? "" : "/{id}") + sub) {
+                case "GET items" -> PosServer.<Rows.Item>list(exchange, Listings::items, PosServer::toJson);
+                case "GET categories" -> PosServer.<Rows.Category>list(exchange, Listings::categories, PosServer::toJson);
+                case "GET discounts" -> PosServer.<Rows.Discount>list(exchange, Listings::discounts, PosServer::toJson);
+                case "GET customers" -> PosServer.<Rows.Customer>list(exchange, Listings::customers, PosServer::toJson);
+                case "GET orders" -> PosServer.<Rows.Order>list(exchange, Listings::orders, PosServer::toJson);
+                case "GET payments" -> PosServer.<Rows.Payment>list(exchange, Listings::payments, PosServer::toJson);
+                case "GET order-lines" -> PosServer.<Rows.OrderLine>list(exchange, Listings::orderLines, PosServer::toJson);
+                case "GET sales-summary" -> salesSummary(exchange);
+                case "GET inventory" -> PosServer.<Rows.InventoryEntry>list(exchange, (conn, sink) -> DataAccess.on(conn).listInventory(sink), PosServer::toJson);
+                case "POST items" -> insertItem(exchange);
+                case "PUT items/{id}" -> updateItem(exchange, Integer.parseInt(id));
+                case "DELETE items/{id}" -> deleteItem(exchange, Integer.parseInt(id));
+                case "POST orders" -> placeOrder(exchange);
+                case "GET customers/{id}/orders" -> orderHistory(exchange, Integer.parseInt(id));
+                case "GET price" -> checkPrice(exchange);
+                case "GET search" -> searchItems(exchange);
+                case "GET metrics" -> send(exchange, 200, "text/plain", QueryMetrics.snapshot());
+                default -> sendError(exchange, 404, "No such operation: " + method + " " + exchange.getRequestURI().getPath());
+            }
+            if (!method.equals("GET")) {
+                Main.getReadRouter().wrote(session(exchange));
+            }
+        } catch (IllegalArgumentException | ClassCastException | ArithmeticException e) {
+            // ArithmeticException: a number out of range for intValueExact()
+            sendError(exchange, 400, "Bad request: " + e.getMessage());
+        } catch (SQLException e) {
+            sendError(exchange, statusFor(e), e.getMessage());
+        } catch (RuntimeException e) {
+            // Answer anyway rather than reset the terminal's connection
+            System.err.println("Request " + method + " " + exchange.getRequestURI() + " failed: " + e);
+            sendError(exchange, 500, "Internal error.");
+        }
+    }
+
+    /**
+     * Read-your-writes session of a request: the X-Session header if the terminal sends
+     * one, otherwise its address.
+     */
+    private static Object session(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("X-Session");
+        return header != null ? header : exchange.getRemoteAddress().getAddress();
+    }
+
+    private static int statusFor(SQLException e) {
+        String message = e.getMessage();
+        if (message != null && message.startsWith("Insufficient inventory")) return 409;
+        if (e.getSQLState() != null && e.getSQLState().startsWith("23")) return 409; // Integrity constraint
+        return 500;
+    }
+
+    // ===== Listings =====
+
+    private static <T> void list(HttpExchange exchange, Listing<T> listing, Function<T, Json.Obj> toJson)
+            throws IOException, SQLException {
+        try (Connection conn = Main.getReadConnection(session(exchange))) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0); // Chunked: rows are written as they stream from the server
+            Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+            boolean[] first = {true};
+            out.write('[');
+            try {
+                listing.list(conn, row -> {
+                    try {
+                        if (!first[0]) out.write(',');
+                        first[0] = false;
+                        out.write(toJson.apply(row).toString());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (SQLException e) {
+                // Status is already sent; cut the response short so the client sees it is incomplete
+                System.err.println("Listing failed mid-stream: " + e.getMessage());
+                return;
+            }
+            out.write(']');
+            out.flush();
+        }
+    }
+
+    private static Json.Obj toJson(Rows.Item row) {
+        return Json.object().put("id", row.id).put("name", row.name).put("category", row.category)
+                .put("discount", row.discount).put("price", row.price);
+    }
+
+    private static Json.Obj toJson(Rows.Category row) {
+        return Json.object().put("id", row.id).put("name", row.name).put("description", row.description);
+    }
+
+    private static Json.Obj toJson(Rows.Discount row) {
+        return Json.object().put("id", row.id).put("description", row.description).put("discountType", row.discountType)
+                .put("startDate", (Object) row.startDate).put("endDate", (Object) row.endDate);
+    }
+
+    private static Json.Obj toJson(Rows.Customer row) {
+        return Json.object().put("id", row.id).put("firstName", row.firstName).put("lastName", row.lastName)
+                .put("phone", row.phone).put("email", row.email);
+    }
+
+    private static Json.Obj toJson(Rows.Order row) {
+        return Json.object().put("id", row.id).put("customerId", row.customerId)
+                .put("firstName", row.firstName).put("lastName", row.lastName);
+    }
+
+    private static Json.Obj toJson(Rows.Payment row) {
+        return Json.object().put("id", row.id).put("orderId", row.orderId).put("paymentType", row.paymentType)
+                .put("amount", row.amount).put("paymentDate", (Object) row.paymentDate);
+    }
+
+    private static Json.Obj toJson(Rows.OrderLine row) {
+        return Json.object().put("orderId", row.orderId).put("itemId", row.itemId).put("itemName", row.itemName)
+                .put("quantity", row.quantity).put("total", row.total);
+    }
+
+    private static Json.Obj toJson(Rows.SalesSummary row) {
+        return Json.object().put("customerId", row.customerId).put("customerName", row.customerName)
+                .put("orderCount", row.orderCount).put("totalSpent", row.totalSpent)
+                .put("averageOrderValue", row.averageOrderValue);
+    }
+
+    private static Json.Obj toJson(Rows.InventoryEntry row) {
+        return Json.object().put("id", row.id).put("itemId", row.itemId).put("quantity", row.quantity)
+                .put("stockDate", (Object) row.stockDate);
+    }
+
+    private static void salesSummary(HttpExchange exchange) throws IOException, SQLException {
+        String limit = queryParameters(exchange).get("limit");
+        if (limit == null) {
+            PosServer.<Rows.SalesSummary>list(exchange, Listings::salesSummary, PosServer::toJson);
+        } else {
+            int n = Integer.parseInt(limit);
+            // Before the listing sends its 200
+            if (n < 1) throw new IllegalArgumentException("Limit must be positive: " + n);
+            PosServer.<Rows.SalesSummary>list(exchange, (conn, sink) -> Listings.topSalesSummary(conn, n, sink), PosServer::toJson);
+        }
+    }
+
+    private static void orderHistory(HttpExchange exchange, int customerId) throws IOException, SQLException {
+        Map<String, String> query = queryParameters(exchange);
+        int limit = Integer.parseInt(query.getOrDefault("limit", "20"));
+        int before = query.containsKey("before") ? Integer.parseInt(query.get("before")) : Integer.MAX_VALUE;
+
+        OrderHistory.Page page = Main.getOrderHistory().page(customerId, before, limit);
+        StringBuilder orders = new StringBuilder("[");
+        for (OrderHistory.Order o : page.orders) {
+            StringBuilder lines = new StringBuilder("[");
+            for (OrderHistory.Line l : o.lines) {
+                if (lines.length() > 1) lines.append(',');
+                lines.append(Json.object().put("itemId", l.itemId).put("itemName", l.itemName)
+                        .put("quantity", l.quantity).put("total", l.total));
+            }
+            if (orders.length() > 1) orders.append(',');
+            orders.append(Json.object().put("id", o.id).put("total", o.total).put("paid", o.paid)
+                    .put("paymentTypes", o.paymentTypes).putRaw("lines", lines.append(']').toString()));
+        }
+        send(exchange, 200, Json.object().put("customerId", customerId).putRaw("orders", orders.append(']').toString())
+                .put("nextBefore", page.nextBefore));
+    }
+
+    // ===== Item CRUD =====
+
+    private static void insertItem(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, Object> body = readObject(exchange);
+        String name = requiredString(body, "name");
+        BigDecimal price = requiredNumber(body, "price");
+        Integer categoryId = optionalInt(body, "categoryId");
+        Integer discountId = optionalInt(body, "discountId");
+
+        int id;
+        try (Connection conn = Main.getConnection()) {
+            id = DataAccess.on(conn).insertItem(name, price, categoryId, discountId);
+        }
+        if (id > 0) Main.itemChanged(id);
+        send(exchange, 201, Json.object().put("id", id));
+    }
+
+    private static void updateItem(HttpExchange exchange, int id) throws IOException, SQLException {
+        Map<String, Object> body = readObject(exchange);
+        String name = requiredString(body, "name");
+        BigDecimal price = requiredNumber(body, "price");
+
+        int rows;
+        try (Connection conn = Main.getConnection()) {
+            rows = DataAccess.on(conn).updateItem(id, name, price);
+        }
+        Main.itemChanged(id);
+        if (rows > 0) send(exchange, 200, Json.object().put("id", id));
+        else sendError(exchange, 404, "Item not found.");
+    }
+
+    private static void deleteItem(HttpExchange exchange, int id) throws IOException, SQLException {
+        int rows;
+        try (Connection conn = Main.getConnection()) {
+            rows = DataAccess.on(conn).deleteItem(id);
+        }
+        Main.itemChanged(id);
+        if (rows > 0) send(exchange, 200, Json.object().put("id", id));
+        else sendError(exchange, 404, "Item not found.");
+    }
+
+    // ===== Checkout =====
+
+    private static void placeOrder(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, Object> body = readObject(exchange);
+        int customerId = requiredNumber(body, "customerId").intValueExact();
+        Object rawLines = body.get("lines");
+        if (!(rawLines instanceof List<?> lineList)) throw new IllegalArgumentException("'lines' must be an array.");
+
+        List<OrderService.Line> lines = new ArrayList<>(lineList.size());
+        for (Object raw : lineList) {
+            if (!(raw instanceof Map<?, ?> line)) throw new IllegalArgumentException("Each line must be an object.");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> fields = (Map<String, Object>) line;
+            lines.add(new OrderService.Line(requiredNumber(fields, "itemId").intValueExact(),
+                    requiredNumber(fields, "quantity").intValueExact()));
+        }
+
+        String paymentType = null;
+        BigDecimal amount = null;
+        Object rawPayment = body.get("payment");
+        if (rawPayment != null) {
+            if (!(rawPayment instanceof Map<?, ?> payment)) throw new IllegalArgumentException("'payment' must be an object.");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> fields = (Map<String, Object>) payment;
+            paymentType = requiredString(fields, "type");
+            if (fields.get("amount") != null) amount = requiredNumber(fields, "amount");
+        }
+
+        int orderId = Main.getOrderService().placeOrder(customerId, lines);
+        Main.customerOrdersChanged(customerId);
+        // Queued; the response does not wait for the Payment row
+        if (paymentType != null) Main.getPaymentWriter(customerId).submit(customerId, orderId, paymentType, amount);
+        send(exchange, 201, Json.object().put("orderId", orderId));
+    }
+
+    private static void checkPrice(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, String> query = queryParameters(exchange);
+        String itemId = query.get("itemId");
+        if (itemId == null) throw new IllegalArgumentException("Missing 'itemId' parameter.");
+        int id = Integer.parseInt(itemId);
+        int quantity = Integer.parseInt(query.getOrDefault("quantity", "1"));
+
+        BigDecimal price = Main.getPricingEngine().price(id, quantity);
+        if (price == null) {
+            sendError(exchange, 404, "No price available (unknown item or discount without a value).");
+        } else {
+            send(exchange, 200, Json.object().put("itemId", id).put("quantity", quantity).put("price", price));
+        }
+    }
+
+    private static void searchItems(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, String> query = queryParameters(exchange);
+        String q = query.get("q");
+        if (q == null) throw new IllegalArgumentException("Missing 'q' parameter.");
+        int limit = Integer.parseInt(query.getOrDefault("limit", "10"));
+        if (limit < 1 || limit > 100) throw new IllegalArgumentException("'limit' must be between 1 and 100.");
+
+        StringBuilder json = new StringBuilder("[");
+        for (ItemSearchIndex.Match m : Main.getItemSearchIndex().search(q, limit)) {
+            if (json.length() > 1) json.append(',');
+            json.append(Json.object().put("id", m.id).put("name", m.name).put("category", m.category).put("price", m.price));
+        }
+        send(exchange, 200, "application/json", json.append(']').toString());
+    }
+
+    // ===== Request / response helpers =====
+
+    private static Map<String, Object> readObject(HttpExchange exchange) throws IOException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) throw new IllegalArgumentException("Request body too large.");
+        Object parsed = Json.parse(new String(bytes, StandardCharsets.UTF_8));
+        if (!(parsed instanceof Map<?, ?>)) throw new IllegalArgumentException("Request body must be a JSON object.");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> body = (Map<String, Object>) parsed;
+        return body;
+    }
+
+    private static String requiredString(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (!(value instanceof String s) || s.isBlank()) throw new IllegalArgumentException("Missing '" + field + "'.");
+        return s;
+    }
+
+    private static BigDecimal requiredNumber(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (!(value instanceof BigDecimal n)) throw new IllegalArgumentException("Missing number '" + field + "'.");
+        return n;
+    }
+
+    private static Integer optionalInt(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        return value == null ? null : requiredNumber(body, field).intValueExact();
+    }
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return params;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, int status, Json.Obj body) throws IOException {
+        send(exchange, status, "application/json", body.toString());
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, Json.object().put("error", message));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Starts the server with the settings in app.properties and stops it, together with
+     * the connection pool, when the JVM shuts down.
+     */
+    public static void serve() throws IOException {
+        Properties props = Main.loadProperties();
+        if (props == null || Main.getPool() == null) {
+            System.out.println("Failed to connect to database.");
+            return;
+        }
+        PosServer server = fromProperties(props);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            Main.closeConnection();
+        }));
+        server.start();
+    }
+
+    public static void main(String[] args) throws IOException {
+        serve();
+    }
+}
@@ -0,0 +1,358 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-JVM replacement for the CalculateDiscountedPrice stored function.
+ *
+ * Item and Discount are loaded once. Each discount is compiled into a {@link PriceRule}
+ * (its number is parsed from the description a single time instead of with REGEXP_SUBSTR
+ * on every call), and each item's base price plus active rule is cached until the next
+ * start/end date of its discount, or until {@link #invalidate(int)} is called after the
+ * item changes. Unknown items are loaded on first use.
+ *
+ * The arithmetic mirrors the stored function: the same formulas, DECIMAL(10,2) rounding
+ * half away from zero, and a NULL (here: null) result when the item does not exist or a
+ * Percentage/Fixed discount has no number in its description.
+ */
+public class PricingEngine {
+
+    private static final Pattern FIRST_NUMBER = Pattern.compile("[0-9]+");
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+    private static final BigDecimal DECIMAL_10_2_MAX = new BigDecimal("99999999.99");
+    private static final QueryMetrics.Timer PRICE_TIMER = QueryMetrics.timer("PricingEngine.price");
+    private static final QueryMetrics.Timer LOAD_TIMER = QueryMetrics.timer("PricingEngine.load");
+    private static final QueryMetrics.Timer PRELOAD_TIMER = QueryMetrics.timer("PricingEngine.preload");
+
+    static final String LOAD_ITEMS = "SELECT ID, Price, DiscountID FROM Item";
+
+    static final String LOAD_DISCOUNTS = "SELECT ID, Description, discountType, startDate, endDate FROM Discount";
+
+    private final ConnectionPool pool;
+    private final Clock clock;
+
+    private volatile Map<Integer, DiscountDef> discounts = new HashMap<>();
+    private final Map<Integer, ItemDef> items = new ConcurrentHashMap<>();
+    private final Map<Integer, CachedPrice> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Bumped by {@link #invalidate} and {@link #load}. Item reads and price compilations
+     * publish their result only if it has not moved since they started, so a read that
+     * raced an invalidation cannot put the old item back. Bumps and publishes hold the
+     * engine's lock; cache hits take no lock.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** A compiled discount evaluator. Returns the unrounded line price, or null like SQL NULL. */
+    @FunctionalInterface
+    interface PriceRule {
+        BigDecimal apply(BigDecimal basePrice, int quantity);
+    }
+
+    private static final PriceRule NO_DISCOUNT = (base, qty) -> base.multiply(BigDecimal.valueOf(qty));
+    private static final PriceRule NULL_PRICE = (base, qty) -> null;
+
+    static final class DiscountDef {
+        final int id;
+        final LocalDate startDate;
+        final LocalDate endDate;
+        final PriceRule rule;
+
+        DiscountDef(int id, String description, String type, LocalDate startDate, LocalDate endDate) {
+            this.id = id;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.rule = compile(description, type);
+        }
+
+        /** CURDATE() BETWEEN startDate AND endDate; NULL bounds never match. */
+        boolean activeOn(LocalDate day) {
+            return startDate != null && endDate != null && !day.isBefore(startDate) && !day.isAfter(endDate);
+        }
+
+        /** First day after {@code day} on which activeOn() may change, or null if never. */
+        LocalDate nextBoundaryAfter(LocalDate day) {
+            if (startDate == null || endDate == null) return null;
+            if (day.isBefore(startDate)) return startDate;
+            if (!day.isAfter(endDate)) return endDate.plusDays(1);
+            return null;
+        }
+    }
+
+    static final class ItemDef {
+        final int id;
+        final BigDecimal price;
+        final Integer discountId;
+
+        ItemDef(int id, BigDecimal price, Integer discountId) {
+            this.id = id;
+            this.price = price;
+            this.discountId = discountId;
+        }
+    }
+
+    private static final class CachedPrice {
+        final BigDecimal basePrice;
+        final PriceRule rule;
+        final LocalDate validFrom;
+        final LocalDate validUntil; // exclusive; null means no upcoming boundary
+
+        CachedPrice(BigDecimal basePrice, PriceRule rule, LocalDate validFrom, LocalDate validUntil) {
+            this.basePrice = basePrice;
+            this.rule = rule;
+            this.validFrom = validFrom;
+            this.validUntil = validUntil;
+        }
+
+        boolean validOn(LocalDate day) {
+            return !day.isBefore(validFrom) && (validUntil == null || day.isBefore(validUntil));
+        }
+    }
+
+    public PricingEngine(ConnectionPool pool) {
+        this(pool, Clock.systemDefaultZone());
+    }
+
+    public PricingEngine(ConnectionPool pool, Clock clock) {
+        this.pool = pool;
+        this.clock = clock;
+    }
+
+    /**
+     * Compiles one Discount row the way CalculateDiscountedPrice interprets it.
+     * Type comparison is case-insensitive, as with MySQL's default collation.
+     */
+    static PriceRule compile(String description, String type) {
+        if ("Percentage".equalsIgnoreCase(type)) {
+            BigDecimal value = parseValue(description);
+            if (value == null) return NULL_PRICE;
+            BigDecimal multiplier = BigDecimal.ONE.subtract(value.divide(HUNDRED));
+            return (base, qty) -> BigDecimal.valueOf(qty).multiply(base).multiply(multiplier);
+        }
+        if ("Fixed".equalsIgnoreCase(type)) {
+            BigDecimal value = parseValue(description);
+            if (value == null) return NULL_PRICE;
+            return (base, qty) -> BigDecimal.valueOf(qty).multiply(base).subtract(value);
+        }
+        if ("BOGO".equalsIgnoreCase(type)) {
+            // CEIL(p_Quantity / 2)
+            return (base, qty) -> base.multiply(BigDecimal.valueOf(-Math.floorDiv(-qty, 2)));
+        }
+        return NO_DISCOUNT;
+    }
+
+    /** CAST(REGEXP_SUBSTR(Description, '[0-9]+') AS DECIMAL(10,2)). */
+    static BigDecimal parseValue(String description) {
+        if (description == null) return null;
+        Matcher m = FIRST_NUMBER.matcher(description);
+        if (!m.find()) return null;
+        BigDecimal value = new BigDecimal(m.group()).setScale(2, RoundingMode.UNNECESSARY);
+        return value.compareTo(DECIMAL_10_2_MAX) > 0 ? DECIMAL_10_2_MAX : value;
+    }
+
+    /**
+     * Loads every Discount and Item in two streamed queries and clears the price cache.
+     */
+    public void load() throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            load(conn);
+        }
+    }
+
+    /** Like {@link #load()}, reading through {@code conn}, which also sees its own uncommitted rows. */
+    void load(Connection conn) throws SQLException {
+        long start = System.nanoTime();
+        Map<Integer, DiscountDef> loadedDiscounts;
+        Map<Integer, ItemDef> loadedItems = new HashMap<>();
+        try {
+            loadedDiscounts = loadDiscounts(conn);
+            try (PreparedStatement ps = Main.prepareStreaming(conn, LOAD_ITEMS);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ItemDef item = readItem(rs);
+                    loadedItems.put(item.id, item);
+                }
+            }
+            LOAD_TIMER.record(start, loadedDiscounts.size() + loadedItems.size());
+        } catch (SQLException e) {
+            LOAD_TIMER.failed(start, e);
+            throw e;
+        }
+
+        synchronized (this) {
+            generation.incrementAndGet();
+            discounts = loadedDiscounts;
+            items.clear();
+            items.putAll(loadedItems);
+            cache.clear();
+        }
+    }
+
+    private static Map<Integer, DiscountDef> loadDiscounts(Connection conn) throws SQLException {
+        Map<Integer, DiscountDef> loaded = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(LOAD_DISCOUNTS);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                DiscountDef d = new DiscountDef(rs.getInt(1), rs.getString(2), rs.getString(3),
+                        toLocalDate(rs.getDate(4)), toLocalDate(rs.getDate(5)));
+                loaded.put(d.id, d);
+            }
+        }
+        return loaded;
+    }
+
+    private static ItemDef readItem(ResultSet rs) throws SQLException {
+        int discountId = rs.getInt(3);
+        return new ItemDef(rs.getInt(1), rs.getBigDecimal(2), rs.wasNull() ? null : discountId);
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date == null ? null : date.toLocalDate();
+    }
+
+    /** Drops the cached price of one item; call after the item is updated or deleted. */
+    public synchronized void invalidate(int itemId) {
+        generation.incrementAndGet();
+        items.remove(itemId);
+        cache.remove(itemId);
+    }
+
+    /**
+     * Same result as {@code SELECT CalculateDiscountedPrice(itemId, quantity)}.
+     *
+     * @return the price rounded to 2 decimals, or null if the item does not exist
+     */
+    public BigDecimal price(int itemId, int quantity) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            BigDecimal price = computePrice(itemId, quantity);
+            PRICE_TIMER.record(start, price == null ? 0 : 1);
+            return price;
+        } catch (SQLException e) {
+            PRICE_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    private BigDecimal computePrice(int itemId, int quantity) throws SQLException {
+        LocalDate today = LocalDate.now(clock);
+        CachedPrice entry = cache.get(itemId);
+        if (entry == null || !entry.validOn(today)) {
+            entry = compileFor(itemId, today);
+            if (entry == null) return null;
+        }
+        BigDecimal raw = entry.rule.apply(entry.basePrice, quantity);
+        return raw == null ? null : raw.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Prices a whole basket in one pass, loading any items not yet known in a single query.
+     * Lines for the same item are priced together, as OrderService stores them.
+     *
+     * @return price per ItemID in ItemID order; unknown items map to null
+     */
+    public Map<Integer, BigDecimal> priceBasket(List<OrderService.Line> lines) throws SQLException {
+        Map<Integer, Integer> quantities = OrderService.mergeLines(lines);
+        preload(quantities.keySet());
+
+        Map<Integer, BigDecimal> prices = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+            prices.put(e.getKey(), price(e.getKey(), e.getValue()));
+        }
+        return prices;
+    }
+
+    /** Sum of a priced basket, or null if any line could not be priced. */
+    public static BigDecimal total(Map<Integer, BigDecimal> basket) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal price : basket.values()) {
+            if (price == null) return null;
+            total = total.add(price);
+        }
+        return total;
+    }
+
+    private CachedPrice compileFor(int itemId, LocalDate today) throws SQLException {
+        long started = generation.get();
+        ItemDef item = items.get(itemId);
+        if (item == null) {
+            ItemDef loaded = preload(Collections.singleton(itemId)).get(itemId);
+            item = loaded != null ? loaded : items.get(itemId);
+            if (item == null) return null;
+        }
+
+        DiscountDef discount = item.discountId == null ? null : discounts.get(item.discountId);
+        PriceRule rule = discount != null && discount.activeOn(today) ? discount.rule : NO_DISCOUNT;
+        LocalDate validUntil = discount == null ? null : discount.nextBoundaryAfter(today);
+
+        CachedPrice entry = new CachedPrice(item.price, rule, today, validUntil);
+        synchronized (this) {
+            // Otherwise the item changed meanwhile: answer this call, but let the next one recompile
+            if (generation.get() == started) cache.put(itemId, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Loads the items not yet known in one query.
+     *
+     * @return the items read, even if an invalidation meanwhile kept them out of the cache
+     */
+    private Map<Integer, ItemDef> preload(Set<Integer> itemIds) throws SQLException {
+        List<Integer> missing = new ArrayList<>();
+        for (int id : itemIds) {
+            if (!items.containsKey(id)) missing.add(id);
+        }
+        Map<Integer, ItemDef> loaded = new HashMap<>();
+        if (missing.isEmpty()) return loaded;
+
+        boolean unknownDiscount = false;
+        long started = generation.get();
+        long start = System.nanoTime();
+        try (Connection conn = pool.borrow();
+             PreparedStatement ps = conn.prepareStatement(preloadSql(missing.size()))) {
+            for (int i = 0; i < missing.size(); i++) ps.setInt(i + 1, missing.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ItemDef item = readItem(rs);
+                    loaded.put(item.id, item);
+                    if (item.discountId != null && !discounts.containsKey(item.discountId)) unknownDiscount = true;
+                }
+            }
+            synchronized (this) {
+                if (generation.get() == started) {
+                    items.putAll(loaded);
+                }
+            }
+            // A new item may point at a discount created after load()
+            if (unknownDiscount) discounts = loadDiscounts(conn);
+            PRELOAD_TIMER.record(start, loaded.size());
+        } catch (SQLException e) {
+            PRELOAD_TIMER.failed(start, e);
+            throw e;
+        }
+        return loaded;
+    }
+
+    /** Items by ID, {@code count} of them. */
+    static String preloadSql(int count) {
+        return "SELECT ID, Price, DiscountID FROM Item WHERE ID IN (" + String.join(", ", Collections.nCopies(count, "?")) + ")";
+    }
+}
@@ -0,0 +1,223 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Verifies that {@link PricingEngine} returns exactly what CalculateDiscountedPrice returns.
+ *
+ * Two suites, each printing every mismatch:
+ * <ul>
+ * <li>{@link #run}: every item of the database (plus one ID past the last, to cover
+ * unknown items) at every quantity from 1 to maxQuantity, today;</li>
+ * <li>{@link #runFixtures}: one fixture discount per case the function tells apart
+ * (Percentage, Fixed, BOGO, a NULL type, an unknown type, a type in another letter case, a
+ * description without a number, a NULL description), priced on fixed days around the
+ * discount's window: the day before it starts, its first day, a day inside it, its last
+ * day and the day after it ends. The engine runs on a clock fixed at that day, and the
+ * function with the session TIMESTAMP set to it. The fixtures are inserted in a
+ * transaction that is rolled back.</li>
+ * </ul>
+ * Exits with status 1 if any case differs.
+ *
+ * Usage: PricingParityCheck [maxQuantity]
+ */
+public class PricingParityCheck {
+
+    /** Fixture discounts as {Description, discountType}, all running from FIXTURE_START to FIXTURE_END. */
+    private static final String[][] FIXTURE_DISCOUNTS = {
+            {"20% off", "Percentage"},
+            {"15% OFF", "percentage"},
+            {"Save 5 dollars", "Fixed"},
+            {"Save 50 dollars", "Fixed"},
+            {"Buy one get one free", "BOGO"},
+            {"10% off", null},
+            {"Clearance 30%", "Seasonal"},
+            {"Half price", "Percentage"},
+            {"Discount", "Fixed"},
+            {null, "Percentage"},
+    };
+
+    private static final LocalDate FIXTURE_START = LocalDate.of(2030, 6, 10);
+    private static final LocalDate FIXTURE_END = FIXTURE_START.plusDays(10);
+
+    private static final LocalDate[] FIXTURE_DAYS = {
+            FIXTURE_START.minusDays(1), FIXTURE_START, FIXTURE_START.plusDays(5), FIXTURE_END, FIXTURE_END.plusDays(1)};
+
+    private static final BigDecimal FIXTURE_PRICE = new BigDecimal("19.99");
+
+    private static final String INSERT_DISCOUNT =
+            "INSERT INTO Discount (Description, discountType, startDate, endDate) VALUES (?, ?, ?, ?)";
+
+    /** A clock the fixture suite moves from day to day, at noon UTC. */
+    private static final class DayClock extends Clock {
+        private volatile Instant instant = Instant.EPOCH;
+
+        void set(LocalDate day) {
+            instant = day.atTime(12, 0).toInstant(ZoneOffset.UTC);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException("DayClock is always UTC.");
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    public static void main(String[] args) {
+        int maxQuantity = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int failures;
+
+        try {
+            failures = run(Main.getPool(), maxQuantity);
+            failures += runFixtures(Main.getPool(), maxQuantity);
+        } catch (SQLException e) {
+            System.err.println("Parity check failed to run: " + e.getMessage());
+            failures = 1;
+        } finally {
+            Main.closeConnection();
+        }
+
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    public static int run(ConnectionPool pool, int maxQuantity) throws SQLException {
+        if (pool == null) throw new SQLException("Connection pool is not available.");
+
+        PricingEngine engine = new PricingEngine(pool);
+        engine.load();
+
+        List<Integer> itemIds = new ArrayList<>();
+        try (Connection conn = pool.borrow();
+             PreparedStatement ps = conn.prepareStatement("SELECT ID FROM Item ORDER BY ID");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) itemIds.add(rs.getInt(1));
+        }
+        itemIds.add(itemIds.isEmpty() ? 1 : itemIds.get(itemIds.size() - 1) + 1);
+
+        int cases = 0;
+        int failures = 0;
+        try (Connection conn = pool.borrow()) {
+            DataAccess db = DataAccess.on(conn);
+            for (int itemId : itemIds) {
+                for (int qty = 1; qty <= maxQuantity; qty++) {
+                    BigDecimal expected = db.calculateDiscountedPrice(itemId, qty);
+                    BigDecimal actual = engine.price(itemId, qty);
+                    cases++;
+                    if (!Objects.equals(expected, actual)) {
+                        failures++;
+                        System.out.println("MISMATCH item " + itemId + " x" + qty +
+                                ": stored function " + expected + ", engine " + actual);
+                    }
+                }
+            }
+
+            // Basket pricing must agree with pricing each line on its own
+            for (int itemId : itemIds) {
+                BigDecimal single = engine.price(itemId, 3);
+                BigDecimal basket = engine.priceBasket(List.of(new OrderService.Line(itemId, 1),
+                        new OrderService.Line(itemId, 2))).get(itemId);
+                cases++;
+                if (!Objects.equals(single, basket)) {
+                    failures++;
+                    System.out.println("MISMATCH basket item " + itemId + ": single " + single + ", basket " + basket);
+                }
+            }
+        }
+
+        System.out.println("Pricing parity: " + (cases - failures) + "/" + cases + " cases match.");
+        return failures;
+    }
+
+    /**
+     * Compares the engine and the function on the fixture discounts, each day of
+     * FIXTURE_DAYS and every quantity from 1 to maxQuantity. Nothing is committed.
+     */
+    public static int runFixtures(ConnectionPool pool, int maxQuantity) throws SQLException {
+        if (pool == null) throw new SQLException("Connection pool is not available.");
+
+        int cases = 0;
+        int failures = 0;
+        try (Connection conn = pool.borrow()) {
+            conn.setAutoCommit(false);
+            try (Statement session = conn.createStatement()) {
+                // CURDATE() follows SET TIMESTAMP in this session's time zone; match the clock's
+                session.execute("SET time_zone = '+00:00'");
+                try {
+                    DataAccess db = DataAccess.on(conn);
+                    List<Integer> itemIds = new ArrayList<>();
+                    List<String> labels = new ArrayList<>();
+                    itemIds.add(db.insertItem("Parity fixture: no discount", FIXTURE_PRICE, null, null));
+                    labels.add("no discount");
+                    for (String[] d : FIXTURE_DISCOUNTS) {
+                        itemIds.add(db.insertItem("Parity fixture", FIXTURE_PRICE, null, insertDiscount(conn, d[0], d[1])));
+                        labels.add(d[1] + " '" + d[0] + "'");
+                    }
+
+                    DayClock clock = new DayClock();
+                    PricingEngine engine = new PricingEngine(pool, clock);
+                    engine.load(conn);
+
+                    for (LocalDate day : FIXTURE_DAYS) {
+                        clock.set(day);
+                        session.execute("SET TIMESTAMP = " + clock.instant().getEpochSecond());
+                        for (int i = 0; i < itemIds.size(); i++) {
+                            for (int qty = 1; qty <= maxQuantity; qty++) {
+                                BigDecimal expected = db.calculateDiscountedPrice(itemIds.get(i), qty);
+                                BigDecimal actual = engine.price(itemIds.get(i), qty);
+                                cases++;
+                                if (!Objects.equals(expected, actual)) {
+                                    failures++;
+                                    System.out.println("MISMATCH fixture " + labels.get(i) + " on " + day + " x" + qty +
+                                            ": stored function " + expected + ", engine " + actual);
+                                }
+                            }
+                        }
+                    }
+                } finally {
+                    conn.rollback();
+                    session.execute("SET TIMESTAMP = DEFAULT");
+                    session.execute("SET time_zone = DEFAULT");
+                    conn.setAutoCommit(true);
+                }
+            }
+        }
+
+        System.out.println("Pricing parity on fixtures: " + (cases - failures) + "/" + cases + " cases match.");
+        return failures;
+    }
+
+    private static int insertDiscount(Connection conn, String description, String type) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_DISCOUNT, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, description);
+            ps.setString(2, type);
+            ps.setDate(3, Date.valueOf(FIXTURE_START));
+            ps.setDate(4, Date.valueOf(FIXTURE_END));
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (!rs.next()) throw new SQLException("No ID generated for fixture discount.");
+                return rs.getInt(1);
+            }
+        }
+    }
+}
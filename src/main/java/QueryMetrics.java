@@ -0,0 +1,200 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide statement and transaction metrics, published over JMX.
+ *
+ * Each statement the application runs has a {@link Timer}, created once in a static field
+ * of the class that runs it and registered as {@code cs175a:type=Query,name=<name>}.
+ * Recording costs one System.nanoTime() call and a few atomic increments, with no allocation.
+ * Commits, rollbacks and errors (counted per SQLState) are published as
+ * {@code cs175a:type=Transactions}. {@link #snapshot()} renders all of it as text.
+ */
+public final class QueryMetrics {
+
+    public static final String DOMAIN = "cs175a";
+
+    // Key for errors that carry no SQLState, such as application-level SQLExceptions
+    private static final String NO_SQL_STATE = "none";
+
+    public interface TimerMXBean {
+        String getName();
+        long getCount();
+        long getRows();
+        long getErrors();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP99Millis();
+        double getP999Millis();
+        double getMaxMillis();
+        void reset();
+    }
+
+    public interface TransactionsMXBean {
+        long getCommits();
+        long getRollbacks();
+        Map<String, Long> getErrorsBySqlState();
+        String snapshot();
+        void reset();
+    }
+
+    /** Latency, row and error counts of one named statement or operation. */
+    public static final class Timer implements TimerMXBean {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        /** Records a successful call that started at {@code startNanos} (System.nanoTime()). */
+        public void record(long startNanos, long rowCount) {
+            latency.recordSince(startNanos);
+            if (rowCount > 0) rows.addAndGet(rowCount);
+        }
+
+        /** Records a call that failed with a database error, counting it under its SQLState. */
+        public void failed(long startNanos, SQLException e) {
+            failed(startNanos);
+            QueryMetrics.error(e);
+        }
+
+        /** Records a failed call whose error is already counted by the statement that raised it. */
+        public void failed(long startNanos) {
+            latency.recordSince(startNanos);
+            errors.incrementAndGet();
+        }
+
+        @Override public String getName() { return name; }
+        @Override public long getCount() { return latency.getCount(); }
+        @Override public long getRows() { return rows.get(); }
+        @Override public long getErrors() { return errors.get(); }
+        @Override public double getMeanMillis() { return latency.getMeanNanos() / 1e6; }
+        @Override public double getP50Millis() { return latency.percentile(50) / 1e6; }
+        @Override public double getP99Millis() { return latency.percentile(99) / 1e6; }
+        @Override public double getP999Millis() { return latency.percentile(99.9) / 1e6; }
+        @Override public double getMaxMillis() { return latency.getMaxNanos() / 1e6; }
+
+        @Override
+        public void reset() {
+            latency.reset();
+            rows.set(0);
+            errors.set(0);
+        }
+
+        String describe() {
+            return String.format("%-32s rows %d | errors %d | %s", name, rows.get(), errors.get(), latency.summary());
+        }
+    }
+
+    private static final Map<String, Timer> timers = new TreeMap<>();
+    private static final AtomicLong commits = new AtomicLong();
+    private static final AtomicLong rollbacks = new AtomicLong();
+    private static final Map<String, AtomicLong> errorsBySqlState = new ConcurrentHashMap<>();
+
+    private static final TransactionsMXBean TRANSACTIONS = new TransactionsMXBean() {
+        @Override public long getCommits() { return commits.get(); }
+        @Override public long getRollbacks() { return rollbacks.get(); }
+
+        @Override
+        public Map<String, Long> getErrorsBySqlState() {
+            Map<String, Long> copy = new TreeMap<>();
+            errorsBySqlState.forEach((state, count) -> copy.put(state, count.get()));
+            return copy;
+        }
+
+        @Override public String snapshot() { return QueryMetrics.snapshot(); }
+        @Override public void reset() { QueryMetrics.reset(); }
+    };
+
+    static {
+        register("type=Transactions", TRANSACTIONS);
+    }
+
+    private QueryMetrics() {
+    }
+
+    /**
+     * Returns the timer with the given name, creating and registering it on first use.
+     * Call once and keep the result in a static field; this method is not for hot paths.
+     */
+    public static synchronized Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = new Timer(name);
+            timers.put(name, timer);
+            register("type=Query,name=" + name, timer);
+        }
+        return timer;
+    }
+
+    public static void commit() {
+        commits.incrementAndGet();
+    }
+
+    public static void rollback() {
+        rollbacks.incrementAndGet();
+    }
+
+    /** Counts an error under its SQLState (and that of every chained exception). */
+    public static void error(SQLException e) {
+        for (SQLException cur = e; cur != null; cur = cur.getNextException()) {
+            String state = cur.getSQLState() != null ? cur.getSQLState() : NO_SQL_STATE;
+            AtomicLong count = errorsBySqlState.get(state);
+            if (count == null) count = errorsBySqlState.computeIfAbsent(state, k -> new AtomicLong());
+            count.incrementAndGet();
+        }
+    }
+
+    public static long getCommits() {
+        return commits.get();
+    }
+
+    public static long getRollbacks() {
+        return rollbacks.get();
+    }
+
+    /** All metrics as text: one line per timer that has been called, then the transaction counters. */
+    public static String snapshot() {
+        List<Timer> copy;
+        synchronized (QueryMetrics.class) {
+            copy = new ArrayList<>(timers.values());
+        }
+        StringBuilder sb = new StringBuilder("--- Query Metrics ---\n");
+        for (Timer timer : copy) {
+            if (timer.getCount() > 0) sb.append(timer.describe()).append('\n');
+        }
+        sb.append("Commits: ").append(commits.get())
+                .append(" | Rollbacks: ").append(rollbacks.get())
+                .append(" | Errors by SQLState: ").append(TRANSACTIONS.getErrorsBySqlState());
+        return sb.toString();
+    }
+
+    public static synchronized void reset() {
+        timers.values().forEach(Timer::reset);
+        commits.set(0);
+        rollbacks.set(0);
+        errorsBySqlState.clear();
+    }
+
+    private static void register(String properties, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (!server.isRegistered(name)) server.registerMBean(mbean, name);
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean " + properties + ": " + e.getMessage());
+        }
+    }
+}
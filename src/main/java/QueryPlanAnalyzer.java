@@ -0,0 +1,229 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs EXPLAIN on every statement the application issues and flags full table scans,
+ * filesorts and temporary tables.
+ *
+ * Each {@link Probe} is one statement with sample parameters. Listings that read a whole
+ * table on purpose declare that table as their scan, and may sort; everything else (point
+ * lookups, joins into other tables, pagers, the statements inside UpdateInventoryOnSale and
+ * CalculateDiscountedPrice) must use an index. EXPLAIN only plans the statement, so the
+ * UPDATE and DELETE probes change nothing.
+ *
+ * Run it after schema or query changes; it exits with status 1 on any finding. The
+ * indexes it asks for are shipped as {@link IndexMigrations}.
+ *
+ * Usage: QueryPlanAnalyzer
+ */
+public class QueryPlanAnalyzer {
+
+    /** One statement to explain, and what its plan may do. */
+    public static final class Probe {
+        final String name;
+        final String sql;
+        final Object[] params;
+        private Set<String> scans = Set.of();
+        private boolean sorts;
+        private boolean temporary;
+
+        private Probe(String name, String sql, Object... params) {
+            this.name = name;
+            this.sql = sql;
+            this.params = params;
+        }
+
+        static Probe of(String name, String sql, Object... params) {
+            return new Probe(name, sql, params);
+        }
+
+        /** A whole-table listing: {@code tables} (as named in the plan) may be scanned and the result sorted. */
+        Probe listing(String... tables) {
+            this.scans = Set.of(tables);
+            this.sorts = true;
+            return this;
+        }
+
+        /** Sorting on a joined table's column or grouping needs a temporary table; allow it. */
+        Probe withTemporary() {
+            this.temporary = true;
+            return this;
+        }
+    }
+
+    public static final List<Probe> PROBES = List.of(
+            // DataAccess
+            Probe.of("DataAccess.listItems", DataAccess.LIST_ITEMS).listing("i"),
+            Probe.of("DataAccess.findItem", DataAccess.FIND_ITEM, 1),
+            Probe.of("DataAccess.listCategories", DataAccess.LIST_CATEGORIES).listing("Category"),
+            Probe.of("DataAccess.listDiscounts", DataAccess.LIST_DISCOUNTS).listing("Discount"),
+            Probe.of("DataAccess.listCustomers", DataAccess.LIST_CUSTOMERS).listing("Customer"),
+            Probe.of("DataAccess.listOrders", DataAccess.LIST_ORDERS).listing("o"),
+            Probe.of("DataAccess.listPayments", DataAccess.LIST_PAYMENTS).listing("Payment"),
+            Probe.of("DataAccess.listOrderLines", DataAccess.LIST_ORDER_LINES).listing("ol"),
+            Probe.of("DataAccess.salesSummary", DataAccess.SALES_SUMMARY).listing("c").withTemporary(),
+            Probe.of("DataAccess.listInventory", DataAccess.LIST_INVENTORY).listing("InventoryEntry"),
+            Probe.of("DataAccess.updateItem", DataAccess.UPDATE_ITEM, "probe", 1, 1),
+            Probe.of("DataAccess.deleteItem", DataAccess.DELETE_ITEM, 1),
+            Probe.of("DataAccess.itemPrices", DataAccess.itemPricesSql(2), 1, 2),
+
+            // Stored routines, statement by statement
+            Probe.of("UpdateInventoryOnSale (stock check)", """
+                    SELECT Quantity FROM InventoryEntry
+                    WHERE ItemID = ?
+                    ORDER BY StockDate DESC
+                    LIMIT 1
+                    """, 1),
+            Probe.of("UpdateInventoryOnSale (decrement) / InventoryLedger.applyDecrement", InventoryLedger.APPLY_DECREMENT, 1, 1),
+            Probe.of("CalculateDiscountedPrice", """
+                    SELECT i.Price, d.discountType, d.Description
+                    FROM Item i
+                    LEFT JOIN Discount d ON d.ID = i.DiscountID
+                    AND CURDATE() BETWEEN d.startDate AND d.endDate
+                    WHERE i.ID = ?
+                    """, 1),
+
+            Probe.of("ShardedOrderService.restock", ShardedOrderService.RESTOCK, 1, 1),
+
+            // Pagers
+            Probe.of("KeysetPager.items", KeysetPager.ITEMS_PAGE, 0, 50),
+            Probe.of("KeysetPager.orders", KeysetPager.ORDERS_PAGE, 0, 50),
+            Probe.of("KeysetPager.orderLines", KeysetPager.ORDER_LINES_PAGE, 0, 0, 0, 50),
+            Probe.of("KeysetPager.payments", KeysetPager.PAYMENTS_PAGE, 0, 50),
+
+            // PricingEngine
+            Probe.of("PricingEngine.load (items)", PricingEngine.LOAD_ITEMS).listing("Item"),
+            Probe.of("PricingEngine.load (discounts)", PricingEngine.LOAD_DISCOUNTS).listing("Discount"),
+            Probe.of("PricingEngine.preload", PricingEngine.preloadSql(2), 1, 2),
+
+            // InventoryLedger
+            Probe.of("InventoryLedger.loadStock", InventoryLedger.LOAD_STOCK).listing("ie"),
+            Probe.of("InventoryLedger.pendingReservations", InventoryLedger.PENDING_RESERVATIONS, 500),
+            Probe.of("InventoryLedger.reservedTotals", InventoryLedger.RESERVED_TOTALS).listing("InventoryReservation").withTemporary(),
+
+            // SalesSummaryStore
+            Probe.of("SalesSummaryStore.listAll", SalesSummaryStore.LIST_ALL).listing("c").withTemporary(),
+            Probe.of("SalesSummaryStore.top", SalesSummaryStore.LIST_TOP, 10),
+
+            // CatalogReplica, refreshing after the first load
+            Probe.of("CatalogReplica.categories", CatalogReplica.CATEGORIES_SINCE, "2037-01-01 00:00:00"),
+            Probe.of("CatalogReplica.discounts", CatalogReplica.DISCOUNTS_SINCE, "2037-01-01 00:00:00"),
+            Probe.of("CatalogReplica.items", CatalogReplica.ITEMS_SINCE, "2037-01-01 00:00:00"),
+            Probe.of("CatalogReplica.customers", CatalogReplica.CUSTOMERS_SINCE, "2037-01-01 00:00:00"),
+            Probe.of("CatalogReplica.deletions", CatalogReplica.DELETIONS_SINCE, "2037-01-01 00:00:00"),
+
+            // OrderHistory
+            Probe.of("OrderHistory.page", OrderHistory.ORDERS_PAGE, 1, Integer.MAX_VALUE, 20),
+
+            // ReorderJob
+            Probe.of("ReorderJob.sales", ReorderJob.SALES_SINCE, "2037-01-01").withTemporary(),
+            Probe.of("ReorderJob.stock", ReorderJob.SUPPLIED_STOCK).listing("ie", "InventoryReservation").withTemporary(),
+
+            // Payments
+            Probe.of("PaymentWriter.orderTotals", "SELECT OrderID, SUM(Total) FROM OrderLine WHERE OrderID IN (?, ?) GROUP BY OrderID", 1, 2),
+            Probe.of("PaymentReconciler.chunk", PaymentReconciler.MISMATCHES, 1, 50000, 1, 50000, 1, 50000));
+
+    /** A plan line that broke a probe's rules. */
+    public static final class Finding {
+        public final String probe;
+        public final String problem;
+
+        Finding(String probe, String problem) {
+            this.probe = probe;
+            this.problem = problem;
+        }
+
+        @Override
+        public String toString() {
+            return probe + ": " + problem;
+        }
+    }
+
+    /**
+     * Explains every probe and prints one line per probe, with its findings.
+     *
+     * @return the findings, empty if every plan is acceptable
+     */
+    public static List<Finding> analyze(Connection conn) throws SQLException {
+        List<Finding> findings = new ArrayList<>();
+        for (Probe probe : PROBES) {
+            List<Finding> own = explain(conn, probe);
+            System.out.println((own.isEmpty() ? "OK    " : "FLAG  ") + probe.name);
+            for (Finding f : own) System.out.println("      " + f.problem);
+            findings.addAll(own);
+        }
+        return findings;
+    }
+
+    static List<Finding> explain(Connection conn, Probe probe) throws SQLException {
+        List<Finding> findings = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("EXPLAIN " + bind(probe.sql, probe.params))) {
+            while (rs.next()) {
+                String table = rs.getString("table");
+                String type = rs.getString("type");
+                String key = rs.getString("key");
+                long rows = rs.getLong("rows");
+                String extra = rs.getString("Extra");
+                if (extra == null) extra = "";
+
+                // Derived tables are the materialized views themselves; their inputs are checked on their own lines
+                boolean derived = table != null && table.startsWith("<");
+                if ("ALL".equals(type) && !derived && !probe.scans.contains(table)) {
+                    findings.add(new Finding(probe.name, "full scan of " + table + " (~" + rows + " rows)"));
+                }
+                if (extra.contains("Using filesort") && !probe.sorts) {
+                    findings.add(new Finding(probe.name, "filesort on " + table + (key == null ? "" : " (key " + key + ")")));
+                }
+                if (extra.contains("Using temporary") && !probe.temporary) {
+                    findings.add(new Finding(probe.name, "temporary table for " + table));
+                }
+            }
+        }
+        return findings;
+    }
+
+    /**
+     * Inlines the sample parameters. The server cannot prepare every EXPLAIN, and none of
+     * the probed statements has a '?' inside a string literal.
+     */
+    static String bind(String sql, Object[] params) {
+        StringBuilder sb = new StringBuilder(sql.length() + 16);
+        int p = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char ch = sql.charAt(i);
+            if (ch != '?') {
+                sb.append(ch);
+                continue;
+            }
+            if (p >= params.length) throw new IllegalArgumentException("Too few parameters for: " + sql);
+            Object param = params[p++];
+            if (param instanceof Number) sb.append(param);
+            else sb.append('\'').append(String.valueOf(param).replace("'", "''")).append('\'');
+        }
+        if (p != params.length) throw new IllegalArgumentException("Too many parameters for: " + sql);
+        return sb.toString();
+    }
+
+    public static void main(String[] args) {
+        int findings;
+        try (Connection conn = Main.getConnection()) {
+            List<Finding> found = analyze(conn);
+            findings = found.size();
+            System.out.println(found.isEmpty()
+                    ? "\nAll " + PROBES.size() + " statements use acceptable plans."
+                    : "\n" + findings + " finding(s). Run IndexMigrations apply, then analyze again.");
+        } catch (SQLException e) {
+            System.err.println("Plan analysis failed to run: " + e.getMessage());
+            findings = 1;
+        } finally {
+            Main.closeConnection();
+        }
+        System.exit(findings == 0 ? 0 : 1);
+    }
+}
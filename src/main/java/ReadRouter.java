@@ -0,0 +1,213 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends read-only listing and reporting queries to replicas, and everything else to the primary.
+ *
+ * Replicas are configured as {@code db.replica.1.url}, {@code db.replica.2.url}, ... (with
+ * optional {@code .username} and {@code .password}); each gets its own pool, opened on the
+ * first successful health check. A background check asks every replica for its replication
+ * lag every {@code db.replica.checkIntervalMs}. A replica that is unreachable, has stopped
+ * replicating or is more than {@code db.replica.maxLagSeconds} behind is skipped until a
+ * later check finds it healthy again. With no usable replica, reads go to the primary.
+ *
+ * Read-your-writes: after a caller writes, it calls {@link #wrote} with a session key (the
+ * console, or a POS terminal's address), and that session's reads go to the primary for
+ * the next {@code db.replica.pinAfterWriteMs}, by which time the replicas have caught up.
+ */
+public class ReadRouter implements AutoCloseable {
+
+    private static final class Replica {
+        final String name;
+        volatile ConnectionPool pool;
+        volatile boolean healthy;
+        volatile String status = "not checked yet";
+
+        Replica(String name) {
+            this.name = name;
+        }
+    }
+
+    private final ConnectionPool primary;
+    private final Properties props;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagSeconds;
+    private final long pinNanos;
+    private final Map<Object, Long> pinnedUntil = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService checker;
+
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong pinnedReads = new AtomicLong();
+    private final AtomicLong fallbackReads = new AtomicLong();
+
+    /**
+     * Reads the {@code db.replica.*} keys of app.properties. Without any replica URL every
+     * read goes to {@code primary}.
+     */
+    public ReadRouter(ConnectionPool primary, Properties props) {
+        this.primary = primary;
+        this.props = props;
+        this.maxLagSeconds = Long.parseLong(props.getProperty("db.replica.maxLagSeconds", "5"));
+        this.pinNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(props.getProperty("db.replica.pinAfterWriteMs", "5000")));
+        for (int i = 1; props.getProperty("db.replica." + i + ".url") != null; i++) {
+            replicas.add(new Replica("db.replica." + i));
+        }
+
+        this.checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-health-check");
+            t.setDaemon(true);
+            return t;
+        });
+        if (!replicas.isEmpty()) {
+            checkReplicas(); // Route to replicas from the first read on, if they are up
+            long interval = Long.parseLong(props.getProperty("db.replica.checkIntervalMs", "2000"));
+            checker.scheduleWithFixedDelay(this::checkReplicas, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Leases a connection for read-only queries: from a healthy replica unless
+     * {@code session} wrote recently, from the primary otherwise.
+     */
+    public Connection borrowRead(Object session) throws SQLException {
+        if (replicas.isEmpty()) return primary.borrow();
+        if (isPinned(session)) {
+            pinnedReads.incrementAndGet();
+            return primary.borrow();
+        }
+
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            ConnectionPool pool = replica.pool;
+            if (!replica.healthy || pool == null) continue;
+            try {
+                Connection conn = pool.borrow();
+                conn.setReadOnly(true);
+                replicaReads.incrementAndGet();
+                return conn;
+            } catch (SQLException e) {
+                // Don't wait for the next check to stop sending reads there
+                markDown(replica, "borrow failed: " + e.getMessage());
+            }
+        }
+        fallbackReads.incrementAndGet();
+        return primary.borrow();
+    }
+
+    /** Sends {@code session}'s reads to the primary until its write has reached the replicas. */
+    public void wrote(Object session) {
+        if (replicas.isEmpty() || session == null) return;
+        long now = System.nanoTime();
+        pinnedUntil.put(session, now + pinNanos);
+        if (pinnedUntil.size() > 1024) {
+            pinnedUntil.values().removeIf(until -> until - now < 0);
+        }
+    }
+
+    private boolean isPinned(Object session) {
+        if (session == null) return false;
+        Long until = pinnedUntil.get(session);
+        if (until == null) return false;
+        if (until - System.nanoTime() > 0) return true;
+        pinnedUntil.remove(session, until);
+        return false;
+    }
+
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            try {
+                if (replica.pool == null) {
+                    replica.pool = ConnectionPool.fromProperties(props, replica.name);
+                }
+                long lag;
+                try (Connection conn = replica.pool.borrow()) {
+                    lag = replicationLag(conn);
+                }
+                if (lag < 0) {
+                    markDown(replica, "replication stopped");
+                } else if (lag > maxLagSeconds) {
+                    markDown(replica, lag + " s behind");
+                } else {
+                    if (!replica.healthy) System.out.println("Replica " + replica.name + " is back in rotation.");
+                    replica.healthy = true;
+                    replica.status = lag + " s behind";
+                }
+            } catch (SQLException | RuntimeException e) {
+                markDown(replica, "unreachable: " + e.getMessage());
+            }
+        }
+    }
+
+    private void markDown(Replica replica, String reason) {
+        if (replica.healthy) System.err.println("Replica " + replica.name + " taken out of rotation: " + reason);
+        replica.healthy = false;
+        replica.status = reason;
+    }
+
+    /**
+     * Seconds the replica is behind its source, 0 if the server is not a replica at all
+     * (two standalone instances in local testing), or -1 if replication is not running.
+     */
+    static long replicationLag(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = replicaStatus(stmt)) {
+            if (!rs.next()) return 0;
+            ResultSetMetaData meta = rs.getMetaData();
+            for (int c = 1; c <= meta.getColumnCount(); c++) {
+                String column = meta.getColumnLabel(c);
+                if (column.equals("Seconds_Behind_Source") || column.equals("Seconds_Behind_Master")) {
+                    long lag = rs.getLong(c);
+                    return rs.wasNull() ? -1 : lag;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static ResultSet replicaStatus(Statement stmt) throws SQLException {
+        try {
+            return stmt.executeQuery("SHOW REPLICA STATUS");
+        } catch (SQLException e) {
+            return stmt.executeQuery("SHOW SLAVE STATUS"); // Before MySQL 8.0.22
+        }
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    public String describe() {
+        StringBuilder sb = new StringBuilder(String.format("Reads: replica %d | primary after write %d | primary fallback %d",
+                replicaReads.get(), pinnedReads.get(), fallbackReads.get()));
+        for (Replica replica : replicas) {
+            sb.append(String.format("%n%s: %s (%s)", replica.name, replica.healthy ? "in rotation" : "skipped", replica.status));
+            ConnectionPool pool = replica.pool;
+            if (pool != null) sb.append(System.lineSeparator()).append("  ").append(pool.describe());
+        }
+        return sb.toString();
+    }
+
+    /** Closes the replica pools; the primary pool belongs to the caller. */
+    @Override
+    public void close() {
+        checker.shutdownNow();
+        for (Replica replica : replicas) {
+            ConnectionPool pool = replica.pool;
+            if (pool != null) pool.close();
+        }
+    }
+}
@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes one purchase-order file per supplier for the items that are running low.
+ *
+ * Two set-based reads, however many items there are:
+ * <ol>
+ * <li>units sold per item over the last {@code windowDays}, aggregated on the server from
+ * the OrderLine rows of orders placed in the window (Orders.OrderDate, see
+ * {@link IndexMigrations} version 7, which dates older orders by their first payment and
+ * leaves unpaid ones undated; undated orders are never counted), once per order database
+ * when orders are sharded;</li>
+ * <li>every supplied item with its current stock, the latest InventoryEntry less any
+ * InventoryLedger reservations not yet applied, streamed in supplier order. An item with
+ * several suppliers is ordered from the lowest supplier ID.</li>
+ * </ol>
+ * As each supplier's rows end, the supplier is handed to a fork-join pool that computes
+ * its reorder quantities and writes {@code PO-<supplierID>-<date>.csv}. Only
+ * {@code threads * 2} suppliers are held at once; the stream waits for one to finish, so
+ * memory stays bounded by the sales map and a few suppliers' items.
+ *
+ * An item is reordered when its stock covers no more than {@code leadTimeDays + safetyDays}
+ * of sales at the window's daily rate, up to {@code leadTimeDays + safetyDays + coverDays}
+ * of sales. Items that did not sell in the window are never reordered.
+ *
+ * Usage: ReorderJob outputDir [threads]
+ */
+public class ReorderJob {
+
+    private static final QueryMetrics.Timer SALES_TIMER = QueryMetrics.timer("ReorderJob.sales");
+    private static final QueryMetrics.Timer STOCK_TIMER = QueryMetrics.timer("ReorderJob.stock");
+
+    static final String SALES_SINCE = """
+            SELECT ol.ItemID, SUM(ol.Quantity)
+            FROM Orders o
+            JOIN OrderLine ol ON ol.OrderID = o.ID
+            WHERE o.OrderDate >= ?
+            GROUP BY ol.ItemID
+            """;
+
+    static final String SUPPLIED_STOCK = """
+            SELECT s.ID, s.Name, s.Email, i.ID, i.Name,
+                   COALESCE(st.Quantity, 0) - COALESCE(r.Reserved, 0) AS OnHand
+            FROM (SELECT ItemID, MIN(SupplierID) AS SupplierID FROM SuppliedBy GROUP BY ItemID) sb
+            JOIN Supplier s ON s.ID = sb.SupplierID
+            JOIN Item i ON i.ID = sb.ItemID
+            LEFT JOIN (SELECT ie.ItemID, ie.Quantity
+                       FROM InventoryEntry ie
+                       WHERE ie.ID = (
+                           SELECT latest.ID FROM InventoryEntry latest
+                           WHERE latest.ItemID = ie.ItemID
+                           ORDER BY latest.StockDate DESC
+                           LIMIT 1)) st ON st.ItemID = i.ID
+            LEFT JOIN (SELECT ItemID, SUM(Quantity) AS Reserved
+                       FROM InventoryReservation GROUP BY ItemID) r ON r.ItemID = i.ID
+            ORDER BY s.ID, i.ID
+            """;
+
+    /** Columns of each purchase-order file. */
+    public static final String[] COLUMNS = {"ItemID", "Item", "On Hand", "Sold", "Per Day", "Reorder Point", "Order Quantity"};
+
+    private static final DateTimeFormatter FILE_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /** Reorder policy, in days of sales at the window's rate. */
+    public static final class Policy {
+        public final int windowDays;
+        public final int leadTimeDays;
+        public final int safetyDays;
+        public final int coverDays;
+
+        public Policy(int windowDays, int leadTimeDays, int safetyDays, int coverDays) {
+            if (windowDays < 1) throw new IllegalArgumentException("Sales window must be at least a day: " + windowDays);
+            if (leadTimeDays < 0 || safetyDays < 0 || coverDays < 1) {
+                throw new IllegalArgumentException("Lead time and safety days must not be negative, and cover at least a day.");
+            }
+            this.windowDays = windowDays;
+            this.leadTimeDays = leadTimeDays;
+            this.safetyDays = safetyDays;
+            this.coverDays = coverDays;
+        }
+
+        /** Reads {@code reorder.windowDays}, {@code leadTimeDays}, {@code safetyDays} and {@code coverDays}. */
+        public static Policy fromProperties(Properties props) {
+            return new Policy(Integer.parseInt(props.getProperty("reorder.windowDays", "28")),
+                    Integer.parseInt(props.getProperty("reorder.leadTimeDays", "7")),
+                    Integer.parseInt(props.getProperty("reorder.safetyDays", "3")),
+                    Integer.parseInt(props.getProperty("reorder.coverDays", "14")));
+        }
+
+        /** Stock at or below which an item selling {@code perDay} is reordered. */
+        long reorderPoint(double perDay) {
+            return (long) Math.ceil(perDay * (leadTimeDays + safetyDays));
+        }
+
+        /** Units to order for an item at or below its reorder point. */
+        long orderQuantity(double perDay, long onHand) {
+            return Math.max(0, (long) Math.ceil(perDay * (leadTimeDays + safetyDays + coverDays)) - onHand);
+        }
+    }
+
+    /** One supplied item and its stock. */
+    static final class Stock {
+        final int itemId;
+        final String itemName;
+        final long onHand;
+
+        Stock(int itemId, String itemName, long onHand) {
+            this.itemId = itemId;
+            this.itemName = itemName;
+            this.onHand = onHand;
+        }
+    }
+
+    /** What was ordered from one supplier. */
+    public static final class SupplierOrder {
+        public final int supplierId;
+        public final String supplierName;
+        public final String email;
+        public final int itemsChecked;
+        public final int lines;
+        public final long units;
+        /** Null if nothing needed ordering. */
+        public final Path file;
+
+        SupplierOrder(int supplierId, String supplierName, String email, int itemsChecked, int lines, long units, Path file) {
+            this.supplierId = supplierId;
+            this.supplierName = supplierName;
+            this.email = email;
+            this.itemsChecked = itemsChecked;
+            this.lines = lines;
+            this.units = units;
+            this.file = file;
+        }
+    }
+
+    @FunctionalInterface
+    interface ConnectionSource {
+        Connection borrow() throws SQLException;
+    }
+
+    private final ConnectionSource catalog;
+    private final List<ConnectionSource> orderDatabases;
+    private final Policy policy;
+    private final int threads;
+
+    /**
+     * @param catalog database with Supplier, SuppliedBy, Item and InventoryEntry
+     * @param orderDatabases databases holding Payment and OrderLine: the catalog's, or every shard
+     */
+    ReorderJob(ConnectionSource catalog, List<ConnectionSource> orderDatabases, Policy policy, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        this.catalog = catalog;
+        this.orderDatabases = orderDatabases;
+        this.policy = policy;
+        this.threads = threads;
+    }
+
+    /** Writes the purchase orders dated {@code today} into {@code dir}. */
+    public List<SupplierOrder> run(Path dir, LocalDate today) throws SQLException, IOException {
+        Files.createDirectories(dir);
+        Map<Integer, Long> sold = new HashMap<>();
+        // windowDays calendar days, today included, to match the per-day rate below
+        for (ConnectionSource db : orderDatabases) {
+            addSales(db, today.minusDays(policy.windowDays - 1), sold);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Semaphore inFlight = new Semaphore(threads * 2);
+        List<ForkJoinTask<SupplierOrder>> tasks = new ArrayList<>();
+        long start = System.nanoTime();
+        int rows = 0;
+        try (Connection conn = catalog.borrow();
+             PreparedStatement ps = Main.prepareStreaming(conn, SUPPLIED_STOCK);
+             ResultSet rs = ps.executeQuery()) {
+            int supplierId = 0;
+            String supplierName = null;
+            String email = null;
+            List<Stock> items = new ArrayList<>();
+            while (rs.next()) {
+                rows++;
+                int id = rs.getInt(1);
+                if (id != supplierId && !items.isEmpty()) {
+                    tasks.add(submit(pool, inFlight, supplierId, supplierName, email, items, sold, dir, today));
+                    items = new ArrayList<>();
+                }
+                supplierId = id;
+                supplierName = rs.getString(2);
+                email = rs.getString(3);
+                items.add(new Stock(rs.getInt(4), rs.getString(5), rs.getLong(6)));
+            }
+            if (!items.isEmpty()) {
+                tasks.add(submit(pool, inFlight, supplierId, supplierName, email, items, sold, dir, today));
+            }
+            STOCK_TIMER.record(start, rows);
+        } catch (SQLException e) {
+            STOCK_TIMER.failed(start, e);
+            pool.shutdownNow();
+            throw e;
+        }
+
+        try {
+            List<SupplierOrder> orders = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<SupplierOrder> task : tasks) orders.add(task.get());
+            return orders;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing purchase orders.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException u) throw u.getCause();
+            throw new IOException("Purchase order failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Adds units sold per item since {@code from} in one database to {@code sold}. */
+    private static void addSales(ConnectionSource db, LocalDate from, Map<Integer, Long> sold) throws SQLException {
+        long start = System.nanoTime();
+        int rows = 0;
+        try (Connection conn = db.borrow();
+             PreparedStatement ps = Main.prepareStreaming(conn, SALES_SINCE)) {
+            ps.setDate(1, Date.valueOf(from));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    sold.merge(rs.getInt(1), rs.getLong(2), Long::sum);
+                }
+            }
+            SALES_TIMER.record(start, rows);
+        } catch (SQLException e) {
+            SALES_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    /** Waits for a free slot, then hands the supplier to the pool. */
+    private ForkJoinTask<SupplierOrder> submit(ForkJoinPool pool, Semaphore inFlight, int supplierId, String supplierName,
+                                               String email, List<Stock> items, Map<Integer, Long> sold, Path dir,
+                                               LocalDate today) throws SQLException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while reading stock.", e);
+        }
+        return pool.submit(() -> {
+            try {
+                return writeOrder(supplierId, supplierName, email, items, sold, dir, today);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private SupplierOrder writeOrder(int supplierId, String supplierName, String email, List<Stock> items,
+                                     Map<Integer, Long> sold, Path dir, LocalDate today) {
+        Path file = dir.resolve("PO-" + supplierId + "-" + today.format(FILE_DATE) + ".csv");
+        Path partial = dir.resolve(file.getFileName() + ".part");
+        int lines = 0;
+        long units = 0;
+        try {
+            try (RowWriter out = RowWriter.of(RowWriter.Format.CSV,
+                    new OutputStreamWriter(Files.newOutputStream(partial), StandardCharsets.UTF_8))) {
+                out.begin(COLUMNS);
+                for (Stock item : items) {
+                    long itemSold = sold.getOrDefault(item.itemId, 0L);
+                    if (itemSold == 0) continue;
+                    double perDay = (double) itemSold / policy.windowDays;
+                    long reorderPoint = policy.reorderPoint(perDay);
+                    if (item.onHand > reorderPoint) continue;
+                    long quantity = policy.orderQuantity(perDay, item.onHand);
+                    if (quantity == 0) continue;
+                    out.row().value(item.itemId).value(item.itemName).value(item.onHand).value(itemSold)
+                            .value(BigDecimal.valueOf(perDay).setScale(2, RoundingMode.HALF_UP))
+                            .value(reorderPoint).value(quantity).end();
+                    lines++;
+                    units += quantity;
+                }
+            }
+            // Only complete files appear under their final name; a supplier with nothing to order gets none
+            if (lines == 0) {
+                Files.delete(partial);
+                file = null;
+            } else {
+                Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new SupplierOrder(supplierId, supplierName, email, items.size(), lines, units, file);
+    }
+
+    public static void main(String[] args) {
+        boolean ok = false;
+        try {
+            if (args.length < 1) {
+                System.err.println("Usage: ReorderJob outputDir [threads]");
+                return;
+            }
+            Properties props = Main.loadProperties();
+            if (props == null) return;
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : Integer.parseInt(props.getProperty("reorder.threads", "4"));
+            Policy policy = Policy.fromProperties(props);
+
+            // Stock and suppliers from the primary, where InventoryReservation is current;
+            // sales from wherever orders are
+            ConnectionPool primary = Main.getPool();
+            if (primary == null) throw new SQLException("Connection pool is not available.");
+            ConnectionSource catalog = primary::borrow;
+            List<ConnectionSource> orderDatabases = new ArrayList<>();
+            ShardRouter shards = Main.getShardRouter();
+            if (shards == null) {
+                orderDatabases.add(catalog);
+            } else {
+                for (int k = 0; k < shards.size(); k++) orderDatabases.add(shards.pool(k)::borrow);
+            }
+
+            long start = System.nanoTime();
+            List<SupplierOrder> orders = new ReorderJob(catalog, orderDatabases, policy, threads)
+                    .run(Paths.get(args[0]), LocalDate.now());
+            int items = 0;
+            int files = 0;
+            long units = 0;
+            for (SupplierOrder o : orders) {
+                items += o.itemsChecked;
+                units += o.units;
+                if (o.file == null) continue;
+                files++;
+                System.out.println(o.supplierName + " <" + o.email + ">: " + o.lines + " item(s), "
+                        + o.units + " unit(s) -> " + o.file);
+            }
+            System.out.printf("Checked %d item(s) of %d supplier(s) in %.1f s: %d purchase order(s), %d unit(s).%n",
+                    items, orders.size(), (System.nanoTime() - start) / 1e9, files, units);
+            ok = true;
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: ReorderJob outputDir [threads]");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } catch (SQLException | IOException | UncheckedIOException e) {
+            System.err.println("Reorder job failed: " + e.getMessage());
+        } finally {
+            Main.closeConnection();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,414 @@
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Writes listing rows as console text, CSV or JSON Lines through one large buffer.
+ *
+ * Columns are declared once with {@link #begin}; each row is then a {@link #row()},
+ * one {@code value} call per column and {@link #end()}. Values are written straight
+ * into the buffer: numbers and dates digit by digit, strings character by character
+ * with only the escaping their format needs. No String is built per row or per field.
+ *
+ * Errors from the underlying writer are rethrown as {@link UncheckedIOException} so a
+ * writer can be used inside the {@code Consumer} sinks of {@link DataAccess}.
+ */
+public abstract class RowWriter implements AutoCloseable {
+
+    public enum Format {
+        /** {@code Label: value, Label: value} per line, as the menu has always printed. */
+        TEXT,
+        /** RFC 4180 CSV with a header line. */
+        CSV,
+        /** One JSON object per line, keyed by column name. */
+        JSONL;
+
+        public static Format of(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final int BUFFER_CHARS = 1 << 16;
+
+    protected final Writer out;
+    private final boolean closeOut;
+    private final char[] digits = new char[20];
+    protected String[] columns = new String[0];
+    protected int column;
+
+    protected RowWriter(Writer out, boolean closeOut) {
+        this.out = out;
+        this.closeOut = closeOut;
+    }
+
+    public static RowWriter of(Format format, Writer out) {
+        return of(format, new BufferedWriter(out, BUFFER_CHARS), true);
+    }
+
+    /**
+     * A buffered writer on standard output. It bypasses System.out, which flushes on
+     * every line; closing it flushes but leaves standard output open.
+     */
+    public static RowWriter console(Format format) {
+        System.out.flush(); // Keep the order of anything printed before
+        Charset charset = System.console() != null ? System.console().charset() : Charset.defaultCharset();
+        Writer stdout = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), charset), BUFFER_CHARS);
+        return of(format, stdout, false);
+    }
+
+    private static RowWriter of(Format format, Writer out, boolean closeOut) {
+        return switch (format) {
+            case TEXT -> new Text(out, closeOut);
+            case CSV -> new Csv(out, closeOut);
+            case JSONL -> new JsonLines(out, closeOut);
+        };
+    }
+
+    /** Declares the columns of the rows that follow. */
+    public RowWriter begin(String... columns) {
+        this.columns = columns.clone();
+        try {
+            header();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public RowWriter row() {
+        column = 0;
+        try {
+            startRow();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public void end() {
+        if (column != columns.length) throw new IllegalStateException("Row has " + column + " of " + columns.length + " columns.");
+        try {
+            endRow();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public RowWriter value(int value) {
+        return value((long) value);
+    }
+
+    public RowWriter value(long value) {
+        try {
+            startValue(false);
+            writeLong(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public RowWriter value(String value) {
+        try {
+            if (value == null) {
+                writeNull();
+            } else {
+                startValue(true);
+                writeText(value);
+                endQuoted();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public RowWriter value(BigDecimal value) {
+        try {
+            if (value == null) {
+                writeNull();
+            } else if (value.scale() >= 0 && value.scale() < 19 && value.unscaledValue().bitLength() < 63) {
+                startValue(false);
+                writeDecimal(value.unscaledValue().longValue(), value.scale());
+            } else {
+                startValue(false);
+                out.write(value.toPlainString());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public RowWriter value(Date value) {
+        try {
+            if (value == null) {
+                writeNull();
+            } else {
+                startValue(true);
+                LocalDate date = value.toLocalDate();
+                writePadded(date.getYear(), 4);
+                out.write('-');
+                writePadded(date.getMonthValue(), 2);
+                out.write('-');
+                writePadded(date.getDayOfMonth(), 2);
+                endQuoted();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    private void writeNull() throws IOException {
+        startValue(false);
+        nullValue();
+    }
+
+    private void startValue(boolean quoted) throws IOException {
+        if (column >= columns.length) throw new IllegalStateException("Row already has " + columns.length + " columns.");
+        separator(column, quoted);
+        column++;
+    }
+
+    protected void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            out.write(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    private void writeDecimal(long unscaled, int scale) throws IOException {
+        if (scale == 0) {
+            writeLong(unscaled);
+            return;
+        }
+        if (unscaled < 0) {
+            out.write('-');
+            unscaled = -unscaled;
+        }
+        int pos = digits.length;
+        for (int i = 0; i < scale; i++) {
+            digits[--pos] = (char) ('0' + unscaled % 10);
+            unscaled /= 10;
+        }
+        digits[--pos] = '.';
+        do {
+            digits[--pos] = (char) ('0' + unscaled % 10);
+            unscaled /= 10;
+        } while (unscaled != 0);
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    private void writePadded(int value, int width) throws IOException {
+        int pos = digits.length;
+        do {
+            digits[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0 || digits.length - pos < width);
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    protected void header() throws IOException {
+    }
+
+    protected void startRow() throws IOException {
+    }
+
+    /** Writes whatever precedes value {@code index}; {@code quoted} says whether it is a string. */
+    protected abstract void separator(int index, boolean quoted) throws IOException;
+
+    protected abstract void writeText(String s) throws IOException;
+
+    protected void endQuoted() throws IOException {
+    }
+
+    protected abstract void nullValue() throws IOException;
+
+    protected abstract void endRow() throws IOException;
+
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closeOut) out.close();
+        else out.flush();
+    }
+
+    private static final class Text extends RowWriter {
+        Text(Writer out, boolean closeOut) {
+            super(out, closeOut);
+        }
+
+        @Override
+        protected void separator(int index, boolean quoted) throws IOException {
+            if (index > 0) out.write(", ");
+            out.write(columns[index]);
+            out.write(": ");
+        }
+
+        @Override
+        protected void writeText(String s) throws IOException {
+            out.write(s);
+        }
+
+        @Override
+        protected void nullValue() throws IOException {
+            out.write("null");
+        }
+
+        @Override
+        protected void endRow() throws IOException {
+            out.write(System.lineSeparator());
+        }
+    }
+
+    private static final class Csv extends RowWriter {
+        private boolean quoting;
+
+        Csv(Writer out, boolean closeOut) {
+            super(out, closeOut);
+        }
+
+        @Override
+        protected void header() throws IOException {
+            for (int c = 0; c < columns.length; c++) {
+                if (c > 0) out.write(',');
+                writeField(columns[c]);
+            }
+            out.write("\r\n");
+        }
+
+        @Override
+        protected void separator(int index, boolean quoted) throws IOException {
+            if (index > 0) out.write(',');
+        }
+
+        @Override
+        protected void writeText(String s) throws IOException {
+            writeField(s);
+        }
+
+        private void writeField(String s) throws IOException {
+            quoting = false;
+            for (int i = 0; i < s.length(); i++) {
+                char ch = s.charAt(i);
+                if (ch == ',' || ch == '"' || ch == '\n' || ch == '\r') {
+                    quoting = true;
+                    break;
+                }
+            }
+            if (!quoting) {
+                out.write(s);
+                return;
+            }
+            out.write('"');
+            for (int i = 0; i < s.length(); i++) {
+                char ch = s.charAt(i);
+                if (ch == '"') out.write('"');
+                out.write(ch);
+            }
+            out.write('"');
+        }
+
+        @Override
+        protected void nullValue() {
+            // Empty field
+        }
+
+        @Override
+        protected void endRow() throws IOException {
+            out.write("\r\n");
+        }
+    }
+
+    private static final class JsonLines extends RowWriter {
+        private String[] keys = new String[0];
+
+        JsonLines(Writer out, boolean closeOut) {
+            super(out, closeOut);
+        }
+
+        @Override
+        protected void header() {
+            // Quote the keys once, not on every row
+            keys = new String[columns.length];
+            for (int c = 0; c < columns.length; c++) keys[c] = Json.quote(columns[c]) + ':';
+        }
+
+        @Override
+        protected void startRow() throws IOException {
+            out.write('{');
+        }
+
+        @Override
+        protected void separator(int index, boolean quoted) throws IOException {
+            if (index > 0) out.write(',');
+            out.write(keys[index]);
+            if (quoted) out.write('"');
+        }
+
+        @Override
+        protected void writeText(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) {
+                char ch = s.charAt(i);
+                switch (ch) {
+                    case '"' -> out.write("\\\"");
+                    case '\\' -> out.write("\\\\");
+                    case '\n' -> out.write("\\n");
+                    case '\r' -> out.write("\\r");
+                    case '\t' -> out.write("\\t");
+                    default -> {
+                        if (ch < 0x20) {
+                            out.write("\\u00");
+                            out.write(Character.forDigit(ch >> 4, 16));
+                            out.write(Character.forDigit(ch & 0xF, 16));
+                        } else {
+                            out.write(ch);
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void endQuoted() throws IOException {
+            out.write('"');
+        }
+
+        @Override
+        protected void nullValue() throws IOException {
+            out.write("null");
+        }
+
+        @Override
+        protected void endRow() throws IOException {
+            out.write("}\n");
+        }
+    }
+}
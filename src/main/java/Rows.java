@@ -0,0 +1,147 @@
+import java.math.BigDecimal;
+import java.sql.Date;
+
+/**
+ * Immutable row types for the listing queries.
+ */
+public final class Rows {
+
+    private Rows() {
+    }
+
+    public static final class Item {
+        public final int id;
+        public final String name;
+        public final String category;
+        public final String discount;
+        public final BigDecimal price;
+
+        public Item(int id, String name, String category, String discount, BigDecimal price) {
+            this.id = id;
+            this.name = name;
+            this.category = category;
+            this.discount = discount;
+            this.price = price;
+        }
+    }
+
+    public static final class Order {
+        public final int id;
+        public final int customerId;
+        public final String firstName;
+        public final String lastName;
+
+        public Order(int id, int customerId, String firstName, String lastName) {
+            this.id = id;
+            this.customerId = customerId;
+            this.firstName = firstName;
+            this.lastName = lastName;
+        }
+    }
+
+    public static final class OrderLine {
+        public final int orderId;
+        public final int itemId;
+        public final String itemName;
+        public final int quantity;
+        public final BigDecimal total;
+
+        public OrderLine(int orderId, int itemId, String itemName, int quantity, BigDecimal total) {
+            this.orderId = orderId;
+            this.itemId = itemId;
+            this.itemName = itemName;
+            this.quantity = quantity;
+            this.total = total;
+        }
+    }
+
+    public static final class Payment {
+        public final int id;
+        public final int orderId;
+        public final String paymentType;
+        public final BigDecimal amount;
+        public final Date paymentDate;
+
+        public Payment(int id, int orderId, String paymentType, BigDecimal amount, Date paymentDate) {
+            this.id = id;
+            this.orderId = orderId;
+            this.paymentType = paymentType;
+            this.amount = amount;
+            this.paymentDate = paymentDate;
+        }
+    }
+
+    public static final class Category {
+        public final int id;
+        public final String name;
+        public final String description;
+
+        public Category(int id, String name, String description) {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+        }
+    }
+
+    public static final class Discount {
+        public final int id;
+        public final String description;
+        public final String discountType;
+        public final Date startDate;
+        public final Date endDate;
+
+        public Discount(int id, String description, String discountType, Date startDate, Date endDate) {
+            this.id = id;
+            this.description = description;
+            this.discountType = discountType;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+    }
+
+    public static final class Customer {
+        public final int id;
+        public final String firstName;
+        public final String lastName;
+        public final String phone;
+        public final String email;
+
+        public Customer(int id, String firstName, String lastName, String phone, String email) {
+            this.id = id;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.phone = phone;
+            this.email = email;
+        }
+    }
+
+    public static final class SalesSummary {
+        public final int customerId;
+        public final String customerName;
+        public final int orderCount;
+        public final BigDecimal totalSpent;
+        public final BigDecimal averageOrderValue;
+
+        public SalesSummary(int customerId, String customerName, int orderCount, BigDecimal totalSpent, BigDecimal averageOrderValue) {
+            this.customerId = customerId;
+            this.customerName = customerName;
+            this.orderCount = orderCount;
+            this.totalSpent = totalSpent;
+            this.averageOrderValue = averageOrderValue;
+        }
+    }
+
+    public static final class InventoryEntry {
+        public final int id;
+        public final int itemId;
+        public final int quantity;
+        public final Date stockDate;
+
+        public InventoryEntry(int id, int itemId, int quantity, Date stockDate) {
+            this.id = id;
+            this.itemId = itemId;
+            this.quantity = quantity;
+            this.stockDate = stockDate;
+        }
+    }
+}
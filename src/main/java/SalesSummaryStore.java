@@ -0,0 +1,375 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Per-customer sales totals kept in the CustomerSalesSummary table.
+ *
+ * The SalesSummary view re-aggregates every order line on each read. This store is
+ * updated by the order-placement transaction instead ({@link #recordOrder}), so reads
+ * touch one row per customer, and {@link #top} reads only N rows through the
+ * TotalSpent index. {@link #backfill} rebuilds the table from the view once,
+ * {@link #check} compares the two to catch drift (for example order lines removed
+ * by a cascading delete), and {@link #repair} recomputes just the customers that drifted.
+ */
+public class SalesSummaryStore implements AutoCloseable {
+
+    private static final String RECORD_ORDER = """
+            INSERT INTO CustomerSalesSummary (CustomerID, OrderCount, TotalSpent)
+            VALUES (?, 1, ?)
+            ON DUPLICATE KEY UPDATE
+                OrderCount = OrderCount + 1,
+                TotalSpent = TotalSpent + VALUES(TotalSpent)
+            """;
+
+    private static final String BACKFILL = """
+            INSERT INTO CustomerSalesSummary (CustomerID, OrderCount, TotalSpent)
+            SELECT CustomerID, OrderCount, COALESCE(TotalSpent, 0)
+            FROM SalesSummary
+            WHERE OrderCount > 0
+            """;
+
+    static final String STORED_CUSTOMER = "SELECT OrderCount, TotalSpent FROM CustomerSalesSummary WHERE CustomerID = ?";
+
+    // The SalesSummary view's OrderCount and TotalSpent for one customer
+    static final String EXPECTED_CUSTOMER = """
+            SELECT COUNT(DISTINCT o.ID), SUM(ol.Total)
+            FROM Orders o
+            LEFT JOIN OrderLine ol ON ol.OrderID = o.ID
+            WHERE o.CustomerID = ?
+            """;
+
+    private static final String REPAIR_DELETE = "DELETE FROM CustomerSalesSummary WHERE CustomerID = ?";
+
+    private static final String REPAIR_INSERT = """
+            INSERT INTO CustomerSalesSummary (CustomerID, OrderCount, TotalSpent)
+            SELECT o.CustomerID, COUNT(DISTINCT o.ID), COALESCE(SUM(ol.Total), 0)
+            FROM Orders o
+            LEFT JOIN OrderLine ol ON ol.OrderID = o.ID
+            WHERE o.CustomerID = ?
+            GROUP BY o.CustomerID
+            """;
+
+    private static final int REPAIR_ATTEMPTS = 3;
+
+    @FunctionalInterface
+    private interface Reads {
+        void run() throws SQLException;
+    }
+
+    // Same columns and order as the SalesSummary view
+    static final String LIST_ALL = """
+            SELECT
+                c.ID,
+                CONCAT(c.FirstName, ' ', c.LastName),
+                COALESCE(s.OrderCount, 0),
+                s.TotalSpent,
+                s.TotalSpent / NULLIF(s.OrderCount, 0)
+            FROM Customer c
+            LEFT JOIN CustomerSalesSummary s ON s.CustomerID = c.ID
+            ORDER BY s.TotalSpent DESC
+            """;
+
+    static final String LIST_TOP = """
+            SELECT
+                c.ID,
+                CONCAT(c.FirstName, ' ', c.LastName),
+                s.OrderCount,
+                s.TotalSpent,
+                s.TotalSpent / NULLIF(s.OrderCount, 0)
+            FROM CustomerSalesSummary s
+            JOIN Customer c ON c.ID = s.CustomerID
+            ORDER BY s.TotalSpent DESC
+            LIMIT ?
+            """;
+
+    private static final QueryMetrics.Timer RECORD_ORDER_TIMER = QueryMetrics.timer("SalesSummaryStore.recordOrder");
+
+    private final ConnectionPool pool;
+    private ScheduledExecutorService checker;
+
+    public SalesSummaryStore(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Adds one committed order to its customer's totals. Must run inside the order's transaction.
+     */
+    public void recordOrder(Connection conn, int customerId, BigDecimal orderTotal) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = StatementCache.of(conn).prepare(RECORD_ORDER);
+            ps.setInt(1, customerId);
+            ps.setBigDecimal(2, orderTotal);
+            RECORD_ORDER_TIMER.record(start, ps.executeUpdate());
+        } catch (SQLException e) {
+            RECORD_ORDER_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Rebuilds the table from the SalesSummary view in one transaction.
+     *
+     * @return the number of customers with orders
+     */
+    public int backfill() throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement delete = conn.prepareStatement("DELETE FROM CustomerSalesSummary");
+                 PreparedStatement insert = conn.prepareStatement(BACKFILL)) {
+                delete.executeUpdate();
+                int rows = insert.executeUpdate();
+                conn.commit();
+                QueryMetrics.commit();
+                return rows;
+            } catch (SQLException e) {
+                conn.rollback();
+                QueryMetrics.rollback();
+                QueryMetrics.error(e);
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /** Every customer, highest spend first, like {@code SELECT * FROM SalesSummary}. */
+    public int forEach(Connection conn, Consumer<Rows.SalesSummary> sink) throws SQLException {
+        int count = 0;
+        try (ResultSet rs = StatementCache.of(conn).prepareStreaming(LIST_ALL).executeQuery()) {
+            while (rs.next()) {
+                sink.accept(read(rs));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** The {@code n} customers with the highest spend, read through the TotalSpent index. */
+    public List<Rows.SalesSummary> top(Connection conn, int n) throws SQLException {
+        PreparedStatement ps = StatementCache.of(conn).prepare(LIST_TOP);
+        ps.setInt(1, n);
+        List<Rows.SalesSummary> rows = new ArrayList<>(n);
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) rows.add(read(rs));
+        }
+        return rows;
+    }
+
+    private static Rows.SalesSummary read(ResultSet rs) throws SQLException {
+        return new Rows.SalesSummary(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getBigDecimal(4), rs.getBigDecimal(5));
+    }
+
+    /**
+     * Compares the store with the SalesSummary view.
+     *
+     * @return one line per customer whose order count or total differs; empty if consistent
+     */
+    public List<String> check() throws SQLException {
+        return new ArrayList<>(drifted().values());
+    }
+
+    /**
+     * Customers whose stored totals differ from the view, with a description of each.
+     *
+     * Both sides are read in one REPEATABLE READ transaction, so an order committing during
+     * the comparison is either in both or in neither. Each difference is then checked again
+     * on its own; only customers that still differ are returned.
+     */
+    Map<Integer, String> drifted() throws SQLException {
+        Map<Integer, Rows.SalesSummary> stored = new HashMap<>();
+        List<Integer> suspects = new ArrayList<>();
+        Map<Integer, String> drifted = new LinkedHashMap<>();
+        try (Connection conn = pool.borrow()) {
+            inSnapshot(conn, () -> {
+                forEach(conn, row -> stored.put(row.customerId, row));
+                DataAccess.on(conn).salesSummary(expected -> {
+                    Rows.SalesSummary actual = stored.get(expected.customerId);
+                    if (actual == null || !same(actual.orderCount, actual.totalSpent, expected.orderCount, expected.totalSpent)) {
+                        suspects.add(expected.customerId);
+                    }
+                });
+            });
+            stored.clear();
+            for (int customerId : suspects) {
+                String mismatch = checkCustomer(conn, customerId);
+                if (mismatch != null) drifted.put(customerId, mismatch);
+            }
+        }
+        return drifted;
+    }
+
+    /** Compares one customer's stored row with the view in one snapshot; null if they agree. */
+    private static String checkCustomer(Connection conn, int customerId) throws SQLException {
+        int[] counts = new int[2];
+        BigDecimal[] totals = new BigDecimal[2];
+        inSnapshot(conn, () -> {
+            try (PreparedStatement ps = conn.prepareStatement(STORED_CUSTOMER)) {
+                ps.setInt(1, customerId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        counts[0] = rs.getInt(1);
+                        totals[0] = rs.getBigDecimal(2);
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(EXPECTED_CUSTOMER)) {
+                ps.setInt(1, customerId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    counts[1] = rs.getInt(1);
+                    totals[1] = rs.getBigDecimal(2);
+                }
+            }
+        });
+        if (same(counts[0], totals[0], counts[1], totals[1])) return null;
+        return "Customer " + customerId + ": view " + counts[1] + " orders / " + totals[1]
+                + ", store " + counts[0] + " orders / " + totals[0];
+    }
+
+    /** Runs {@code reads} in one REPEATABLE READ transaction so they all see the same snapshot. */
+    private static void inSnapshot(Connection conn, Reads reads) throws SQLException {
+        int isolation = conn.getTransactionIsolation();
+        conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        conn.setAutoCommit(false);
+        try {
+            reads.run();
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+            conn.setTransactionIsolation(isolation);
+        }
+    }
+
+    /**
+     * Recomputes the given customers' rows from Orders and OrderLine, one transaction per
+     * customer. The recomputing read locks the customer's orders, so an order placed
+     * meanwhile waits and is then added on top.
+     *
+     * @return the number of customers repaired
+     */
+    public int repair(Collection<Integer> customerIds) throws SQLException {
+        int repaired = 0;
+        try (Connection conn = pool.borrow()) {
+            for (int customerId : customerIds) {
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        repairCustomer(conn, customerId);
+                        repaired++;
+                        break;
+                    } catch (SQLException e) {
+                        if (!OrderService.isRetryable(e) || attempt >= REPAIR_ATTEMPTS) throw e;
+                    }
+                }
+            }
+        }
+        return repaired;
+    }
+
+    private static void repairCustomer(Connection conn, int customerId) throws SQLException {
+        conn.setAutoCommit(false);
+        try (PreparedStatement delete = conn.prepareStatement(REPAIR_DELETE);
+             PreparedStatement insert = conn.prepareStatement(REPAIR_INSERT)) {
+            delete.setInt(1, customerId);
+            delete.executeUpdate();
+            insert.setInt(1, customerId);
+            insert.executeUpdate();
+            conn.commit();
+            QueryMetrics.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            QueryMetrics.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /** A customer with orders but no lines is stored with 0 where the view has NULL. */
+    private static boolean same(int count, BigDecimal total, int expectedCount, BigDecimal expectedTotal) {
+        return count == expectedCount && sameAmount(total, expectedTotal);
+    }
+
+    private static boolean sameAmount(BigDecimal a, BigDecimal b) {
+        return Objects.requireNonNullElse(a, BigDecimal.ZERO).compareTo(Objects.requireNonNullElse(b, BigDecimal.ZERO)) == 0;
+    }
+
+    /**
+     * Checks the store every {@code intervalMs} and repairs the customers that drifted.
+     */
+    public synchronized void startConsistencyCheck(long intervalMs) {
+        if (checker != null || intervalMs <= 0) return;
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sales-summary-check");
+            t.setDaemon(true);
+            return t;
+        });
+        checker.scheduleWithFixedDelay(() -> {
+            try {
+                Map<Integer, String> drifted = drifted();
+                if (!drifted.isEmpty()) {
+                    System.err.println("Sales summary drifted for " + drifted.size() + " customer(s), repairing: "
+                            + drifted.values().iterator().next());
+                    repair(drifted.keySet());
+                }
+            } catch (SQLException e) {
+                System.err.println("Sales summary check failed: " + e.getMessage());
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+            checker = null;
+        }
+    }
+
+    /**
+     * Usage: SalesSummaryStore backfill|check|repair
+     */
+    public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "check";
+        ConnectionPool pool = Main.getPool();
+        if (pool == null) {
+            System.out.println("Failed to connect to database.");
+            return;
+        }
+        try (SalesSummaryStore store = new SalesSummaryStore(pool)) {
+            if (command.equals("backfill")) {
+                System.out.println("Backfilled sales summary for " + store.backfill() + " customers.");
+            } else if (command.equals("repair")) {
+                Map<Integer, String> drifted = store.drifted();
+                drifted.values().forEach(System.out::println);
+                System.out.println("Repaired sales summary for " + store.repair(drifted.keySet()) + " customer(s).");
+            } else {
+                List<String> mismatches = store.check();
+                mismatches.forEach(System.out::println);
+                System.out.println(mismatches.isEmpty() ? "Sales summary is consistent with the view."
+                        : mismatches.size() + " customer(s) differ from the view.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Sales summary " + command + " failed: " + e.getMessage());
+        } finally {
+            Main.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,433 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Spreads customers, with their Orders, OrderLine and Payment rows, over several databases.
+ *
+ * Shards are configured as {@code db.shard.1.url}, {@code db.shard.2.url}, ... (with
+ * optional {@code .username} and {@code .password}); each gets its own pool. Customer
+ * {@code c} lives on shard {@code c mod N}, counting from 0 for {@code db.shard.1}, and
+ * everything hanging off that customer is written and read there. The primary
+ * ({@code db.url}) keeps the master copy of Item, Category and Discount, and
+ * InventoryEntry, which is shared by all customers.
+ *
+ * Every shard has the full schema. Category, Discount and Item are copied to all shards by
+ * {@link #syncReferenceData}, so OrderLine's foreign key and the listing joins work
+ * locally; a Customer row is copied to its own shard only. Order IDs stay unique across
+ * shards: shard {@code k} of {@code N} hands out AUTO_INCREMENT values {@code k+1},
+ * {@code k+1+N}, ... through session variables set when its connections are opened.
+ *
+ * Listings over all customers run on every shard at once and are merged as they stream,
+ * in the order each shard's query already returns; see {@link #gather}.
+ *
+ * The number of shards is fixed once data is written: changing it moves customers to
+ * other shards, and their orders would have to be moved with them.
+ *
+ * Usage: ShardRouter [status|sync]
+ */
+public class ShardRouter implements AutoCloseable {
+
+    private static final QueryMetrics.Timer GATHER_TIMER = QueryMetrics.timer("ShardRouter.gather");
+    private static final QueryMetrics.Timer SYNC_TIMER = QueryMetrics.timer("ShardRouter.syncReferenceData");
+
+    /** Rows handed from each shard's reader to the merge before the reader waits. */
+    private static final int GATHER_BUFFER = 1024;
+
+    private static final int SYNC_BATCH = 1000;
+
+    /** Marks the end of one shard's rows in its buffer. */
+    private static final Object END = new Object();
+
+    /** A table copied from the primary, with its key first. */
+    private static final class ReferenceTable {
+        final String name;
+        final String[] columns;
+
+        ReferenceTable(String name, String... columns) {
+            this.name = name;
+            this.columns = columns;
+        }
+
+        String select() {
+            return "SELECT " + String.join(", ", columns) + " FROM " + name + " ORDER BY " + columns[0];
+        }
+
+        String selectOne() {
+            return "SELECT " + String.join(", ", columns) + " FROM " + name + " WHERE " + columns[0] + " = ?";
+        }
+
+        String upsert() {
+            StringBuilder sb = new StringBuilder("INSERT INTO ").append(name).append(" (").append(String.join(", ", columns))
+                    .append(") VALUES (").append(String.join(", ", Collections.nCopies(columns.length, "?"))).append(")")
+                    .append(" ON DUPLICATE KEY UPDATE ");
+            for (int c = 1; c < columns.length; c++) {
+                if (c > 1) sb.append(", ");
+                sb.append(columns[c]).append(" = VALUES(").append(columns[c]).append(')');
+            }
+            return sb.toString();
+        }
+    }
+
+    // In foreign key order
+    private static final ReferenceTable CATEGORY = new ReferenceTable("Category", "ID", "Name", "Description");
+    private static final ReferenceTable DISCOUNT = new ReferenceTable("Discount", "ID", "Description", "discountType", "startDate", "endDate");
+    private static final ReferenceTable ITEM = new ReferenceTable("Item", "ID", "Name", "Price", "CategoryID", "DiscountID");
+    private static final ReferenceTable CUSTOMER = new ReferenceTable("Customer", "ID", "FirstName", "LastName", "Phone", "Email");
+
+    private final List<ConnectionPool> shards = new ArrayList<>();
+    private final ExecutorService executor;
+
+    /**
+     * Opens a pool for each {@code db.shard.N.url} of app.properties.
+     *
+     * @throws IllegalArgumentException if no shard is configured
+     */
+    public ShardRouter(Properties props) throws SQLException {
+        int count = 0;
+        while (props.getProperty("db.shard." + (count + 1) + ".url") != null) count++;
+        if (count == 0) throw new IllegalArgumentException("No db.shard.1.url configured.");
+
+        try {
+            for (int k = 0; k < count; k++) {
+                String prefix = "db.shard." + (k + 1);
+                String url = props.getProperty(prefix + ".url");
+                // Interleave AUTO_INCREMENT so order IDs never collide between shards
+                Properties shardProps = new Properties();
+                shardProps.putAll(props);
+                shardProps.setProperty(prefix + ".url", url + (url.contains("?") ? "&" : "?")
+                        + "sessionVariables=auto_increment_increment=" + count + ",auto_increment_offset=" + (k + 1));
+                shards.add(ConnectionPool.fromProperties(shardProps, prefix));
+            }
+        } catch (SQLException | RuntimeException e) {
+            for (ConnectionPool pool : shards) pool.close();
+            throw e;
+        }
+
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "shard-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    /** Index of the shard that holds {@code customerId}. */
+    public int shardOf(int customerId) {
+        return Math.floorMod(customerId, shards.size());
+    }
+
+    public ConnectionPool pool(int shard) {
+        return shards.get(shard);
+    }
+
+    /** Pool of the shard that holds {@code customerId}'s orders and payments. */
+    public ConnectionPool forCustomer(int customerId) {
+        return shards.get(shardOf(customerId));
+    }
+
+    // ===== Scatter-gather =====
+
+    /**
+     * Runs {@code source} on every shard in parallel and merges the rows into {@code sink}.
+     * Each shard's rows must already be sorted by {@code order}; the merged stream is then
+     * sorted too. Each shard reads ahead at most {@link #GATHER_BUFFER} rows, so memory
+     * does not grow with the result.
+     *
+     * @return rows delivered
+     */
+    public <T> int gather(Listings.Source<T> source, Comparator<? super T> order, Consumer<T> sink) throws SQLException {
+        long start = System.nanoTime();
+        List<BlockingQueue<Object>> buffers = new ArrayList<>(shards.size());
+        SQLException[] failures = new SQLException[shards.size()];
+        List<Future<?>> readers = new ArrayList<>(shards.size());
+        for (int k = 0; k < shards.size(); k++) {
+            BlockingQueue<Object> buffer = new ArrayBlockingQueue<>(GATHER_BUFFER);
+            buffers.add(buffer);
+            int shard = k;
+            readers.add(executor.submit(() -> read(shard, source, buffer, failures)));
+        }
+
+        int rows = 0;
+        try {
+            // One head row per shard; the smallest goes next, then that shard's following row replaces it
+            PriorityQueue<Head<T>> heads = new PriorityQueue<>(shards.size(), (a, b) -> order.compare(a.row, b.row));
+            for (int k = 0; k < shards.size(); k++) {
+                Head<T> head = next(k, buffers.get(k));
+                if (head != null) heads.add(head);
+            }
+            while (!heads.isEmpty()) {
+                Head<T> head = heads.poll();
+                sink.accept(head.row);
+                rows++;
+                Head<T> following = next(head.shard, buffers.get(head.shard));
+                if (following != null) heads.add(following);
+            }
+            for (SQLException failure : failures) {
+                if (failure != null) throw failure;
+            }
+            GATHER_TIMER.record(start, rows);
+            return rows;
+        } catch (SQLException | RuntimeException e) {
+            GATHER_TIMER.failed(start);
+            throw e;
+        } finally {
+            // Stop readers still streaming if the merge gave up early
+            for (Future<?> reader : readers) reader.cancel(true);
+        }
+    }
+
+    private static final class Head<T> {
+        final int shard;
+        final T row;
+
+        Head(int shard, T row) {
+            this.shard = shard;
+            this.row = row;
+        }
+    }
+
+    private <T> void read(int shard, Listings.Source<T> source, BlockingQueue<Object> buffer, SQLException[] failures) {
+        try (Connection conn = shards.get(shard).borrow()) {
+            source.list(conn, row -> {
+                try {
+                    buffer.put(row);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Cancelled", e);
+                }
+            });
+            buffer.put(END);
+            return;
+        } catch (SQLException e) {
+            failures[shard] = e;
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) return; // The merge gave up and no longer reads
+            failures[shard] = new SQLException("Shard " + (shard + 1) + " failed: " + e, e);
+        } catch (InterruptedException e) {
+            return;
+        }
+        // Make room for the marker; the merge fails once it sees the error anyway
+        buffer.clear();
+        buffer.offer(END);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Head<T> next(int shard, BlockingQueue<Object> buffer) throws SQLException {
+        try {
+            Object row = buffer.take();
+            return row == END ? null : new Head<>(shard, (T) row);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while merging shard results.", e);
+        }
+    }
+
+    // ===== Reference data =====
+
+    /**
+     * Copies Category, Discount and Item from the primary to every shard, and each Customer
+     * to its own shard. Rows are upserted in batches. Rows a shard should not have (deleted
+     * on the primary, or a customer of another shard) are deleted, and the foreign keys
+     * cascade to their orders, as they would on the primary. Safe to run at any time, and
+     * the first run on shards created from create_and_populate.sql leaves each with its own
+     * sample customers only.
+     *
+     * @return rows upserted, over all shards
+     */
+    public int syncReferenceData(ConnectionPool primary) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection source = primary.borrow()) {
+            int rows = 0;
+            for (ReferenceTable table : new ReferenceTable[]{CATEGORY, DISCOUNT, ITEM, CUSTOMER}) {
+                rows += copy(source, table);
+            }
+            SYNC_TIMER.record(start, rows);
+            return rows;
+        } catch (SQLException e) {
+            SYNC_TIMER.failed(start, e);
+            throw e;
+        }
+    }
+
+    private int copy(Connection source, ReferenceTable table) throws SQLException {
+        boolean perCustomer = table == CUSTOMER;
+        List<Connection> targets = new ArrayList<>(shards.size());
+        List<PreparedStatement> upserts = new ArrayList<>(shards.size());
+        int[] pending = new int[shards.size()];
+        List<Set<Integer>> keys = new ArrayList<>(shards.size());
+        int rows = 0;
+        try {
+            for (ConnectionPool pool : shards) {
+                Connection conn = pool.borrow();
+                targets.add(conn);
+                conn.setAutoCommit(false);
+                upserts.add(conn.prepareStatement(table.upsert()));
+                keys.add(new HashSet<>());
+            }
+
+            try (PreparedStatement ps = Main.prepareStreaming(source, table.select());
+                 ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    for (int k = 0; k < shards.size(); k++) {
+                        if (perCustomer && k != shardOf(id)) continue;
+                        PreparedStatement upsert = upserts.get(k);
+                        for (int c = 1; c <= meta.getColumnCount(); c++) upsert.setObject(c, rs.getObject(c));
+                        upsert.addBatch();
+                        keys.get(k).add(id);
+                        rows++;
+                        if (++pending[k] == SYNC_BATCH) {
+                            upsert.executeBatch();
+                            targets.get(k).commit();
+                            pending[k] = 0;
+                        }
+                    }
+                }
+            }
+
+            for (int k = 0; k < shards.size(); k++) {
+                if (pending[k] > 0) upserts.get(k).executeBatch();
+                deleteMissing(targets.get(k), table, keys.get(k));
+                targets.get(k).commit();
+            }
+            return rows;
+        } catch (SQLException | RuntimeException e) {
+            for (Connection conn : targets) conn.rollback();
+            throw e;
+        } finally {
+            for (PreparedStatement ps : upserts) ps.close();
+            for (Connection conn : targets) {
+                conn.setAutoCommit(true);
+                conn.close();
+            }
+        }
+    }
+
+    /** Deletes the shard's rows whose key is not in {@code keep}. */
+    private static void deleteMissing(Connection conn, ReferenceTable table, Set<Integer> keep) throws SQLException {
+        List<Integer> stale = new ArrayList<>();
+        try (PreparedStatement ps = Main.prepareStreaming(conn, "SELECT " + table.columns[0] + " FROM " + table.name);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                if (!keep.contains(rs.getInt(1))) stale.add(rs.getInt(1));
+            }
+        }
+        if (stale.isEmpty()) return;
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + table.name + " WHERE " + table.columns[0] + " = ?")) {
+            for (int id : stale) {
+                ps.setInt(1, id);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /** {@link #syncReferenceData} in the background, after a bulk change on the primary. */
+    public void syncReferenceDataLater(ConnectionPool primary) {
+        executor.execute(() -> {
+            try {
+                syncReferenceData(primary);
+            } catch (SQLException e) {
+                System.err.println("Could not copy reference data to the shards (run ShardRouter sync): " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Copies one item from the primary to every shard in the background, or deletes it
+     * there if the primary no longer has it.
+     */
+    public void replicateItem(ConnectionPool primary, int itemId) {
+        executor.execute(() -> {
+            try (Connection source = primary.borrow();
+                 PreparedStatement ps = source.prepareStatement(ITEM.selectOne())) {
+                ps.setInt(1, itemId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    boolean exists = rs.next();
+                    for (ConnectionPool pool : shards) {
+                        try (Connection conn = pool.borrow();
+                             PreparedStatement write = conn.prepareStatement(exists ? ITEM.upsert() : "DELETE FROM Item WHERE ID = ?")) {
+                            if (exists) {
+                                for (int c = 1; c <= ITEM.columns.length; c++) write.setObject(c, rs.getObject(c));
+                            } else {
+                                write.setInt(1, itemId);
+                            }
+                            write.executeUpdate();
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                System.err.println("Could not copy item " + itemId + " to the shards (run ShardRouter sync): " + e.getMessage());
+            }
+        });
+    }
+
+    public String describe() {
+        StringBuilder sb = new StringBuilder("Shards: " + shards.size());
+        for (int k = 0; k < shards.size(); k++) {
+            sb.append(String.format("%ndb.shard.%d: %s", k + 1, shards.get(k).describe()));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (ConnectionPool pool : shards) pool.close();
+    }
+
+    public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "status";
+        boolean failed = false;
+        try {
+            ShardRouter router = Main.getShardRouter();
+            ConnectionPool primary = Main.getPool();
+            if (router == null || primary == null) throw new SQLException("No shards configured (db.shard.1.url).");
+            switch (command) {
+                case "status" -> {
+                    for (int k = 0; k < router.size(); k++) {
+                        try (Connection conn = router.pool(k).borrow();
+                             Statement stmt = conn.createStatement();
+                             ResultSet rs = stmt.executeQuery("SELECT (SELECT COUNT(*) FROM Customer), (SELECT COUNT(*) FROM Orders), (SELECT COUNT(*) FROM Item)")) {
+                            rs.next();
+                            System.out.printf("db.shard.%d: %d customers, %d orders, %d items%n", k + 1, rs.getLong(1), rs.getLong(2), rs.getLong(3));
+                        }
+                    }
+                }
+                case "sync" -> System.out.println("Copied " + router.syncReferenceData(primary) + " reference row(s).");
+                default -> {
+                    System.err.println("Usage: ShardRouter [status|sync]");
+                    failed = true;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Shard command failed: " + e.getMessage());
+            failed = true;
+        } finally {
+            Main.closeConnection();
+        }
+        System.exit(failed ? 1 : 0);
+    }
+}
@@ -0,0 +1,148 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Order placement when customers are spread over shards by {@link ShardRouter}.
+ *
+ * The order and its lines are written on the customer's shard, priced from the shard's
+ * copy of Item. Stock stays on the primary, so one order is two transactions:
+ * <ol>
+ * <li>on the shard, insert Orders and OrderLine, without committing;</li>
+ * <li>on the primary, call UpdateInventoryOnSale for each item and commit;</li>
+ * <li>commit the shard.</li>
+ * </ol>
+ * If the stock update fails, the shard rolls back and nothing happened. If the shard
+ * commit fails after stock was taken, the stock is put back on the primary. Only a crash
+ * between steps 2 and 3 leaves stock taken for an order that does not exist: the shop
+ * may undersell, but never oversells.
+ *
+ * The inventory ledger, group commit and incremental sales summary work on a single
+ * database and are not used with shards.
+ */
+public class ShardedOrderService extends OrderService {
+
+    private static final QueryMetrics.Timer PLACE_ORDER_TIMER = QueryMetrics.timer("ShardedOrderService.placeOrder");
+    private static final QueryMetrics.Timer RESTOCK_TIMER = QueryMetrics.timer("ShardedOrderService.restock");
+
+    /** Undoes UpdateInventoryOnSale on the entry it decremented. */
+    static final String RESTOCK = """
+            UPDATE InventoryEntry
+            SET Quantity = Quantity + ?
+            WHERE ItemID = ?
+            ORDER BY StockDate DESC
+            LIMIT 1
+            """;
+
+    private final ConnectionPool primary;
+    private final ShardRouter shards;
+
+    public ShardedOrderService(ConnectionPool primary, ShardRouter shards) {
+        super(primary);
+        this.primary = primary;
+        this.shards = shards;
+    }
+
+    @Override
+    public int placeOrder(int customerId, List<Line> lines) throws SQLException {
+        try (Connection conn = primary.borrow()) {
+            return placeOrder(conn, customerId, lines);
+        }
+    }
+
+    /**
+     * Places an order on the customer's shard, taking stock through {@code conn}, which must
+     * be a primary connection. Retries on deadlock and lock wait timeout.
+     */
+    @Override
+    public int placeOrder(Connection conn, int customerId, List<Line> lines) throws SQLException {
+        Map<Integer, Integer> quantities = mergeLines(lines);
+        long start = System.nanoTime();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                int orderId = placeOrderOnce(conn, customerId, quantities);
+                PLACE_ORDER_TIMER.record(start, quantities.size());
+                return orderId;
+            } catch (SQLException e) {
+                if (!isRetryable(e) || attempt >= maxAttempts) {
+                    PLACE_ORDER_TIMER.failed(start, e);
+                    throw e;
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    private int placeOrderOnce(Connection primaryConn, int customerId, Map<Integer, Integer> quantities) throws SQLException {
+        try (Connection shardConn = shards.forCustomer(customerId).borrow()) {
+            shardConn.setAutoCommit(false);
+            try {
+                DataAccess shard = DataAccess.on(shardConn);
+                int orderId = shard.insertOrder(customerId);
+                Map<Integer, BigDecimal> prices = shard.itemPrices(quantities.keySet());
+                for (int itemId : quantities.keySet()) {
+                    if (!prices.containsKey(itemId)) throw new SQLException("Item not found: " + itemId);
+                }
+                shard.insertOrderLines(orderId, quantities, prices);
+
+                takeStock(primaryConn, quantities);
+                try {
+                    shardConn.commit();
+                } catch (SQLException e) {
+                    putBackStock(primaryConn, orderId, quantities);
+                    throw e;
+                }
+                QueryMetrics.commit();
+                return orderId;
+            } catch (SQLException | RuntimeException e) {
+                shardConn.rollback();
+                QueryMetrics.rollback();
+                throw e;
+            } finally {
+                shardConn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /** Decrements stock for every line in one primary transaction. */
+    private static void takeStock(Connection conn, Map<Integer, Integer> quantities) throws SQLException {
+        DataAccess db = DataAccess.on(conn);
+        conn.setAutoCommit(false);
+        try {
+            for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+                if (!db.updateInventoryOnSale(e.getKey(), e.getValue())) {
+                    throw new SQLException("Insufficient inventory for item " + e.getKey() + ".");
+                }
+            }
+            conn.commit();
+            QueryMetrics.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            QueryMetrics.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void putBackStock(Connection conn, int orderId, Map<Integer, Integer> quantities) {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = StatementCache.of(conn).prepare(RESTOCK);
+            for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+                ps.setInt(1, e.getValue());
+                ps.setInt(2, e.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            RESTOCK_TIMER.record(start, quantities.size());
+        } catch (SQLException e) {
+            RESTOCK_TIMER.failed(start, e);
+            System.err.println("Order " + orderId + " was not saved, and its stock could not be put back: "
+                    + quantities + " (" + e.getMessage() + ")");
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepared statements of one physical connection, prepared on first use and reused after.
+ *
+ * Callers must not close the statements they get from here; they stay open for the
+ * life of the connection and are closed with it. A connection is only used by one
+ * thread at a time, so the cache needs no locking. The least recently used statement
+ * is closed once more than {@code MAX_STATEMENTS} distinct SQL strings are cached.
+ */
+public final class StatementCache implements AutoCloseable {
+
+    private static final int MAX_STATEMENTS = 64;
+
+    private final Connection physical;
+    private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= MAX_STATEMENTS) return false;
+            closeQuietly(eldest.getValue());
+            return true;
+        }
+    };
+
+    StatementCache(Connection physical) {
+        this.physical = physical;
+    }
+
+    /**
+     * Returns the statement cache of a pooled connection, or of a connection returned by
+     * {@link #wrap}. Any other connection has nowhere to keep its cache.
+     *
+     * @throws IllegalArgumentException if the connection is neither
+     */
+    public static StatementCache of(Connection conn) {
+        if (conn instanceof ConnectionPool.Leased) {
+            return ((ConnectionPool.Leased) conn).statementCache();
+        }
+        throw new IllegalArgumentException("Connection has no statement cache; borrow it from a ConnectionPool or wrap it with StatementCache.wrap.");
+    }
+
+    /**
+     * Wraps a connection that did not come from a ConnectionPool so that it carries its own
+     * statement cache. Closing the wrapper closes the cached statements, then the connection.
+     */
+    public static Connection wrap(Connection physical) {
+        StatementCache cache = new StatementCache(physical);
+        return (Connection) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[]{Connection.class, ConnectionPool.Leased.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "statementCache":
+                            return cache;
+                        case "close":
+                            cache.close();
+                            break;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            break;
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null || ps.isClosed()) {
+            ps = physical.prepareStatement(sql);
+            statements.put(sql, ps);
+        }
+        ps.clearParameters();
+        return ps;
+    }
+
+    /** Like {@link #prepare(String)}, but the statement returns generated keys. */
+    public PreparedStatement prepareWithKeys(String sql) throws SQLException {
+        String key = "KEYS:" + sql;
+        PreparedStatement ps = statements.get(key);
+        if (ps == null || ps.isClosed()) {
+            ps = physical.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            statements.put(key, ps);
+        }
+        ps.clearParameters();
+        return ps;
+    }
+
+    /** Like {@link #prepare(String)}, but forward-only and streamed row by row (see Main.prepareStreaming). */
+    public PreparedStatement prepareStreaming(String sql) throws SQLException {
+        String key = "STREAM:" + sql;
+        PreparedStatement ps = statements.get(key);
+        if (ps == null || ps.isClosed()) {
+            ps = physical.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            statements.put(key, ps);
+        }
+        ps.clearParameters();
+        return ps;
+    }
+
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        String key = "CALL:" + sql;
+        PreparedStatement ps = statements.get(key);
+        if (ps == null || ps.isClosed()) {
+            ps = physical.prepareCall(sql);
+            statements.put(key, ps);
+        }
+        ps.clearParameters();
+        return (CallableStatement) ps;
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    @Override
+    public void close() {
+        for (PreparedStatement ps : statements.values()) {
+            closeQuietly(ps);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(Statement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing cached statement: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Admission control of {@link PosServer}. No database is needed: the requests that hold
+ * the permits are order posts whose bodies never finish arriving, and the probes read
+ * /metrics.
+ */
+class PosServerTest {
+
+    private static final int MAX_CONCURRENT = 2;
+
+    private PosServer server;
+    private final List<Socket> stalled = new ArrayList<>();
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new PosServer(new InetSocketAddress("127.0.0.1", 0), MAX_CONCURRENT, 200);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        for (Socket socket : stalled) socket.close();
+        server.close();
+    }
+
+    @Test
+    void requestBeyondMaxConcurrentGets503() throws Exception {
+        stallAll();
+
+        assertEquals(503, status("/metrics"));
+    }
+
+    @Test
+    void requestsBeyondWaitingThreadsGet503() throws Exception {
+        stallAll();
+
+        ExecutorService clients = Executors.newFixedThreadPool(4 * MAX_CONCURRENT);
+        try {
+            List<Future<Integer>> statuses = new ArrayList<>();
+            for (int i = 0; i < 4 * MAX_CONCURRENT; i++) statuses.add(clients.submit(() -> status("/metrics")));
+            for (Future<Integer> s : statuses) assertEquals(503, s.get());
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void admitsAgainOnceRequestsFinish() throws Exception {
+        stallAll();
+        for (Socket socket : stalled) socket.close();
+        stalled.clear();
+        awaitInFlight(0);
+
+        assertEquals(200, status("/metrics"));
+    }
+
+    /** Takes every admission permit with a request that waits for the rest of its body. */
+    private void stallAll() throws IOException, InterruptedException {
+        int port = server.getAddress().getPort();
+        for (int i = 0; i < MAX_CONCURRENT; i++) {
+            Socket socket = new Socket("127.0.0.1", port);
+            stalled.add(socket);
+            OutputStream out = socket.getOutputStream();
+            out.write("POST /orders HTTP/1.1\r\nHost: localhost\r\nContent-Length: 100\r\n\r\n{"
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+        awaitInFlight(MAX_CONCURRENT);
+    }
+
+    private void awaitInFlight(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (server.inFlight() != expected) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("In flight: " + server.inFlight() + ", expected " + expected);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private int status(String path) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getAddress().getPort() + path)
+                .openConnection();
+        conn.setConnectTimeout(5_000);
+        conn.setReadTimeout(5_000);
+        try {
+            return conn.getResponseCode();
+        } finally {
+            conn.disconnect();
+        }
+    }
+}